@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Utils.abort;
+import static gitlet.Utils.error;
+import static gitlet.Utils.message;
+
+/** Runs many commands in one process: "gitlet batch FILE" reads them from
+ *  FILE, "gitlet batch -" from standard input, and "gitlet batch -c TEXT"
+ *  from TEXT. Each line holds one command, without the leading "gitlet",
+ *  with its operands split as a shell would: by blanks, except inside single
+ *  or double quotes, and with '\' quoting the next character outside single
+ *  quotes. Blank lines and lines starting with '#' are skipped.
+ *
+ *  While a run of add, rm, commit and branch commands goes on, the staging
+ *  area, branches, HEAD and index are only changed in memory. They are
+ *  written once, before a command of another kind, when the batch ends, or
+ *  when it stops. A command that aborts stops the batch; its message is
+ *  printed with its line number.
+ *
+ *  @author Hongfa You
+ */
+class Batch {
+    /** Commands whose writes are held back until the batch needs them. */
+    private static final Set<String> COALESCED = Set.of("add", "rm", "commit", "branch");
+
+    /** True while the writes of a command are being held back. */
+    private static boolean isCoalescing;
+    /** True while a batch runs. */
+    private static boolean isRunning;
+
+    /** Return true if the staging area and refs are only to be changed in
+     *  memory, until flush(). */
+    static boolean isCoalescing() {
+        return isCoalescing;
+    }
+
+    /** Run the batch given by the operands of ARGS: a file name, "-" for
+     *  standard input, or "-c" and the commands themselves.
+     * @param args : "batch" and its operands.
+     */
+    static void run(String[] args) {
+        if (isRunning) {
+            abort("Cannot run a batch within a batch.");
+        } else if (args.length < 2) {
+            abort("Please specify a batch file.");
+        }
+        String text = args[1].equals("-c") && args.length > 2 ? args[2] : read(args[1]);
+        String[] lines = text.split("\r?\n", -1);
+        isRunning = true;
+        try {
+            for (int i = 0; i < lines.length; i += 1) {
+                if (lines[i].isBlank() || lines[i].strip().startsWith("#")) {
+                    continue;
+                }
+                try {
+                    String[] command = parse(lines[i]);
+                    if (!COALESCED.contains(command[0])) {
+                        flush();
+                    }
+                    isCoalescing = COALESCED.contains(command[0]);
+                    Main.run(command);
+                } catch (GitletException excp) {
+                    flush();
+                    message("%s", excp.getMessage());
+                    abort("Batch stopped at line " + (i + 1) + ".");
+                }
+            }
+            flush();
+        } finally {
+            isCoalescing = false;
+            isRunning = false;
+        }
+    }
+
+    /** Return the text of the batch SOURCE, a file name or "-" for standard
+     *  input. Also used to send a batch to the Daemon. */
+    static String read(String source) {
+        try {
+            if (source.equals("-")) {
+                return new String(System.in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            File file = Repository.CWD.toPath().resolve(source).toFile();
+            if (!file.isFile()) {
+                abort("Batch file " + source + " does not exist.");
+            }
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("Cannot read batch %s: %s", source, excp.getMessage());
+        }
+    }
+
+    /** Write the staging area, branches, HEAD and index held back so far. */
+    private static void flush() {
+        isCoalescing = false;
+        Blob.flush();
+        Branch.flush();
+        HEAD.flush();
+        Repository.saveIndex();
+    }
+
+    /** Return the words of LINE, which is not blank. */
+    private static String[] parse(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                word = word == null ? new StringBuilder() : word;
+                word.append(line.charAt(i));
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                word = word == null ? new StringBuilder() : word;
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                word = word == null ? new StringBuilder() : word;
+                word.append(c);
+            }
+        }
+        if (quote != 0) {
+            abort("Unterminated quote.");
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
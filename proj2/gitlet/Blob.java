@@ -1,48 +1,133 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
 import java.util.TreeMap;
 
 import static gitlet.Utils.*;
 
-/**
+/** The staging area: files staged for addition, in blobMap, and for removal,
+ *  in removal. Both are read once per process and then kept in memory.
+ *
+ *  On disk the staging area is a snapshot of both maps,
+ *  .gitlet/infostaged_dir/snapshot, followed by an append-only journal,
+ *  .gitlet/infostaged_dir/journal, of the changes made since.
+ *  Staging or unstaging a file appends one record to the journal instead of
+ *  rewriting a whole map, so staging N files costs O(N) rather than O(N^2).
+ *  Clearing the staging area, as commit, checkout and reset do, or a journal
+ *  grown long compared to the maps, writes a new snapshot and empties the
+ *  journal.
+ *
+ *  Each snapshot has a generation, one more than the last, and a journal
+ *  starts with the generation of the snapshot it follows. A new snapshot is
+ *  written beside the old one and renamed over it, which is the moment it
+ *  takes effect; a journal left behind by a crash just after that belongs to
+ *  an older generation and is ignored. So the staging area read back after
+ *  a crash is always the last snapshot plus exactly the changes made since.
+ *  FORMAT of the snapshot :
+ *          int SNAPSHOT_MAGIC | long generation | varint count
+ *          | count (String name | 20-byte blob id) | varint count | count names
+ *  listing the files staged for addition, each with the SHA1 of its
+ *  contents, then those staged for removal. A snapshot opening with
+ *  OLD_SNAPSHOT_MAGIC lists the staged names alone.
+ *  FORMAT of the journal :
+ *          int JOURNAL_MAGIC | long generation | records
+ *  where each record is
+ *          byte operation | String name
+ *  followed, for ADD_BLOB, by the 20-byte blob id. The id of a file staged
+ *  by ADD, as older versions did, is not known and is hashed at commit.
+ *  A record cut short by a crash is ignored, and cut off the journal when
+ *  it is read, so that the next record is appended where it began.
  *
  * @author Hongfa You
  */
 
 public class Blob implements Serializable {
+    /** Journal operations: stage NAME for addition, unstage it, stage it for
+     *  removal, unremove it, stage it for addition as a known blob. */
+    private static final byte ADD = 1;
+    private static final byte UNADD = 2;
+    private static final byte REMOVE = 3;
+    private static final byte UNREMOVE = 4;
+    private static final byte ADD_BLOB = 5;
+    /** Number of journal records tolerated before compacting, at least. */
+    private static final int JOURNAL_LIMIT = 1024;
+    /** Magic numbers opening the snapshot and the journal. */
+    private static final int SNAPSHOT_MAGIC = 0x47535432; // "GST2"
+    /** Magic number of a snapshot without blob ids, as older versions wrote. */
+    private static final int OLD_SNAPSHOT_MAGIC = 0x47535450; // "GSTP"
+    private static final int JOURNAL_MAGIC = 0x474a524e; // "GJRN"
+    /** Size of the header of the journal: its magic number and generation. */
+    private static final int JOURNAL_HEADER = 12;
+
     /** Map from filename to SHA1 for each added file */
-    /* TreeMap for staged. */
+    /* TreeMap for staged: SHA1 of name to name. Null until loaded. */
     protected static TreeMap<String, String> blobMap;
-    /* TreeMap for unstaged. */
+    /* TreeMap for unstaged: name to SHA1 of name. Null until loaded. */
     protected static TreeMap<String, String> removal;
+    /* SHA1 of name to SHA1 of the staged contents, for the files of blobMap
+     * whose contents are known. Null until loaded. */
+    private static TreeMap<String, String> blobIds;
+    /** Generation of the snapshot. */
+    private static long generation;
+    /** Number of records in the journal. */
+    private static int journalRecords;
+    /** Journal records held back by a Batch, not yet appended. */
+    private static ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    /** True if a Batch cleared the staging area since the last flush, so the
+     *  next flush writes a snapshot. */
+    private static boolean isCompactPending;
+    /** True while journal records are held back until flush(), outside a Batch. */
+    private static boolean isHolding;
 
     /** Serialize and save file named "name" in CWD into .gitlet/staged_obj in CWD
-     *  and update the blobMap to File System.
+     *  and stage it.
      *  @param name : name of file.
      */
     public static void add(String name) {
-        String sha1Id = Utils.sha1(name);
         File file = Utils.join(Repository.CWD, name);
+        File tmpfile = ObjectStore.tempObject();
+        String blobId = ObjectStore.writeLoose(file, tmpfile);
+        addStaged(name, tmpfile, blobId);
+    }
+
+    /** Stage the object tmpfile, already written by ObjectStore.writeLoose,
+     *  as the new version of file "name".
+     *  @param name : name of file.
+     *  @param tmpfile : temporary object holding the contents of "name".
+     *  @param blobId : SHA1 String of those contents.
+     */
+    public static void addStaged(String name, File tmpfile, String blobId) {
+        String sha1Id = Utils.sha1(name);
         File outfile = Utils.join(Repository.STAGE_DIR, sha1Id);
-        secureCopyFile(file, outfile);
-        putBlobMap(sha1Id, name);
-        saveBlobMap();
+        if (!tmpfile.renameTo(outfile)) {
+            secureCopyFile(tmpfile, outfile);
+            tmpfile.delete();
+        }
+        record(ADD_BLOB, name, blobId);
     }
 
     /** Do staging work for merge.
-     *  Copy "name" file from COMMITED_DIR to STAGE_DIR.
+     *  Copy blob shaId of "name" file from the object store to STAGE_DIR.
      *  @param name : name of file.
-     *  @param shaId : SHA1 String of Commit.
+     *  @param shaId : SHA1 String of blob.
      *  */
     public static void stageForMerge(String name, String shaId) {
-        File srcfile = Utils.join(Repository.COMMITED_DIR, shaId);
         String sha1Id = Utils.sha1(name);
         File destfile = Utils.join(Repository.STAGE_DIR, sha1Id);
-        secureCopyFile(srcfile, destfile);
-        putBlobMap(sha1Id, name);
-        saveBlobMap();
+        ObjectStore.writeLoose(ObjectStore.openBlob(shaId), destfile);
+        record(ADD_BLOB, name, shaId);
     }
 
     /** Add file whose name is "name" to removal.
@@ -50,110 +135,131 @@ public class Blob implements Serializable {
      *  @param toRemoval : whether put it to removal (unstaging area) or not.
      * */
     public static void remove(String name, boolean toRemoval) {
-        String sha1Id = Utils.sha1(name);
         if (toRemoval) {
-            putremoval(name, sha1Id);
-            saveremoval();
+            record(REMOVE, name, null);
         }
     }
 
-    /** Load blobMap from file system, if not exists create new one.
-     *  Then put the key-value pair <SHA1, name> of the new-added file into it.
-     * @param key SHA1 of the new-added file.
-     * @param value name of the new-added file.
-     */
-    public static void putBlobMap(String key, String value) {
-        blobMap = getTreeMap(blobMap, false);
-        blobMap.put(key, value);
-    }
-
-    /** Load removal from file system, if not exists create new one.
-     *  Then put the key-value pair <SHA1, name> of the new-removed file into it.
-     * @param key SHA1 of the new-removed file.
-     * @param value name of the new-removed file.
-     */
-    public static void putremoval(String key, String value) {
-        removal = getTreeMap(removal, true);
-        removal.put(key, value);
-    }
-
-    /** Load blobMap from file system, if not exists create new one.
+    /** Load blobMap, from file system the first time.
      *  */
     public static void loadBlobMap() {
-        blobMap = getTreeMap(blobMap, false);
+        load();
     }
 
-    /** Load removal from file system, if not exists create new one.
+    /** Load removal, from file system the first time.
      *  */
     public static void loadremoval() {
-        removal = getTreeMap(removal, true);
+        load();
     }
 
-    /** Save removal into file system.
-     *  Should be called after loadremoval().
-     */
-    public static void saveremoval() {
-        File blobmapfile = Utils.join(Repository.INFOSTAGE_DIR, "removal");
-        writeObject(blobmapfile, removal);
+    /** Hold journal records back until flush(), so that staging many files
+     *  writes the journal once. Return false, doing nothing, if they are held
+     *  back already, by a Batch or an earlier call; the caller then leaves
+     *  the flush to whoever held them first. */
+    static boolean hold() {
+        if (Batch.isCoalescing() || isHolding) {
+            return false;
+        }
+        isHolding = true;
+        return true;
     }
 
-    /** Save blobMap into file system.
-     *  Should be called after loadBlobMap().
-     */
-    public  static void saveBlobMap() {
-        File blobmapfile = Utils.join(Repository.INFOSTAGE_DIR, "blobMap");
-        writeObject(blobmapfile, blobMap);
+    /** Append the journal records held back by a Batch or hold() since the
+     *  last flush, or write a snapshot if the staging area was cleared. */
+    public static void flush() {
+        isHolding = false;
+        if (isCompactPending) {
+            compact();
+        } else if (pending.size() > 0) {
+            appendJournal(pending.toByteArray());
+        }
+        pending.reset();
+        isCompactPending = false;
     }
 
-    /** Get blobMap or removal from file system.
-     *  @param map : removal or blobMap.
-     *  @param isRemoval : whether to get TreeMap of removal or not. if not, get TreeMap of blobMap.
-     * @return TreeMap.
-     */
-    public static TreeMap getTreeMap(TreeMap<String, String> map, boolean isRemoval) {
-        File blobmapfile;
-        if (isRemoval) {
-            blobmapfile = Utils.join(Repository.INFOSTAGE_DIR, "removal");
-        } else {
-            blobmapfile = Utils.join(Repository.INFOSTAGE_DIR, "blobMap");
+    /** Forget blobMap and removal, so that they are read again on next use. */
+    static void forget() {
+        blobMap = null;
+        removal = null;
+        blobIds = null;
+        generation = 0;
+        journalRecords = 0;
+        pending.reset();
+        isCompactPending = false;
+        isHolding = false;
+    }
+
+    /** The staging area of one repository as loaded, set aside while gitlet
+     *  works on another; see Repository.State. */
+    static final class State {
+        private final TreeMap<String, String> blobMap;
+        private final TreeMap<String, String> removal;
+        private final TreeMap<String, String> blobIds;
+        private final long generation;
+        private final int journalRecords;
+        private final ByteArrayOutputStream pending;
+        private final boolean isCompactPending;
+        private final boolean isHolding;
+
+        private State() {
+            blobMap = Blob.blobMap;
+            removal = Blob.removal;
+            blobIds = Blob.blobIds;
+            generation = Blob.generation;
+            journalRecords = Blob.journalRecords;
+            pending = Blob.pending;
+            isCompactPending = Blob.isCompactPending;
+            isHolding = Blob.isHolding;
         }
-        if (blobmapfile.exists()) {
-            map = readObject(blobmapfile, TreeMap.class);
-        } else {
-            map = new TreeMap<>();
+    }
+
+    /** Return the staging area of the repository in use, as loaded. */
+    static State setAside() {
+        return new State();
+    }
+
+    /** Put SAVED, returned by setAside(), back in place, or start afresh if
+     *  SAVED is null. */
+    static void putBack(State saved) {
+        if (saved == null) {
+            pending = new ByteArrayOutputStream();
+            forget();
+            return;
         }
-        return map;
+        blobMap = saved.blobMap;
+        removal = saved.removal;
+        blobIds = saved.blobIds;
+        generation = saved.generation;
+        journalRecords = saved.journalRecords;
+        pending = saved.pending;
+        isCompactPending = saved.isCompactPending;
+        isHolding = saved.isHolding;
     }
 
-    /** Delete blobMap from file system.
+    /** Clear the staged files for addition.
      *  It is used for clear staged imformation.
      */
     public static void deleteBlobMap() {
-        File blobmapfile = Utils.join(Repository.INFOSTAGE_DIR, "blobMap");
-        if (blobmapfile.exists()) {
-            blobmapfile.delete();
-        }
+        load().clear();
+        blobIds.clear();
+        saveSnapshot();
     }
 
-    /** Delete removal from file system.
+    /** Clear the staged files for removal.
      *  It is used for clear staged imformation.
      */
     public static void deleteRemoval() {
-        File removalfile = Utils.join(Repository.INFOSTAGE_DIR, "removal");
-        if (removalfile.exists()) {
-            removalfile.delete();
-        }
+        load();
+        removal.clear();
+        saveSnapshot();
     }
 
     /** Delete file from blobMap if it exists in blobMap.
      * @param key : name of file.
      * */
     public static void deteleItem(String key) {
-        File blobmapfile = Utils.join(Repository.INFOSTAGE_DIR, "blobMap");
-        if (blobmapfile.exists()) {
-            blobMap = readObject(blobmapfile, TreeMap.class);
-            blobMap.remove(Utils.sha1(key));
-            saveBlobMap();
+        if (load().containsKey(Utils.sha1(key))) {
+            record(UNADD, key, null);
         }
     }
 
@@ -162,53 +268,279 @@ public class Blob implements Serializable {
      * @return True if file exists in removal, or return false.
      */
     public static boolean isRemovalContains(String name) {
-        removal = getTreeMap(removal, true);
-        if (removal.containsKey(name)) {
-            return true;
-        }
-        return false;
+        load();
+        return removal.containsKey(name);
     }
 
-    /** Check if blobMap contains file "name".
+    /** Check if blobMap contains file "name". Keys are SHA1 of names, so
+     *  this is a lookup rather than a search of the values.
      * @param name : name of file.
      * @return True if file exists in blobMap, or return false.
      */
     public static boolean isBlobmapContains(String name) {
-        blobMap = getTreeMap(blobMap, false);
-        if (blobMap.containsValue(name)) {
-            return true;
-        }
-        return false;
+        return load().containsKey(Utils.sha1(name));
     }
 
     /** Check if unstage area is empty.
-     *  @return True if removal is null or empty, or return false.
+     *  @return True if removal is empty, or return false.
      * */
     public static boolean isRemovalEmpty() {
-        removal = getTreeMap(removal, true);
-        if (removal == null || removal.isEmpty()) {
-            return true;
-        }
-        return false;
+        load();
+        return removal.isEmpty();
     }
 
     /** Check if staging area is empty.
-     *  @return True if blobMap is null or empty, or return false.
+     *  @return True if blobMap is empty, or return false.
      * */
     public static boolean isBlobMapEmpty() {
-        blobMap = getTreeMap(blobMap, true);
-        if (blobMap == null || blobMap.isEmpty()) {
-            return true;
-        }
-        return false;
+        return load().isEmpty();
     }
 
     /** Unremove the file "name".
      * @param name : name of file.
      * */
     public static void unremove(String name) {
-        removal = getTreeMap(removal, true);
-        removal.remove(name);
-        saveremoval();
+        if (isRemovalContains(name)) {
+            record(UNREMOVE, name, null);
+        }
+    }
+
+    /** Return the SHA1 String of the contents staged for the file whose name
+     *  hashes to KEY, the name of its object in STAGE_DIR, or null if they
+     *  were staged by an older version and are not known. */
+    static String stagedBlob(String key) {
+        load();
+        return blobIds.get(key);
+    }
+
+    /** Apply the operation OP on NAME, with blob id BLOBID for ADD_BLOB, to
+     *  the staging area in memory and append it to the journal, or hold it
+     *  back during a Batch. */
+    private static void record(byte op, String name, String blobId) {
+        load();
+        apply(op, name, blobId);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op);
+            writeString(out, name);
+            if (op == ADD_BLOB) {
+                writeId(out, blobId);
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw error("Cannot write staging area: %s", excp.getMessage());
+        }
+        journalRecords += 1;
+        if (Batch.isCoalescing() || isHolding) {
+            pending.writeBytes(bytes.toByteArray());
+        } else if (journalRecords > JOURNAL_LIMIT
+                && journalRecords > 4 * (blobMap.size() + removal.size())) {
+            compact();
+        } else {
+            appendJournal(bytes.toByteArray());
+        }
+    }
+
+    /** Apply the operation OP on NAME, with blob id BLOBID for ADD_BLOB, to
+     *  blobMap and removal. */
+    private static void apply(byte op, String name, String blobId) {
+        String key = Utils.sha1(name);
+        switch (op) {
+            case ADD:
+                blobMap.put(key, name);
+                blobIds.remove(key);
+                break;
+            case ADD_BLOB:
+                blobMap.put(key, name);
+                blobIds.put(key, blobId);
+                break;
+            case UNADD:
+                blobMap.remove(key);
+                blobIds.remove(key);
+                break;
+            case REMOVE:
+                removal.put(name, key);
+                break;
+            case UNREMOVE:
+                removal.remove(name);
+                break;
+            default:
+                throw error("Unknown staging operation %d.", op);
+        }
+    }
+
+    /** Write a snapshot after the staging area was cleared, or have the
+     *  Batch write one when it flushes. */
+    private static void saveSnapshot() {
+        if (Batch.isCoalescing() || isHolding) {
+            isCompactPending = true;
+            pending.reset();
+        } else {
+            compact();
+        }
+    }
+
+    /** Write blobMap and removal as the snapshot of the next generation and
+     *  empty the journal. */
+    private static void compact() {
+        generation += 1;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(generation);
+            writeVarint(out, blobMap.size());
+            for (Map.Entry<String, String> entry : blobMap.entrySet()) {
+                writeString(out, entry.getValue());
+                writeId(out, blobIds.computeIfAbsent(entry.getKey(), key ->
+                        ObjectStore.hashLoose(Utils.join(Repository.STAGE_DIR, key))));
+            }
+            writeNames(out, removal.keySet());
+            out.flush();
+            File tmpfile = ObjectStore.tempObject();
+            Files.write(tmpfile.toPath(), bytes.toByteArray());
+            Files.move(tmpfile.toPath(), snapshotFile().toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Cannot write staging area: %s", excp.getMessage());
+        }
+        journalFile().delete();
+        journalRecords = 0;
+    }
+
+    /** Write the count of NAMES and then each of them to OUT. */
+    private static void writeNames(DataOutputStream out, Collection<String> names)
+            throws IOException {
+        writeVarint(out, names.size());
+        for (String name : names) {
+            writeString(out, name);
+        }
+    }
+
+    /** Return blobMap, loading blobMap and removal from the snapshot and
+     *  journal if this process has not yet. */
+    private static TreeMap<String, String> load() {
+        if (blobMap != null) {
+            return blobMap;
+        }
+        blobMap = new TreeMap<>();
+        removal = new TreeMap<>();
+        blobIds = new TreeMap<>();
+        generation = 0;
+        journalRecords = 0;
+        File snapshot = snapshotFile();
+        if (snapshot.isFile()) {
+            ByteBuffer in = ByteBuffer.wrap(readContents(snapshot));
+            int magic = in.getInt();
+            if (magic != SNAPSHOT_MAGIC && magic != OLD_SNAPSHOT_MAGIC) {
+                throw error("Cannot read staging area: bad snapshot.");
+            }
+            generation = in.getLong();
+            for (long n = readVarint(in); n > 0; n -= 1) {
+                String name = readString(in);
+                if (magic == SNAPSHOT_MAGIC) {
+                    apply(ADD_BLOB, name, readId(in));
+                } else {
+                    apply(ADD, name, null);
+                }
+            }
+            for (long n = readVarint(in); n > 0; n -= 1) {
+                apply(REMOVE, readString(in), null);
+            }
+        }
+        File journal = journalFile();
+        if (journal.isFile()) {
+            ByteBuffer in = ByteBuffer.wrap(readContents(journal));
+            if (in.remaining() < JOURNAL_HEADER || in.getInt() != JOURNAL_MAGIC
+                    || in.getLong() != generation) {
+                /* Left behind by a crash after a newer snapshot was written,
+                 * or before its header was; appending to it would be lost. */
+                journal.delete();
+                return blobMap;
+            }
+            int end = in.position();
+            try {
+                while (in.hasRemaining()) {
+                    byte op = in.get();
+                    String name = readString(in);
+                    apply(op, name, op == ADD_BLOB ? readId(in) : null);
+                    journalRecords += 1;
+                    end = in.position();
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException excp) {
+                /* A record cut short by a crash; it never took effect, and
+                 * records appended after it could not be read. */
+                truncate(journal, end);
+            }
+        }
+        return blobMap;
+    }
+
+    /** Bring a staging area written before snapshots had generations, as the
+     *  serialized maps blobMap and removal and a journal without a header,
+     *  to the present format. Done once, by UpgradeHelper. */
+    @SuppressWarnings("unchecked")
+    static void upgrade() {
+        File blobMapFile = Utils.join(Repository.INFOSTAGE_DIR, "blobMap");
+        File removalFile = Utils.join(Repository.INFOSTAGE_DIR, "removal");
+        File journal = journalFile();
+        if (!snapshotFile().isFile()) {
+            blobMap = blobMapFile.isFile() ? readObject(blobMapFile, TreeMap.class) : new TreeMap<>();
+            removal = removalFile.isFile() ? readObject(removalFile, TreeMap.class) : new TreeMap<>();
+            blobIds = new TreeMap<>();
+            generation = 0;
+            if (journal.isFile()) {
+                ByteBuffer in = ByteBuffer.wrap(readContents(journal));
+                try {
+                    while (in.hasRemaining()) {
+                        byte op = in.get();
+                        apply(op, readString(in), null);
+                    }
+                } catch (BufferUnderflowException | IndexOutOfBoundsException excp) {
+                    /* A record cut short by a crash; it never took effect. */
+                }
+            }
+            compact();
+        }
+        journal.delete();
+        blobMapFile.delete();
+        removalFile.delete();
+    }
+
+    /** Append BYTES to the journal, creating it, stamped with the generation
+     *  of the snapshot, if needed. */
+    private static void appendJournal(byte[] bytes) {
+        File journal = journalFile();
+        try {
+            if (!journal.isFile()) {
+                ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER)
+                        .putInt(JOURNAL_MAGIC).putLong(generation);
+                Files.write(journal.toPath(), header.array());
+            }
+            Files.write(journal.toPath(), bytes,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw error("Cannot write staging area: %s", excp.getMessage());
+        }
+    }
+
+    /** Cut FILE off after its first SIZE bytes. */
+    private static void truncate(File file, long size) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        } catch (IOException excp) {
+            throw error("Cannot write staging area: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the snapshot file. */
+    private static File snapshotFile() {
+        return Utils.join(Repository.INFOSTAGE_DIR, "snapshot");
+    }
+
+    /** Return the journal file. */
+    private static File journalFile() {
+        return Utils.join(Repository.INFOSTAGE_DIR, "journal");
     }
 }
@@ -2,7 +2,9 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static gitlet.Utils.*;
 
@@ -11,6 +13,17 @@ import static gitlet.Utils.*;
  * @author Hongfa You
  */
 public class Branch implements Serializable {
+    /** Fixed so that branches saved by older versions can still be read. */
+    private static final long serialVersionUID = 7021041602373864388L;
+    /** Number of branches kept in memory. */
+    private static final int CACHE_SIZE = 256;
+    /** Branches of the current repository read or saved by this process, by
+     *  name. Every change to a branch goes through saveBranch(), which keeps
+     *  this up to date. */
+    static LruCache<String, Branch> cache = new LruCache<>("branches", CACHE_SIZE);
+    /** Branches saved during a Batch and not yet written, by name. */
+    private static Map<String, Branch> pending = new HashMap<>();
+
     /** Name of Brunch, such as "master" **/
     private String branchName;
     /** Indicates the Commit this Branch should point to, using a SHA1 string **/
@@ -29,8 +42,14 @@ public class Branch implements Serializable {
      * in the File System is branchName
      **/
     public void saveBranch() {
+        if (Batch.isCoalescing()) {
+            pending.put(branchName, this);
+            cache.put(branchName, this);
+            return;
+        }
         File outfile = Utils.join(Repository.BRANCH_DIR,  this.branchName);
         writeObject(outfile, this);
+        cache.put(branchName, this);
     }
 
     /** Reads in and deserializes a branch from a file.
@@ -38,6 +57,10 @@ public class Branch implements Serializable {
      * @return the Branch read in.
      */
     public static Branch readBranchIn(String name, Boolean isMerge) {
+        Branch cached = pending.containsKey(name) ? pending.get(name) : cache.get(name);
+        if (cached != null) {
+            return cached;
+        }
         File file = join(Repository.BRANCH_DIR, name);
         if (!file.exists() && !isMerge) {
             Utils.abort("No such branch exists.");
@@ -45,6 +68,7 @@ public class Branch implements Serializable {
             Utils.abort("A branch with that name does not exist.");
         }
         Branch result = readObject(file, Branch.class);
+        cache.put(name, result);
         return result;
     }
 
@@ -62,13 +86,56 @@ public class Branch implements Serializable {
         this.saveBranch();
     }
 
+    /** Write the branches saved during a Batch since the last flush. */
+    protected static void flush() {
+        for (Branch branch : pending.values()) {
+            writeObject(Utils.join(Repository.BRANCH_DIR, branch.branchName), branch);
+        }
+        pending.clear();
+    }
+
+    /** Forget all branches, so that they are read again on next use. */
+    static void forget() {
+        cache.clear();
+        pending.clear();
+    }
+
+    /** The branches cached and pending for one repository, set aside while
+     *  gitlet works on another; see Repository.State. */
+    static final class State {
+        private final LruCache<String, Branch> cache;
+        private final Map<String, Branch> pending;
+
+        private State(LruCache<String, Branch> cache, Map<String, Branch> pending) {
+            this.cache = cache;
+            this.pending = pending;
+        }
+    }
+
+    /** Return the branches cached and pending for the repository in use. */
+    static State setAside() {
+        return new State(cache, pending);
+    }
+
+    /** Put SAVED, returned by setAside(), back in place, or start afresh if
+     *  SAVED is null. */
+    static void putBack(State saved) {
+        if (saved == null) {
+            cache = new LruCache<>("branches", CACHE_SIZE);
+            pending = new HashMap<>();
+        } else {
+            cache = saved.cache;
+            pending = saved.pending;
+        }
+    }
+
     /** Check if Branch called name exists or not.
      * @param name : name of branch.
      * @return True if Branch called name exists, or return false.
      */
     public static Boolean isBranchExist(String name) {
         File file = join(Repository.BRANCH_DIR, name);
-        return file.exists();
+        return pending.containsKey(name) || file.exists();
     }
 
     /** Delete the Branch whose name is branchName.
@@ -85,6 +152,7 @@ public class Branch implements Serializable {
         if (branchList.contains(branchName)) {
             File file = Utils.join(Repository.BRANCH_DIR, branchName);
             file.delete();
+            cache.remove(branchName);
         } else {
             Utils.abort("A branch with that name does not exist.");
         }
@@ -1,8 +1,12 @@
 package gitlet;
 
 import java.io.File;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 import static gitlet.Repository.*;
 import static gitlet.Utils.abort;
@@ -12,7 +16,7 @@ import static gitlet.Utils.join;
 /** Helper class providing static helper method for "checkout" and "reset".
  *  unstageAll() : Unstaged all of the files if it is currently staged for addition.
  *  overwriteOne(String commitSHA, String filename) : Overwrite file named filename in commitSHA.
- *  overwriteAll(String commitSHA) : Overwrite all files in CWD with files in commitSHA.
+ *  switchTo(String commitSHA) : Make the files in CWD those of commitSHA, touching only what differs.
  *  checkUntracked() : Check if there are some files untracked, just abort.
  * */
 public class CheckoutHelper {
@@ -40,63 +44,83 @@ public class CheckoutHelper {
 
         String errMsg = "File does not exist in that commit.";
         File dest = join(CWD, filename);
-        File dir = commit.getFilefromCommit(filename, errMsg);
-        Utils.secureCopyFile(dir, dest);
+        String blob = commit.getBlobFromCommit(filename, errMsg);
+        ObjectStore.copyBlob(blob, dest);
+        Index.checkedOut(filename, blob);
     }
 
-    /** Overwrite all files in CWD with files in commitSHA.
+    /** Make the files in CWD those of commitSHA, as if every file were deleted
+     *  and those of commitSHA written, but touching only the files that would
+     *  change: files are left alone, mtime included, if they already have
+     *  the contents they would be given.
+     *
+     *  The trees of the head commit and commitSHA are diffed by blob id,
+     *  skipping the subtrees they share, to find the files to delete or write.
+     *  Files staged for addition and not in commitSHA are deleted too. The
+     *  other files of commitSHA are only rewritten if they were changed in
+     *  CWD, which the Index tells from their stat data without reading them.
+     *  Files are deleted first, so that a file may replace a directory or the
+     *  other way round, then written in parallel; see Materializer. Aborts,
+     *  once every file was attempted, if any could not be written.
+     *  There must be no untracked file in CWD; see checkUntracked().
      * @param commitSHA : SHA1 String of commit.
+     * TIME COMPLEXITY : O(T * M + N + D). T : trees that differ. M : entries of
+     *  a tree. N : files in commitSHA, only stat'ed. D : size of the files written.
      * */
-    protected static void overwriteAll(String commitSHA) {
-        Commit commit = Commit.readCommitFromFile(commitSHA);
-        if (commit.isFilemapNull()) {
-            return;
+    protected static void switchTo(String commitSHA) {
+        Commit current = Commit.readCommitFromFile(HEAD.whichCommit());
+        Commit target = Commit.readCommitFromFile(commitSHA);
+        TreeMap<String, String> toWrite = new TreeMap<>();
+        Set<String> changed = new HashSet<>();
+        Tree.diff(current.getTreeId(), target.getTreeId(), (path, blob, newBlob) -> {
+            changed.add(path);
+            if (newBlob == null) {
+                WorkTreeHelper.deleteFile(path);
+            } else {
+                toWrite.put(path, newBlob);
+            }
+        });
+        Blob.loadBlobMap();
+        for (String path : Blob.blobMap.values()) {
+            if (!changed.contains(path) && !target.isFilemapContains(path)) {
+                WorkTreeHelper.deleteFile(path);
+            }
         }
-        for (Map.Entry<String, String> entry : commit.fileMap.entrySet()) {
-            String key = entry.getKey();
-            File dir = commit.getFilefromCommit(entry.getKey(), "no file named " + key);
-            File dest = join(CWD, entry.getKey());
-            Utils.secureCopyFile(dir, dest);
+        if (!target.isFilemapNull()) {
+            for (Map.Entry<String, String> entry : target.getFileMap().entrySet()) {
+                if (!changed.contains(entry.getKey())
+                        && !entry.getValue().equals(Index.hash(entry.getKey()))) {
+                    toWrite.put(entry.getKey(), entry.getValue());
+                }
+            }
         }
+        Materializer.write(toWrite);
     }
 
-    /** If there are some files untracked, just abort. */
+    /** If there are some files untracked, just abort.
+     *  The working tree is scanned only until the first untracked file. */
     protected static void checkUntracked() {
-        List<String> fileList = Utils.plainFilenamesIn(CWD);
         Commit currentCommit = Commit.readCommitFromFile(HEAD.whichCommit());
-        Boolean toAbort = false;
+        Boolean toAbort;
         String errMsg = "There is an untracked file in the way; "
                 + "delete it, or add and commit it first.";
-        for (String file : fileList) {
-            if (!currentCommit.isFilemapContains(file) && !Blob.isBlobmapContains(file)) {
-                toAbort = true;
-                break;
-            }
+        try (Stream<String> files = WorkTreeHelper.files()) {
+            toAbort = files.anyMatch(file -> !currentCommit.isFilemapContains(file)
+                    && !Blob.isBlobmapContains(file));
         }
         if (toAbort) {
             abort(errMsg);
         }
     }
 
-    /** Get commitId by its abbreviation.
+    /** Get commitId by its abbreviation, which must be the start of it.
+     *  Aborts if several commits start with it.
      * @param commitName : abbreviation of commitId.
-     * @return commitId.
+     * @return commitId, or null if no commit starts with commitName.
+     * TIME COMPLEXITY : O(logN). N : number of commits.
      * */
     protected static String find(String commitName) {
-        List<String> commitList = Utils.plainFilenamesIn(INFOCOMMIT_DIR);
-        String result = null;
-        for (String commit : commitList) {
-            if (result == null && commit.contains(commitName)) {
-                result = commit;
-            } else if (commit.contains(commitName)) {
-                abort("There exists more than one commitId.");
-            }
-        }
-        if (result != null) {
-            return result;
-        } else {
-            return null;
-        }
+        return CommitIndex.resolve(commitName);
     }
 
 }
@@ -1,8 +1,11 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import static gitlet.Utils.*;
 
@@ -10,9 +13,48 @@ import static gitlet.Utils.*;
  *  It's a good idea to give a description here of what else this Class
  *  does at a high level.
  *
+ *  Commits are stored in a compact binary form, written and read by toBytes()
+ *  and fromBytes() rather than by Java serialization.
+ *  FORMAT :
+ *          int MAGIC | byte version | 20-byte id | byte flags
+ *          | [20-byte first parent] | [20-byte second parent]
+ *          | message | date | varint timestamp | [20-byte tree]
+ *  Strings are a varint UTF-8 length followed by the bytes. Bits 0, 1 and 2 of
+ *  flags tell whether the first parent, the second parent and the tree are
+ *  present. The snapshot of a commit is its Tree, so a commit shares every
+ *  unchanged directory with its parent; fileMap is only built from the tree
+ *  when a caller walks all the files. The timestamp is in milliseconds since
+ *  the epoch; version 2 commits have none and read as 0.
+ *  Version 1 commits carry their files inline instead of the tree: a varint
+ *  count, then in name order a varint number of leading name bytes shared with
+ *  the previous name, the rest of the name as a String, and the 20-byte blob
+ *  id. They, and commits written by Java serialization, are still read.
+ *
  *  @author Hongfa You
  */
 public class Commit implements Serializable {
+    /** Fixed so that commits serialized by older versions can still be read. */
+    private static final long serialVersionUID = -8119960504138975590L;
+    /** Magic number opening an encoded commit. */
+    private static final int MAGIC = 0x47434d54; // "GCMT"
+    /** Version of the encoding written by toBytes(). */
+    static final int FORMAT_VERSION = 3;
+    /** Version of the encoding with the files inline. */
+    private static final int INLINE_VERSION = 1;
+    /** Version of the encoding with a tree but no timestamp. */
+    private static final int TREE_VERSION = 2;
+
+    private static final int HAS_FIRST_PARENT = 1;
+    private static final int HAS_SECOND_PARENT = 2;
+    private static final int HAS_FILEMAP = 4;
+    private static final int HAS_TREE = 4;
+    /** Number of decoded commits kept in memory. */
+    private static final int CACHE_SIZE = 1024;
+
+    /** Recently read commits of the current repository, by SHA1 String.
+     *  Commits never change once saved, so each is read from disk at most
+     *  once while it is cached. */
+    static LruCache<String, Commit> cache = new LruCache<>("commits", CACHE_SIZE);
 
     /** The message of this Commit. */
     private String message;
@@ -25,7 +67,11 @@ public class Commit implements Serializable {
     /** SHA1 identifier for this Commit. */
     private String sha1Id;
     /* TreeMap for file from name (such as hello.txt) to id (namely sha1Id) in File System */
-    protected TreeMap<String, String> fileMap;
+    private TreeMap<String, String> fileMap;
+    /** SHA1 String of the root Tree of this Commit, null for the initial commit. */
+    private String treeId;
+    /** Time this Commit was made, in milliseconds since the epoch. */
+    private long timestamp;
 
     /** Construtor with two argument
      * @param msg : commit messge.
@@ -37,6 +83,7 @@ public class Commit implements Serializable {
         firstparent = fp;
         secondparent = sp;
         Calendar calendar = Calendar.getInstance();
+        timestamp = fp == null ? 0 : System.currentTimeMillis();
         if (fp == null) {
             // This is the "initial Commit"
             dateString = Utils.getFormattedTime();
@@ -48,28 +95,139 @@ public class Commit implements Serializable {
         dateString = "Thu Nov 9 17:01:33 2021 -0800";
     }
 
+    /** Constructor used by fromBytes(). */
+    private Commit() {
+    }
+
+    /** Forget the commits read, so that those of another repository are
+     *  read from it. A commit id is a hash of the message, first parent and
+     *  time to the second, not of the files, so two repositories may hold
+     *  different commits with the same id. */
+    static void forget() {
+        cache.clear();
+    }
+
+    /** Return the commits cached for the repository in use, which stay
+     *  cached while gitlet works on another; see Repository.State. */
+    static LruCache<String, Commit> setAside() {
+        return cache;
+    }
+
+    /** Put SAVED, returned by setAside(), back in place, or start with no
+     *  commits cached if SAVED is null. */
+    static void putBack(LruCache<String, Commit> saved) {
+        cache = saved == null ? new LruCache<>("commits", CACHE_SIZE) : saved;
+    }
+
     /** Read Commit from file system by SHA1 of the Commit.
      * @param commitId indicates which Commit, it's actual name of the Commit in File System
      * @return the Commit read in
      */
     protected static Commit readCommitFromFile(String commitId) {
-        File infile = Utils.join(Repository.INFOCOMMIT_DIR, commitId);
-        if (!infile.exists()) {
+        Commit commit = cache.get(commitId);
+        if (commit != null) {
+            return commit;
+        }
+        byte[] bytes = ObjectStore.readCommit(commitId);
+        if (bytes == null) {
             abort("No commit with that id exists.");
         }
-        Commit commit = readObject(infile, Commit.class);
+        commit = fromBytes(bytes);
+        cache.put(commitId, commit);
         return commit;
     }
 
-    /** Save this Commit to a file in File System for future use. */
-    protected void saveCommit() {
-        File outfile = Utils.join(Repository.INFOCOMMIT_DIR, sha1Id);
+    /** Return true if BYTES hold a commit in the current encoding. */
+    protected static boolean isEncoded(byte[] bytes) {
+        return bytes.length > 5 && ByteBuffer.wrap(bytes).getInt() == MAGIC
+                && bytes[4] == FORMAT_VERSION;
+    }
+
+    /** Decode a Commit from BYTES, written either by toBytes() or, for commits
+     *  made before trees or before the compact encoding, by a version 1
+     *  encoding or Java serialization.
+     * @param bytes : stored commit.
+     * @return the Commit decoded.
+     */
+    protected static Commit fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (bytes.length < 5 || in.getInt() != MAGIC) {
+            return deserialize(bytes, Commit.class);
+        }
+        int version = in.get();
+        if (version < INLINE_VERSION || version > FORMAT_VERSION) {
+            throw error("Unknown commit format.");
+        }
+        Commit commit = new Commit();
+        commit.sha1Id = readId(in);
+        int flags = in.get();
+        if ((flags & HAS_FIRST_PARENT) != 0) {
+            commit.firstparent = readId(in);
+        }
+        if ((flags & HAS_SECOND_PARENT) != 0) {
+            commit.secondparent = readId(in);
+        }
+        commit.message = readString(in);
+        commit.dateString = readString(in);
+        if (version > TREE_VERSION) {
+            commit.timestamp = readVarint(in);
+        }
+        if (version >= TREE_VERSION) {
+            if ((flags & HAS_TREE) != 0) {
+                commit.treeId = readId(in);
+            }
+        } else if ((flags & HAS_FILEMAP) != 0) {
+            commit.fileMap = new TreeMap<>();
+            int count = (int) readVarint(in);
+            byte[] name = new byte[64];
+            for (int i = 0; i < count; i += 1) {
+                int shared = (int) readVarint(in);
+                int rest = (int) readVarint(in);
+                if (shared + rest > name.length) {
+                    name = Arrays.copyOf(name, Math.max(2 * name.length, shared + rest));
+                }
+                in.get(name, shared, rest);
+                commit.fileMap.put(new String(name, 0, shared + rest, StandardCharsets.UTF_8),
+                        readId(in));
+            }
+        }
+        return commit;
+    }
+
+    /** Return this Commit in the compact binary encoding. */
+    protected byte[] toBytes() {
+        String tree = getTreeId();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
         try {
-            outfile.createNewFile();
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            writeId(out, sha1Id);
+            out.writeByte((firstparent != null ? HAS_FIRST_PARENT : 0)
+                          | (secondparent != null ? HAS_SECOND_PARENT : 0)
+                          | (tree != null ? HAS_TREE : 0));
+            if (firstparent != null) {
+                writeId(out, firstparent);
+            }
+            if (secondparent != null) {
+                writeId(out, secondparent);
+            }
+            writeString(out, message);
+            writeString(out, dateString);
+            writeVarint(out, timestamp);
+            if (tree != null) {
+                writeId(out, tree);
+            }
         } catch (IOException excp) {
-            System.out.println(excp.getMessage());
+            throw error("Internal error encoding commit.");
         }
-        writeObject(outfile, this);
+        return bytes.toByteArray();
+    }
+
+    /** Save this Commit to a file in File System for future use. */
+    protected void saveCommit() {
+        ObjectStore.writeCommit(sha1Id, toBytes());
+        cache.put(sha1Id, this);
     }
 
     /** Return date of this Commit **/
@@ -88,71 +246,84 @@ public class Commit implements Serializable {
     protected String getsecondParent() {
         return secondparent;
     }
+    /** Return the time this Commit was made, in milliseconds since the epoch,
+     *  or 0 if it is not known. */
+    protected long getTimestamp() {
+        return timestamp;
+    }
     /** Return SHA1 String of this Commit */
     protected String getSHA1() {
         return sha1Id;
     }
 
-    /** Load the file specified by filename of this Commit into file.
-     *  If not exists, just return null.
-     **/
-    protected File loadfile(String filename) {
-        /** This commit doesn't contain file named filename, just return false. */
-        if (fileMap == null || !fileMap.containsKey(filename)) {
-            return null;
+    /** Return SHA1 String of the root Tree of this Commit, or null for the
+     *  initial commit. The tree of a commit read from an older format is
+     *  stored on first use.
+     */
+    protected String getTreeId() {
+        if (treeId == null && fileMap != null) {
+            treeId = Tree.store(fileMap);
         }
+        return treeId;
+    }
+
+    /** Make the Tree TREE the snapshot of this Commit.
+     * @param tree : SHA1 String of the root tree, or null for no snapshot.
+     */
+    protected void setTree(String tree) {
+        treeId = tree;
+        fileMap = null;
+    }
 
-        String commitId = fileMap.get(filename);
-        File dir = Utils.join(Repository.COMMITED_DIR, commitId);
-        return dir;
+    /** Return the files of this Commit, from name to SHA1 String of blob, or
+     *  null if it has none. The map is built from the Tree on first use.
+     * TIME COMPLEXITY : O(NlogN) the first time. N : number of files.
+     */
+    protected TreeMap<String, String> getFileMap() {
+        if (fileMap == null && treeId != null) {
+            fileMap = Tree.flatten(treeId);
+        }
+        return fileMap;
     }
 
     /** Return if filemap is null or not.
      * @return true if filemap is null.
      * */
     protected boolean isFilemapNull() {
-        return fileMap == null;
+        return fileMap == null && treeId == null;
     }
 
     /** Return if fileMap contains key. */
     protected boolean isFilemapContains(String key) {
-        if (this.fileMap == null) {
-            return false;
-        }
-        return this.fileMap.containsKey(key);
+        return getCommittedFileSHA1(key) != null;
     }
 
     /** Return SHA1 String of file named key.
+     *  Unless the files were already built, only the trees on the path of key
+     *  are read.
      * @param key : name of file.
      * @return SHA1 String of file.
      * */
     protected String getCommittedFileSHA1(String key) {
-        if (this.fileMap == null) {
+        if (this.fileMap != null) {
+            return this.fileMap.get(key);
+        }
+        if (this.treeId == null) {
             return null;
         }
-        return this.fileMap.get(key);
+        return Tree.lookup(treeId, key);
     }
 
-    /** Return File of fileName in commit.
+    /** Return SHA1 String of the blob of fileName in commit, aborting
+     *  with errMsg if this commit does not track fileName.
      * @param fileName : name of file.
-     * @return File of fileName in commit.
+     * @return SHA1 String of the blob of fileName in commit.
      */
-    protected File getFilefromCommit(String fileName, String errMsg) {
+    protected String getBlobFromCommit(String fileName, String errMsg) {
         String id = this.getCommittedFileSHA1(fileName);
         if (id == null) {
             Utils.abort(errMsg);
         }
-        return Utils.join(Repository.COMMITED_DIR, id);
-    }
-
-    /** Helper function for log(), global-log().
-     *  Print the commit information.
-     */
-    protected void printCommitInfo() {
-        message("===");
-        message("commit " + this.getSHA1());
-        message("Date: " + this.getDate());
-        message(this.getMessage());
-        message("");
+        return id;
     }
 }
@@ -0,0 +1,318 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.error;
+import static gitlet.Utils.join;
+
+/** The commit graph of a repository, kept in .gitlet/commit_graph: one
+ *  fixed-width row per commit with its id, the rows of its parents, its
+ *  generation number and its timestamp. The file is memory-mapped, so walking
+ *  history reads rows instead of decoding commit objects.
+ *
+ *  Rows are appended as commits are made, so parents always come before their
+ *  children and row order is a topological order. The generation number of a
+ *  commit is one more than the largest of its parents', 1 for the initial
+ *  commit, so a commit can only be an ancestor of commits of larger generation.
+ *
+ *  FORMAT :
+ *          int MAGIC | int version | int count | count rows
+ *  where each row is ROW_SIZE bytes:
+ *          20-byte id | int first parent | int second parent | int generation
+ *          | long timestamp
+ *  and a missing parent is NO_PARENT. A row is written before the count that
+ *  covers it, so an interrupted append leaves the graph as it was.
+ *
+ *  @author Hongfa You
+ */
+class CommitGraph {
+    /** Row of a parent that does not exist. */
+    static final int NO_PARENT = -1;
+
+    private static final int MAGIC = 0x47475246; // "GGRF"
+    private static final int VERSION = 1;
+    private static final int ID_SIZE = 20;
+    private static final int HEADER_SIZE = 12;
+    private static final int COUNT_OFFSET = 8;
+    private static final int ROW_SIZE = 40;
+
+    /** The mapped graph file, or null before it is opened. */
+    private static MappedByteBuffer graph;
+    /** Number of rows in the graph. */
+    private static int count;
+
+    /** Return the number of commits in the graph. */
+    static int size() {
+        open();
+        return count;
+    }
+
+    /** Return the row of commit ID, or NO_PARENT if it is not in the graph.
+     *  The row is looked up in the CommitIndex, and checked against the
+     *  graph in case the index is out of date.
+     *  TIME COMPLEXITY : O(logN). N : number of commits.
+     */
+    static int find(String id) {
+        byte[] key = Pack.toBytes(id);
+        int row = CommitIndex.rowOf(key);
+        open();
+        if (row < 0 || row >= count
+                || !graph.slice(HEADER_SIZE + row * ROW_SIZE, ID_SIZE).equals(ByteBuffer.wrap(key))) {
+            return NO_PARENT;
+        }
+        return row;
+    }
+
+    /** Return the row of commit ID, rebuilding the graph once if it does not
+     *  have ID, as when the file was lost; aborts if there is no such commit. */
+    static int rowOf(String id) {
+        int row = find(id);
+        if (row == NO_PARENT) {
+            if (ObjectStore.readCommit(id) == null) {
+                Utils.abort("No commit with that id exists.");
+            }
+            rebuild();
+            row = find(id);
+        }
+        return row;
+    }
+
+    /** Return the SHA1 String of the commit at ROW. */
+    static String idAt(int row) {
+        byte[] id = new byte[ID_SIZE];
+        graph.get(HEADER_SIZE + row * ROW_SIZE, id);
+        return Utils.toHex(id);
+    }
+
+    /** Return the row of the first parent of ROW, or NO_PARENT. */
+    static int firstParent(int row) {
+        return graph.getInt(HEADER_SIZE + row * ROW_SIZE + ID_SIZE);
+    }
+
+    /** Return the row of the second parent of ROW, or NO_PARENT. */
+    static int secondParent(int row) {
+        return graph.getInt(HEADER_SIZE + row * ROW_SIZE + ID_SIZE + 4);
+    }
+
+    /** Return the generation number of ROW. */
+    static int generation(int row) {
+        return graph.getInt(HEADER_SIZE + row * ROW_SIZE + ID_SIZE + 8);
+    }
+
+    /** Return the timestamp of ROW, in milliseconds since the epoch. */
+    static long timestamp(int row) {
+        return graph.getLong(HEADER_SIZE + row * ROW_SIZE + ID_SIZE + 12);
+    }
+
+    /** Append a row for the newly saved COMMIT, whose parents are already in
+     *  the graph, and add it to the CommitIndex; the whole graph is rebuilt
+     *  if they are not.
+     *  TIME COMPLEXITY : O(logN). N : number of commits.
+     */
+    static void append(Commit commit) {
+        open();
+        if (find(commit.getSHA1()) != NO_PARENT) {
+            /* Already there, as when opening the graph rebuilt it. */
+            return;
+        }
+        int first = parentRow(commit.getfirstParent());
+        int second = parentRow(commit.getsecondParent());
+        if (first == NO_PARENT && commit.getfirstParent() != null
+                || second == NO_PARENT && commit.getsecondParent() != null) {
+            rebuild();
+            return;
+        }
+        /* Once the parents are found, as the index only takes commits while
+         * it holds as many as the graph. */
+        CommitIndex.append(commit);
+        ByteBuffer row = ByteBuffer.allocate(ROW_SIZE);
+        putRow(row, commit.getSHA1(), first, second, commit.getTimestamp());
+        try (FileChannel channel = FileChannel.open(graphFile().toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.write(row.flip(), HEADER_SIZE + (long) count * ROW_SIZE);
+            channel.write(ByteBuffer.allocate(4).putInt(0, count + 1), COUNT_OFFSET);
+        } catch (IOException excp) {
+            throw error("Cannot write commit graph: %s", excp.getMessage());
+        }
+        close();
+    }
+
+    /** Write the graph anew from every stored commit, and the CommitIndex,
+     *  which refers to its rows.
+     *  TIME COMPLEXITY : O(C + NlogN). C : total size of commits. N : number
+     *   of commits.
+     */
+    static void rebuild() {
+        Map<String, Commit> commits = new HashMap<>();
+        for (String id : ObjectStore.commitIds()) {
+            commits.put(id, Commit.fromBytes(ObjectStore.readCommit(id)));
+        }
+        List<String> order = topologicalOrder(commits);
+        Map<String, Integer> rows = new HashMap<>();
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + order.size() * ROW_SIZE);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(order.size());
+        int[] generations = new int[order.size()];
+        for (String id : order) {
+            Commit commit = commits.get(id);
+            int first = rows.getOrDefault(commit.getfirstParent(), NO_PARENT);
+            int second = rows.getOrDefault(commit.getsecondParent(), NO_PARENT);
+            int generation = 1 + Math.max(first == NO_PARENT ? 0 : generations[first],
+                    second == NO_PARENT ? 0 : generations[second]);
+            generations[rows.size()] = generation;
+            rows.put(id, rows.size());
+            buf.put(Pack.toBytes(id)).putInt(first).putInt(second).putInt(generation)
+                    .putLong(commit.getTimestamp());
+        }
+        close();
+        File tmpfile = ObjectStore.tempObject();
+        try {
+            Files.write(tmpfile.toPath(), buf.array());
+            Files.move(tmpfile.toPath(), graphFile().toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmpfile.delete();
+            throw error("Cannot write commit graph: %s", excp.getMessage());
+        }
+        /* Rows were numbered anew. */
+        CommitIndex.rebuild();
+    }
+
+    /** Return the ids of COMMITS ordered so that parents come before their
+     *  children, visiting the commits in id order for a stable result. */
+    private static List<String> topologicalOrder(Map<String, Commit> commits) {
+        List<String> order = new ArrayList<>(commits.size());
+        Set<String> placed = new HashSet<>();
+        String[] ids = commits.keySet().toArray(new String[0]);
+        Arrays.sort(ids);
+        Deque<String> stack = new ArrayDeque<>();
+        for (String start : ids) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (placed.contains(id)) {
+                    stack.pop();
+                    continue;
+                }
+                Commit commit = commits.get(id);
+                String first = commit.getfirstParent();
+                String second = commit.getsecondParent();
+                boolean ready = true;
+                for (String parent : new String[] {second, first}) {
+                    if (parent != null && commits.containsKey(parent)
+                            && !placed.contains(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    placed.add(id);
+                    order.add(id);
+                }
+            }
+        }
+        return order;
+    }
+
+    /** Return the row of the parent ID, or NO_PARENT if ID is null or not
+     *  in the graph. */
+    private static int parentRow(String id) {
+        return id == null ? NO_PARENT : find(id);
+    }
+
+    /** Write the row of commit ID, with parents FIRST and SECOND and
+     *  timestamp TIME, to BUF. */
+    private static void putRow(ByteBuffer buf, String id, int first, int second, long time) {
+        int generation = 1 + Math.max(first == NO_PARENT ? 0 : generation(first),
+                second == NO_PARENT ? 0 : generation(second));
+        buf.put(Pack.toBytes(id)).putInt(first).putInt(second).putInt(generation).putLong(time);
+    }
+
+    /** Map the graph file, writing it anew from the commits if there is
+     *  none, as when it was lost, or if it cannot be read. */
+    private static void open() {
+        if (graph != null) {
+            return;
+        }
+        File file = graphFile();
+        if (!file.isFile()) {
+            rebuild();
+            open();
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            graph = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw error("Cannot read commit graph: %s", excp.getMessage());
+        }
+        if (graph.limit() < HEADER_SIZE || graph.getInt(0) != MAGIC
+                || graph.getInt(4) != VERSION) {
+            /* Not a graph this version can read: start over from the commits. */
+            rebuild();
+            open();
+            return;
+        }
+        count = Math.min(graph.getInt(COUNT_OFFSET), (graph.limit() - HEADER_SIZE) / ROW_SIZE);
+    }
+
+    /** Forget the graph of the previous repository; see Repository.setRoot. */
+    static void forget() {
+        close();
+    }
+
+    /** The mapped graph of one repository, set aside while gitlet works on
+     *  another; see Repository.State. */
+    static final class State {
+        private final MappedByteBuffer graph;
+        private final int count;
+
+        private State(MappedByteBuffer graph, int count) {
+            this.graph = graph;
+            this.count = count;
+        }
+    }
+
+    /** Return the mapped graph of the repository in use. */
+    static State setAside() {
+        return new State(graph, count);
+    }
+
+    /** Put SAVED, returned by setAside(), back in place, or start afresh if
+     *  SAVED is null. */
+    static void putBack(State saved) {
+        close();
+        if (saved != null) {
+            graph = saved.graph;
+            count = saved.count;
+        }
+    }
+
+    /** Forget the mapping, so that the graph file is mapped again on next use. */
+    private static void close() {
+        graph = null;
+        count = 0;
+    }
+
+    /** Return the graph file of this repository. */
+    private static File graphFile() {
+        return join(Repository.GITLET_DIR, "commit_graph");
+    }
+}
@@ -1,6 +1,9 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 import static gitlet.Repository.COMMITED_DIR;
@@ -11,9 +14,7 @@ import static gitlet.Utils.plainFilenamesIn;
 /** Helper class providing static helper method for "commit".
  *  staged2Commited(Commit commit) : Move the files in the directory .gitlet/staged_obj/
  *                                   to the directory .gitlet/commited_obj.
- *  copySnapshot(Commit commit) : Copy snapshots of current Commit to the new Commit commit.
- *                                If no snapshots, namely fileMap of current Commit is empty,
- *                                just create a new TreeMap.
+ *  copySnapshot(Commit commit) : Share the snapshot of current Commit with the new Commit.
  */
 public class CommitHelper {
 
@@ -27,21 +28,24 @@ public class CommitHelper {
         Blob.deleteRemoval();
     }
 
-    /**  Copy snapshots of current Commit to the new Commit commit.
-     *   If no snapshots, namely fileMap of current Commit is empty,
-     *   just create a new TreeMap.
+    /**  Share the snapshot of current Commit with the new Commit commit.
+     *   Snapshots are trees, so only the id of the root tree is copied; the
+     *   staged changes then rewrite just the trees on their paths.
      * @param commit : new commit.
+     * TIME COMPLEXITY : O(1).
      */
     protected static void copySnapshot(Commit commit) {
         Commit lastestCommit = Commit.readCommitFromFile(HEAD.whichCommit());
-        if (!lastestCommit.isFilemapNull()) {
-            commit.fileMap = (TreeMap<String, String>) lastestCommit.fileMap.clone();
-        } else {
-            commit.fileMap = new TreeMap<>();
-        }
+        commit.setTree(lastestCommit.getTreeId());
     }
 
     /** helper function for Staged2Commited().
+     *  Committed blobs are content-addressed: each one is named by the SHA1 of
+     *  its contents, so identical contents are stored only once no matter how
+     *  many files, branches or commits refer to them.
+     *  The staged additions and removals are applied to the tree of commit at
+     *  once, so each changed directory is written a single time. Staged files
+     *  are not read again: their ids were recorded when they were staged.
      * @param commit : new commit.
      */
     private static void moveFromStaged2Commited(Commit commit) {
@@ -53,34 +57,43 @@ public class CommitHelper {
         }
 
         File tmpfile;
-        File destfile;
-        Boolean isRmNotEmpty = !Blob.isRemovalEmpty();
+        TreeMap<String, String> changes = new TreeMap<>();
         for (String file: listOfStaged) { // file is a SHA1 String
             tmpfile = Utils.join(STAGE_DIR, file);
             String name = Blob.blobMap.get(file); // name: hello.c (for example)
-
-            Calendar calendar = Calendar.getInstance();
-            Date date = calendar.getTime();
-            String shaId = Utils.sha1(name + date.toString());
-
-            if (commit.isFilemapContains(name)) {
-                commit.fileMap.replace(name, shaId);
-            } else {
-                commit.fileMap.put(name, shaId); //map from file name (hello.c) to SHA1 String
+            String shaId = Blob.stagedBlob(file); // hashed as it was staged
+            if (shaId == null) {
+                shaId = ObjectStore.hashLoose(tmpfile);
             }
-            destfile = Utils.join(COMMITED_DIR, shaId);
-            Utils.secureCopyFile(tmpfile, destfile);
-            tmpfile.delete();
+            changes.put(name, shaId); //map from file name (hello.c) to SHA1 String
+            storeBlob(tmpfile, shaId);
+        }
+
+        /** Remove the entry of unstaged files from the snapshot. */
+        for (Map.Entry<String, String> entry : Blob.removal.entrySet()) {
+            changes.put(entry.getKey(), null);
         }
+        commit.setTree(Tree.update(commit.getTreeId(), changes));
+    }
 
-        if (!isRmNotEmpty) {
+    /** Move the staged file STAGED into .gitlet/commited_obj under the name SHAID.
+     *  If a blob with the same contents is already stored, loose or packed,
+     *  the staged copy is simply dropped, so an unchanged file costs no write
+     *  at all.
+     * @param staged : file in .gitlet/staged_obj.
+     * @param shaId : SHA1 String of the contents of staged.
+     */
+    private static void storeBlob(File staged, String shaId) {
+        File destfile = Utils.join(COMMITED_DIR, shaId);
+        if (ObjectStore.hasBlob(shaId)) {
+            staged.delete();
             return;
         }
-        /** Remove the entry of unstaged files from fileMap. */
-        for (Map.Entry<String, String> entry : Blob.removal.entrySet()) {
-            if (commit.isFilemapContains(entry.getKey())) {
-                commit.fileMap.remove(entry.getKey());
-            }
+        try {
+            Files.move(staged.toPath(), destfile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            Utils.secureCopyFile(staged, destfile);
+            staged.delete();
         }
     }
 
@@ -0,0 +1,389 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+import static gitlet.Utils.error;
+import static gitlet.Utils.join;
+
+/** The ids of all commits, kept sorted in .gitlet/commit_index so that an
+ *  abbreviated commit id is resolved by binary search instead of a scan of
+ *  every commit. Only ids starting with the abbreviation match it. Each id
+ *  comes with the row of its commit in the CommitGraph, which finds rows
+ *  through this index.
+ *
+ *  The sorted ids are searched through a 256-entry fan-out table, as in a
+ *  Pack index. Commits made since the ids were last sorted are appended,
+ *  unsorted, after them, and are scanned; once there are TAIL_LIMIT of them
+ *  the whole index is sorted again.
+ *
+ *  FORMAT :
+ *          int MAGIC | int version | int sorted | int[256] fan-out
+ *          | sorted entries | appended entries
+ *  where every entry is a 20-byte id and the int row of its commit in the
+ *  CommitGraph, entry b of the fan-out table is the number of sorted ids
+ *  whose first byte is at most b, and the appended entries run to the end
+ *  of the file. The index holds exactly the commits of the graph.
+ *
+ *  @author Hongfa You
+ */
+class CommitIndex {
+    private static final int MAGIC = 0x47434944; // "GCID"
+    private static final int VERSION = 2;
+    private static final int ID_SIZE = 20;
+    private static final int ENTRY_SIZE = ID_SIZE + 4;
+    private static final int FANOUT_OFFSET = 12;
+    private static final int IDS_OFFSET = FANOUT_OFFSET + 256 * 4;
+    /** Number of appended ids that makes the next append sort the index. */
+    private static final int TAIL_LIMIT = 256;
+
+    /** The mapped index file, or null before it is opened. */
+    private static MappedByteBuffer index;
+    /** Number of sorted ids. */
+    private static int sorted;
+    /** Number of ids appended after the sorted ones. */
+    private static int tail;
+
+    /** Return the SHA1 String of the only commit whose id starts with PREFIX,
+     *  or null if there is none; aborts if there are several.
+     * @param prefix : abbreviation of a commit id, in hexadecimal.
+     * TIME COMPLEXITY : O(logN + M + T). N : number of commits. M : number of
+     *   commits matching PREFIX. T : number of appended ids, at most TAIL_LIMIT.
+     */
+    static String resolve(String prefix) {
+        byte[] nibbles = nibbles(prefix);
+        if (nibbles == null) {
+            return null;
+        }
+        open();
+        TreeSet<String> matches = matches(nibbles);
+        if (matches.size() > 1) {
+            Utils.abort("Commit id " + prefix + " is ambiguous: " + matches.size()
+                    + " commits start with it.");
+        }
+        return matches.isEmpty() ? null : matches.first();
+    }
+
+    /** Add the id of the newly saved COMMIT to the index, with the row it
+     *  is about to take in the CommitGraph. Called by CommitGraph.append just
+     *  before it writes the row, while the index holds as many commits as
+     *  the graph, so that the index is appended to rather than rebuilt.
+     *  TIME COMPLEXITY : O(logN), or O(NlogN) once every TAIL_LIMIT commits.
+     */
+    static void append(Commit commit) {
+        open();
+        byte[] id = Pack.toBytes(commit.getSHA1());
+        if (find(id) != CommitGraph.NO_PARENT) {
+            close();
+            return;
+        }
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE).put(id).putInt(CommitGraph.size());
+        try (FileChannel channel = FileChannel.open(indexFile().toPath(),
+                StandardOpenOption.APPEND)) {
+            channel.write(entry.flip());
+        } catch (IOException excp) {
+            throw error("Cannot write commit index: %s", excp.getMessage());
+        }
+        boolean isFull = tail + 1 >= TAIL_LIMIT;
+        close();
+        if (isFull) {
+            sortTail();
+        }
+    }
+
+    /** Return the row in the CommitGraph of the commit whose id is the
+     *  SHA1 bytes ID, or CommitGraph.NO_PARENT if it is not indexed.
+     *  TIME COMPLEXITY : O(logN + T). T : number of appended ids.
+     */
+    static int rowOf(byte[] id) {
+        open();
+        return find(id);
+    }
+
+    /** Write the index anew, sorted, from the commits of the CommitGraph.
+     *  TIME COMPLEXITY : O(NlogN). N : number of commits.
+     */
+    static void rebuild() {
+        int count = CommitGraph.size();
+        String[] ids = new String[count];
+        int[] rows = new int[count];
+        for (int row = 0; row < count; row += 1) {
+            ids[row] = CommitGraph.idAt(row);
+            rows[row] = row;
+        }
+        close();
+        write(ids, rows);
+    }
+
+    /** Write the index anew with its appended entries sorted among the
+     *  others, which needs no CommitGraph.
+     *  TIME COMPLEXITY : O(NlogN). N : number of commits.
+     */
+    private static void sortTail() {
+        open();
+        int count = sorted + tail;
+        String[] ids = new String[count];
+        int[] rows = new int[count];
+        for (int pos = 0; pos < count; pos += 1) {
+            ids[pos] = idAt(pos);
+            rows[pos] = rowAt(pos);
+        }
+        close();
+        write(ids, rows);
+    }
+
+    /** Write the index file anew from the commits IDS, whose rows in the
+     *  CommitGraph are ROWS, sorting them. */
+    private static void write(String[] ids, int[] rows) {
+        Integer[] order = new Integer[ids.length];
+        int[] fanout = new int[256];
+        for (int i = 0; i < ids.length; i += 1) {
+            order[i] = i;
+            fanout[Integer.parseInt(ids[i].substring(0, 2), 16)] += 1;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> ids[i]));
+        ByteBuffer buf = ByteBuffer.allocate(IDS_OFFSET + ids.length * ENTRY_SIZE);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(ids.length);
+        int total = 0;
+        for (int b = 0; b < 256; b += 1) {
+            total += fanout[b];
+            buf.putInt(total);
+        }
+        for (int i : order) {
+            buf.put(Pack.toBytes(ids[i])).putInt(rows[i]);
+        }
+        File tmpfile = ObjectStore.tempObject();
+        try {
+            Files.write(tmpfile.toPath(), buf.array());
+            Files.move(tmpfile.toPath(), indexFile().toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmpfile.delete();
+            throw error("Cannot write commit index: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the SHA1 Strings of the ids starting with NIBBLES. */
+    private static TreeSet<String> matches(byte[] nibbles) {
+        TreeSet<String> result = new TreeSet<>();
+        for (int i = lowerBound(nibbles); i < sorted && startsWith(i, nibbles); i += 1) {
+            result.add(idAt(i));
+        }
+        for (int i = sorted; i < sorted + tail; i += 1) {
+            if (startsWith(i, nibbles)) {
+                result.add(idAt(i));
+            }
+        }
+        return result;
+    }
+
+    /** Return the hexadecimal digits of PREFIX as values 0 to 15, or null if
+     *  PREFIX is not the start of an id. */
+    private static byte[] nibbles(String prefix) {
+        if (prefix.length() > Utils.UID_LENGTH) {
+            return null;
+        }
+        byte[] result = new byte[prefix.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            int digit = Character.digit(prefix.charAt(i), 16);
+            if (digit < 0) {
+                return null;
+            }
+            result[i] = (byte) digit;
+        }
+        return result;
+    }
+
+    /** Return the position of the first sorted id that is not smaller than
+     *  NIBBLES followed by zeros. Only the fan-out buckets of the first byte
+     *  NIBBLES can start with are searched. */
+    private static int lowerBound(byte[] nibbles) {
+        int first = nibbles.length == 0 ? 0 : nibbles[0] << 4;
+        if (nibbles.length > 1) {
+            first |= nibbles[1];
+        }
+        int lo = first == 0 ? 0 : index.getInt(FANOUT_OFFSET + (first - 1) * 4);
+        int hi = sorted;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, nibbles) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Compare the first digits of the id at position POS with NIBBLES. */
+    private static int compare(int pos, byte[] nibbles) {
+        int base = IDS_OFFSET + pos * ENTRY_SIZE;
+        for (int i = 0; i < nibbles.length; i += 1) {
+            int cmp = Integer.compare(nibble(base, i), nibbles[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Return true if the id at position POS starts with NIBBLES. */
+    private static boolean startsWith(int pos, byte[] nibbles) {
+        return compare(pos, nibbles) == 0;
+    }
+
+    /** Return nibble I of the id that starts at byte BASE of the index. */
+    private static int nibble(int base, int i) {
+        int b = index.get(base + i / 2) & 0xff;
+        return i % 2 == 0 ? b >>> 4 : b & 0xf;
+    }
+
+    /** Return the SHA1 String of the id at position POS. */
+    private static String idAt(int pos) {
+        byte[] id = new byte[ID_SIZE];
+        index.get(IDS_OFFSET + pos * ENTRY_SIZE, id);
+        return Utils.toHex(id);
+    }
+
+    /** Return the row in the CommitGraph of the commit at position POS. */
+    private static int rowAt(int pos) {
+        return index.getInt(IDS_OFFSET + pos * ENTRY_SIZE + ID_SIZE);
+    }
+
+    /** Return the row of the commit whose id is the SHA1 bytes ID, or
+     *  CommitGraph.NO_PARENT. The sorted ids are searched within the fan-out
+     *  bucket of the first byte of ID, and then the appended ones. */
+    private static int find(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(FANOUT_OFFSET + (first - 1) * 4);
+        int hi = index.getInt(FANOUT_OFFSET + first * 4);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, id);
+            if (cmp == 0) {
+                return rowAt(mid);
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int pos = sorted; pos < sorted + tail; pos += 1) {
+            if (compareId(pos, id) == 0) {
+                return rowAt(pos);
+            }
+        }
+        return CommitGraph.NO_PARENT;
+    }
+
+    /** Compare the id at position POS with ID, unsigned byte by byte. */
+    private static int compareId(int pos, byte[] id) {
+        int base = IDS_OFFSET + pos * ENTRY_SIZE;
+        for (int i = 0; i < ID_SIZE; i += 1) {
+            int cmp = (index.get(base + i) & 0xff) - (id[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Map the index file, writing it anew if there is none, if it cannot be
+     *  read, or if it does not hold as many ids as the CommitGraph has commits,
+     *  as when commits were made by an older version of gitlet or the graph
+     *  was written anew. */
+    private static void open() {
+        if (index != null) {
+            return;
+        }
+        /* Before the index is mapped, as a graph that has to be written anew
+         * writes the index anew too. */
+        int commits = CommitGraph.size();
+        File file = indexFile();
+        if (!file.isFile()) {
+            rebuild();
+            map(file);
+            return;
+        }
+        map(file);
+        boolean valid = index.limit() >= IDS_OFFSET && index.getInt(0) == MAGIC
+                && index.getInt(4) == VERSION
+                && IDS_OFFSET + (long) index.getInt(8) * ENTRY_SIZE <= index.limit()
+                && (index.limit() - IDS_OFFSET) / ENTRY_SIZE == commits;
+        if (!valid) {
+            rebuild();
+            map(file);
+        }
+    }
+
+    /** Map FILE, which was just checked or written. */
+    private static void map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw error("Cannot read commit index: %s", excp.getMessage());
+        }
+        if (index.limit() >= IDS_OFFSET) {
+            sorted = index.getInt(8);
+            tail = (index.limit() - IDS_OFFSET) / ENTRY_SIZE - sorted;
+        }
+    }
+
+    /** Forget the index of the previous repository; see Repository.setRoot. */
+    static void forget() {
+        close();
+    }
+
+    /** The mapped index of one repository, set aside while gitlet works on
+     *  another; see Repository.State. */
+    static final class State {
+        private final MappedByteBuffer index;
+        private final int sorted;
+        private final int tail;
+
+        private State(MappedByteBuffer index, int sorted, int tail) {
+            this.index = index;
+            this.sorted = sorted;
+            this.tail = tail;
+        }
+    }
+
+    /** Return the mapped index of the repository in use. */
+    static State setAside() {
+        return new State(index, sorted, tail);
+    }
+
+    /** Put SAVED, returned by setAside(), back in place, or start afresh if
+     *  SAVED is null. */
+    static void putBack(State saved) {
+        close();
+        if (saved != null) {
+            index = saved.index;
+            sorted = saved.sorted;
+            tail = saved.tail;
+        }
+    }
+
+    /** Forget the mapping, so that the index file is mapped again on next use. */
+    private static void close() {
+        index = null;
+        sorted = 0;
+        tail = 0;
+    }
+
+    /** Return the index file of this repository. */
+    private static File indexFile() {
+        return join(Repository.GITLET_DIR, "commit_index");
+    }
+}
@@ -0,0 +1,64 @@
+package gitlet;
+
+/** What a GitletRepository tells of one commit: its id, parents, date and
+ *  message. toString() gives the commit as log prints it.
+ *
+ *  @author Hongfa You
+ */
+public final class CommitInfo {
+    private final String id;
+    private final String firstParent;
+    private final String secondParent;
+    private final String date;
+    private final String message;
+
+    private CommitInfo(Commit commit) {
+        id = commit.getSHA1();
+        firstParent = commit.getfirstParent();
+        secondParent = commit.getsecondParent();
+        date = commit.getDate();
+        message = commit.getMessage();
+    }
+
+    /** Return the information of COMMIT. */
+    static CommitInfo of(Commit commit) {
+        return new CommitInfo(commit);
+    }
+
+    /** Return the SHA1 String of this commit. */
+    public String id() {
+        return id;
+    }
+
+    /** Return the SHA1 String of the first parent, or null for the initial commit. */
+    public String firstParent() {
+        return firstParent;
+    }
+
+    /** Return the SHA1 String of the second parent, or null unless this
+     *  commit is a merge. */
+    public String secondParent() {
+        return secondParent;
+    }
+
+    /** Return the date of this commit, as log prints it. */
+    public String date() {
+        return date;
+    }
+
+    /** Return the message of this commit. */
+    public String message() {
+        return message;
+    }
+
+    /** Return this commit as log prints it, one line separator after each line. */
+    @Override
+    public String toString() {
+        String nl = System.lineSeparator();
+        return "===" + nl
+                + "commit " + id + nl
+                + "Date: " + date + nl
+                + message + nl
+                + nl;
+    }
+}
@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+import static gitlet.Utils.error;
+
+/** Per-repository settings, kept as "key=value" lines in .gitlet/config.
+ *  KEYS :
+ *      core.compression : zlib level, 0 to 9 or -1 for zlib's default, used
+ *                         for newly written objects. 0 stores them as is.
+ *      core.format      : format of the repository, see UpgradeHelper.
+ *      checkout.mode    : "copy", the default, writes every checked-out file
+ *                         anew. "hardlink" links blobs stored as is, that is
+ *                         loose blobs written at core.compression 0, into the
+ *                         working directory instead, and copies the rest.
+ *                         Linked files are made read-only, as they share
+ *                         their storage with the object store: to change one,
+ *                         replace it, as most editors do, rather than making
+ *                         it writable. Gitlet itself never writes into them.
+ *                         Where being read-only would not stop gitlet's own
+ *                         user, such as root, files are copied instead. A
+ *                         linked blob is hashed again before it is read, so
+ *                         one written into anyway is never taken for the
+ *                         blob: its link is broken and it is reported lost
+ *                         unless a pack also holds it.
+ *
+ *  @author Hongfa You
+ */
+class Config {
+    /** Key of the compression level. */
+    static final String COMPRESSION = "core.compression";
+    /** Key of the repository format. */
+    static final String FORMAT = "core.format";
+    /** Key of the way files are checked out. */
+    static final String CHECKOUT_MODE = "checkout.mode";
+
+    /** Settings read from the config file, loaded on first use. The workers
+     *  of a command may read them at once, so they are only loaded and
+     *  replaced under the lock of this class. */
+    private static Properties settings;
+
+    /** Forget the settings, so that the config file is read again on next use. */
+    static synchronized void forget() {
+        settings = null;
+    }
+
+    /** Return the settings of the repository in use, or null if not loaded. */
+    static synchronized Properties setAside() {
+        return settings;
+    }
+
+    /** Put SAVED, returned by setAside(), back in place. */
+    static synchronized void putBack(Properties saved) {
+        settings = saved;
+    }
+
+    /** Return the value of KEY, or null if it is not set. */
+    static String get(String key) {
+        return load().getProperty(key);
+    }
+
+    /** Set KEY to VALUE and save the config file. */
+    static synchronized void set(String key, String value) {
+        if (key.equals(COMPRESSION)) {
+            parseLevel(value);
+        } else if (key.equals(CHECKOUT_MODE) && !value.equals("copy") && !value.equals("hardlink")) {
+            Utils.abort("Checkout mode must be copy or hardlink.");
+        }
+        load().setProperty(key, value);
+        try (OutputStream out = new FileOutputStream(configFile())) {
+            settings.store(out, null);
+        } catch (IOException excp) {
+            throw error("Cannot write config: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the zlib level newly written objects are compressed with. */
+    static int compressionLevel() {
+        String value = get(COMPRESSION);
+        return value == null ? Deflater.DEFAULT_COMPRESSION : parseLevel(value);
+    }
+
+    /** Return true if checked-out files are to be hardlinked from the object
+     *  store where they can be. */
+    static boolean isHardlinkCheckout() {
+        return "hardlink".equals(get(CHECKOUT_MODE));
+    }
+
+    /** Return VALUE as a compression level, aborting if it is not one. */
+    private static int parseLevel(String value) {
+        try {
+            int level = Integer.parseInt(value.trim());
+            if (level >= -1 && level <= 9) {
+                return level;
+            }
+        } catch (NumberFormatException excp) {
+            // Reported below.
+        }
+        Utils.abort("Compression level must be between -1 and 9.");
+        return 0;
+    }
+
+    /** Return the settings, reading the config file if necessary. */
+    private static synchronized Properties load() {
+        if (settings == null) {
+            Properties loaded = new Properties();
+            File file = configFile();
+            if (file.isFile()) {
+                try (InputStream in = new FileInputStream(file)) {
+                    loaded.load(in);
+                } catch (IOException excp) {
+                    throw error("Cannot read config: %s", excp.getMessage());
+                }
+            }
+            settings = loaded;
+        }
+        return settings;
+    }
+
+    /** Return the config file of this repository. */
+    private static File configFile() {
+        return Utils.join(Repository.GITLET_DIR, "config");
+    }
+}
@@ -0,0 +1,275 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.abort;
+import static gitlet.Utils.error;
+import static gitlet.Utils.join;
+
+/** A long-running gitlet process serving the commands of one repository over
+ *  the Unix-domain socket .gitlet/daemon.sock, so that commands skip JVM
+ *  startup and find commits, trees, branches and the index already in memory.
+ *
+ *  "gitlet daemon [idle seconds]" serves until no command came for that long,
+ *  IDLE_SECONDS by default, or until "gitlet daemon stop". While it runs,
+ *  gitlet started in the same directory forwards its command to it instead
+ *  of running it, and runs it itself only if the daemon cannot be reached.
+ *  The daemon is the only process writing to the repository while it runs,
+ *  so its caches stay valid. Commands are run one at a time, in the order
+ *  they connect.
+ *
+ *  PROTOCOL : the client sends
+ *          int count | count arguments, each an int length and UTF-8 bytes
+ *  and the daemon sends back everything the command prints, then closes the
+ *  connection. Any client able to open a Unix-domain socket can talk to it.
+ *  A client that has not sent its whole command REQUEST_SECONDS after it
+ *  was accepted is dropped, so that it cannot hold up the commands queued
+ *  behind it.
+ *
+ *  @author Hongfa You
+ */
+class Daemon {
+    /** Seconds without a command after which the daemon exits by default. */
+    private static final int IDLE_SECONDS = 300;
+    /** Largest number of arguments accepted from a client. */
+    private static final int MAX_ARGUMENTS = 1 << 16;
+    /** Largest argument accepted from a client, in bytes. */
+    private static final int MAX_ARGUMENT = 1 << 20;
+    /** Seconds a client has to send its command once accepted. */
+    private static final int REQUEST_SECONDS = 5;
+
+    /** True while this process is serving commands. */
+    private static boolean isServing;
+    /** True once "daemon stop" was served. */
+    private static boolean isStopping;
+
+    /** Serve the commands of this repository until idle for IDLE seconds, or
+     *  IDLE_SECONDS if IDLE is null.
+     * @param idle : number of idle seconds before exiting, or null.
+     */
+    static void serve(String idle) {
+        if (isServing) {
+            abort("A daemon is already running.");
+        }
+        long idleMillis = TimeUnit.SECONDS.toMillis(parseIdle(idle));
+        File socket = socketFile();
+        if (socket.exists()) {
+            try (SocketChannel running = connect(socket)) {
+                if (running != null) {
+                    abort("A daemon is already running.");
+                }
+            } catch (IOException excp) {
+                /* Closing a probe; nothing to do. */
+            }
+            socket.delete();
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            isServing = true;
+            isStopping = false;
+            while (!isStopping && selector.select(idleMillis) > 0) {
+                selector.selectedKeys().clear();
+                SocketChannel client = server.accept();
+                while (client != null && !isStopping) {
+                    handle(client);
+                    client = server.accept();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot serve %s: %s", socket, excp.getMessage());
+        } finally {
+            isServing = false;
+            socket.delete();
+        }
+    }
+
+    /** Return true if this process is serving commands. */
+    static boolean isServing() {
+        return isServing;
+    }
+
+    /** Make the daemon exit once the current command is done. */
+    static void stop() {
+        if (!isServing) {
+            abort("No daemon is running.");
+        }
+        isStopping = true;
+    }
+
+    /** Send the command ARGS to the daemon of this repository and copy what
+     *  it prints to standard output. Return false, having done nothing, if
+     *  there is no daemon to run ARGS, so that the caller runs it itself.
+     * @param args : <COMMAND> <OPERAND1> <OPERAND2> ...
+     */
+    static boolean forward(String[] args) {
+        boolean isStop = args[0].equals("daemon") && args.length > 1 && args[1].equals("stop");
+        if (isServing || args[0].equals("init") || args[0].equals("daemon") && !isStop) {
+            return false;
+        }
+        File socket = socketFile();
+        if (!socket.exists()) {
+            return false;
+        }
+        SocketChannel channel = connect(socket);
+        if (channel == null) {
+            return false;
+        }
+        if (args[0].equals("batch") && args.length > 1 && !args[1].equals("-c")) {
+            /* The daemon cannot read this standard input: send the commands. */
+            args = new String[] {"batch", "-c", Batch.read(args[1])};
+        }
+        try (SocketChannel open = channel) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(open)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+            open.shutdownOutput();
+            Channels.newInputStream(open).transferTo(System.out);
+            System.out.flush();
+        } catch (IOException excp) {
+            throw error("Lost the daemon: %s", excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Run the command sent by CLIENT, sending back what it prints. A command
+     *  failing on a bug is reported to its client and does not stop the daemon,
+     *  and a client too slow to send its command is dropped unanswered. */
+    private static void handle(SocketChannel client) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        try (SocketChannel open = client) {
+            String[] args = readRequest(open);
+            open.configureBlocking(true);
+            OutputStream out = Channels.newOutputStream(open);
+            PrintStream reply = new PrintStream(new BufferedOutputStream(out), false);
+            System.setOut(reply);
+            System.setErr(reply);
+            try {
+                Main.run(args);
+            } catch (GitletException excp) {
+                reply.println(excp.getMessage());
+            } catch (RuntimeException excp) {
+                excp.printStackTrace(reply);
+            } finally {
+                reply.flush();
+            }
+        } catch (IOException excp) {
+            /* The client went away; serve the next one. */
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    /** Read the arguments of a command from CLIENT, giving up once it took
+     *  REQUEST_SECONDS. CLIENT is left in non-blocking mode.
+     *  Every read waits on a selector for at most the time left, so a client
+     *  sending nothing, or sending slowly, is dropped at the deadline. */
+    private static String[] readRequest(SocketChannel client) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(REQUEST_SECONDS);
+        try (Selector selector = Selector.open()) {
+            client.configureBlocking(false);
+            client.register(selector, SelectionKey.OP_READ);
+            int count = readInt(client, selector, deadline);
+            if (count <= 0 || count > MAX_ARGUMENTS) {
+                throw new IOException("bad request");
+            }
+            String[] args = new String[count];
+            for (int i = 0; i < count; i += 1) {
+                int length = readInt(client, selector, deadline);
+                if (length < 0 || length > MAX_ARGUMENT) {
+                    throw new IOException("bad request");
+                }
+                ByteBuffer bytes = ByteBuffer.allocate(length);
+                readFully(client, selector, bytes, deadline);
+                args[i] = new String(bytes.array(), StandardCharsets.UTF_8);
+            }
+            return args;
+        }
+    }
+
+    /** Read an int from CLIENT, registered with SELECTOR, by DEADLINE. */
+    private static int readInt(SocketChannel client, Selector selector, long deadline)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES);
+        readFully(client, selector, buf, deadline);
+        return buf.getInt(0);
+    }
+
+    /** Fill BUF from CLIENT, registered with SELECTOR for reading, waiting
+     *  for data until DEADLINE, in System.nanoTime() terms. */
+    private static void readFully(SocketChannel client, Selector selector, ByteBuffer buf,
+                                  long deadline) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = client.read(buf);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            if (n == 0) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    throw new IOException("request timed out");
+                }
+                selector.select(left);
+                selector.selectedKeys().clear();
+            }
+        }
+    }
+
+    /** Return a connection to the daemon listening on SOCKET, or null if
+     *  none is. */
+    private static SocketChannel connect(File socket) {
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return the number of idle seconds given by IDLE, or IDLE_SECONDS. */
+    private static int parseIdle(String idle) {
+        if (idle == null) {
+            return IDLE_SECONDS;
+        }
+        try {
+            int seconds = Integer.parseInt(idle);
+            if (seconds > 0) {
+                return seconds;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        abort("Idle time must be a positive number of seconds.");
+        return IDLE_SECONDS;
+    }
+
+    /** Return the socket file of this repository. */
+    private static File socketFile() {
+        return join(Repository.GITLET_DIR, "daemon.sock");
+    }
+}
@@ -8,7 +8,7 @@ public class DebugHelper {
      */
     private static void testCommit() {
         Commit tmp = Commit.readCommitFromFile(HEAD.whichCommit());
-        for (Map.Entry<String, String> entry : tmp.fileMap.entrySet()) {
+        for (Map.Entry<String, String> entry : tmp.getFileMap().entrySet()) {
             String key = entry.getKey();
             String value = entry.getValue();
             System.out.println(key + " => " + value);
@@ -17,7 +17,7 @@ public class DebugHelper {
 
     /** Debug helper function. */
     public static void testBlob() {
-        Blob.blobMap = Blob.getTreeMap(Blob.blobMap, false);
+        Blob.loadBlobMap();
         for (Map.Entry<String, String> entry : Blob.blobMap.entrySet()) {
             String key = entry.getKey();
             String value = entry.getValue();
@@ -0,0 +1,226 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static gitlet.Utils.error;
+
+/** A delta describes an object as a sequence of copies from a base object and
+ *  literal insertions, so that a new version of a file can be packed as only
+ *  the bytes that changed.
+ *
+ *  FORMAT :
+ *          20-byte base id | long target size | int instruction count | instructions
+ *  where each instruction is either
+ *          INSERT | int length | length literal bytes
+ *          COPY   | long base offset | int length
+ *
+ *  A parsed Delta keeps only the instruction table; the literal bytes stay in
+ *  the pack mapping and the copied bytes stay in the base object.
+ *
+ *  @author Hongfa You
+ */
+class Delta {
+    /** Length of the blocks of the base that copies are anchored on. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+    /** PRIME ** (BLOCK - 1), used to roll the oldest byte out of the hash. */
+    private static final int PRIME_POW;
+
+    private static final byte INSERT = 0;
+    private static final byte COPY = 1;
+
+    static {
+        int pow = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            pow *= PRIME;
+        }
+        PRIME_POW = pow;
+    }
+
+    /** SHA1 String of the base object. */
+    private final String baseId;
+    /** Size of the object this delta produces. */
+    private final long size;
+    /** Target offset at which each instruction's output starts. */
+    private final long[] start;
+    /** Length of each instruction's output. */
+    private final int[] length;
+    /** For a copy, offset in the base; for an insert, minus one minus the
+     *  position of its literal bytes in the delta data. */
+    private final long[] source;
+
+    /** Parse the delta stored in DATA. */
+    Delta(ByteBuffer data) {
+        ByteBuffer buf = data.duplicate();
+        byte[] base = new byte[20];
+        buf.get(base);
+        baseId = Utils.toHex(base);
+        size = buf.getLong();
+        int count = buf.getInt();
+        start = new long[count];
+        length = new int[count];
+        source = new long[count];
+        long pos = 0;
+        for (int i = 0; i < count; i += 1) {
+            byte op = buf.get();
+            start[i] = pos;
+            if (op == COPY) {
+                source[i] = buf.getLong();
+                length[i] = buf.getInt();
+            } else if (op == INSERT) {
+                length[i] = buf.getInt();
+                source[i] = -1 - (buf.position() - data.position());
+                buf.position(buf.position() + length[i]);
+            } else {
+                throw error("Corrupt delta against %s.", baseId);
+            }
+            pos += length[i];
+        }
+        if (pos != size) {
+            throw error("Corrupt delta against %s.", baseId);
+        }
+    }
+
+    /** Return the SHA1 String of the base object. */
+    String baseId() {
+        return baseId;
+    }
+
+    /** Return the size of the object this delta produces. */
+    long size() {
+        return size;
+    }
+
+    /** Return the index of the instruction producing target offset POS. */
+    int find(long pos) {
+        int i = Arrays.binarySearch(start, pos);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /** Return the target offset at which instruction I starts. */
+    long start(int i) {
+        return start[i];
+    }
+
+    /** Return the length of the output of instruction I. */
+    int length(int i) {
+        return length[i];
+    }
+
+    /** Return true if instruction I copies from the base. */
+    boolean isCopy(int i) {
+        return source[i] >= 0;
+    }
+
+    /** Return, for a copy, the base offset it copies from, and for an insert,
+     *  the position of its literal bytes in the delta data. */
+    long source(int i) {
+        return source[i] >= 0 ? source[i] : -1 - source[i];
+    }
+
+    /** Return the delta turning BASE, whose SHA1 String is BASEID, into
+     *  TARGET, or null if it would take more than LIMIT bytes.
+     *  Copies are found by hashing the base in BLOCK-byte blocks and rolling
+     *  a hash of the same width over the target. */
+    static byte[] create(String baseId, byte[] base, byte[] target, int limit) {
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        ByteArrayOutputStream ops = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(ops);
+        int count = 0;
+        try {
+            int literal = 0;
+            int i = 0;
+            int h = target.length >= BLOCK ? hash(target, 0) : 0;
+            while (i + BLOCK <= target.length) {
+                Integer at = blocks.get(h);
+                if (at != null && matches(base, at, target, i)) {
+                    int from = at;
+                    int to = i;
+                    while (to > literal && from > 0 && base[from - 1] == target[to - 1]) {
+                        from -= 1;
+                        to -= 1;
+                    }
+                    int end = i + BLOCK;
+                    int baseEnd = at + BLOCK;
+                    while (end < target.length && baseEnd < base.length
+                           && base[baseEnd] == target[end]) {
+                        end += 1;
+                        baseEnd += 1;
+                    }
+                    if (to > literal) {
+                        writeInsert(out, target, literal, to - literal);
+                        count += 1;
+                    }
+                    out.writeByte(COPY);
+                    out.writeLong(from);
+                    out.writeInt(end - to);
+                    count += 1;
+                    if (ops.size() > limit) {
+                        return null;
+                    }
+                    literal = end;
+                    i = end;
+                    if (i + BLOCK <= target.length) {
+                        h = hash(target, i);
+                    }
+                } else {
+                    if (i + BLOCK < target.length) {
+                        h = (h - target[i] * PRIME_POW) * PRIME + target[i + BLOCK];
+                    }
+                    i += 1;
+                }
+            }
+            if (literal < target.length) {
+                writeInsert(out, target, literal, target.length - literal);
+                count += 1;
+            }
+            if (ops.size() > limit) {
+                return null;
+            }
+
+            ByteArrayOutputStream result = new ByteArrayOutputStream(ops.size() + 32);
+            DataOutputStream header = new DataOutputStream(result);
+            header.write(Pack.toBytes(baseId));
+            header.writeLong(target.length);
+            header.writeInt(count);
+            ops.writeTo(header);
+            header.flush();
+            return result.toByteArray();
+        } catch (IOException excp) {
+            throw error("Cannot compute delta: %s", excp.getMessage());
+        }
+    }
+
+    /** Write an instruction inserting LEN bytes of TARGET starting at FROM. */
+    private static void writeInsert(DataOutputStream out, byte[] target, int from, int len)
+            throws IOException {
+        out.writeByte(INSERT);
+        out.writeInt(len);
+        out.write(target, from, len);
+    }
+
+    /** Return the hash of the BLOCK bytes of DATA starting at FROM. */
+    private static int hash(byte[] data, int from) {
+        int h = 0;
+        for (int i = from; i < from + BLOCK; i += 1) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+
+    /** Return true if the BLOCK bytes at BASE[AT] and TARGET[I] are equal. */
+    private static boolean matches(byte[] base, int at, byte[] target, int i) {
+        return Arrays.equals(base, at, at + BLOCK, target, i, i + BLOCK);
+    }
+}
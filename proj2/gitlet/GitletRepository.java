@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/** A gitlet repository, for programs using gitlet as a library rather than
+ *  through the command line. There is one object per repository root, made
+ *  by open() or init(). Operations return what the commands would print as
+ *  values, such as CommitInfo or Status, and report every failure the
+ *  command would print, with the same message, as a GitletException; none
+ *  of them prints anything or exits.
+ *
+ *  The rest of gitlet keeps the repository in use in static state, so one
+ *  operation runs at a time in a process, whichever repository it is on.
+ *  Each object keeps what gitlet has loaded from its repository while
+ *  another is in use, so switching between repositories reads nothing
+ *  again and brings a repository up to date only the first time. Main
+ *  is the command line on top of this class.
+ *
+ *  @author Hongfa You
+ */
+public final class GitletRepository {
+    /** Repositories opened in this process, by canonical root. */
+    private static final Map<Path, GitletRepository> OPENED = new HashMap<>();
+
+    /** Canonical working directory of this repository. */
+    private final Path root;
+    /** What gitlet has loaded from this repository. */
+    private final Repository.State state;
+    /** True once this repository was brought up to date. */
+    private boolean isUpgraded;
+
+    private GitletRepository(Path root) {
+        this.root = root;
+        this.state = new Repository.State(root.toFile());
+    }
+
+    /** Return the repository whose working directory is DIR.
+     * @param dir : working directory holding the .gitlet directory.
+     */
+    public static synchronized GitletRepository open(Path dir) {
+        Path root = canonical(dir);
+        GitletRepository repository = OPENED.get(root);
+        if (repository == null) {
+            if (!root.resolve(".gitlet").toFile().isDirectory()) {
+                throw new GitletException("Not in an initialized Gitlet directory.");
+            }
+            repository = new GitletRepository(root);
+            OPENED.put(root, repository);
+        }
+        return repository;
+    }
+
+    /** Create a new repository, with its initial commit, in DIR and return it.
+     * @param dir : working directory of the new repository.
+     */
+    public static synchronized GitletRepository init(Path dir) {
+        Path root = canonical(dir);
+        GitletRepository repository = new GitletRepository(root);
+        Repository.use(repository.state);
+        Repository.init();
+        repository.isUpgraded = true;
+        OPENED.put(root, repository);
+        return repository;
+    }
+
+    /** Return the working directory of this repository. */
+    public Path root() {
+        return root;
+    }
+
+    /** Stage the files at PATHS, relative to the working directory. Each
+     *  may also be a directory, such as ".", or a glob pattern. */
+    public void add(String... paths) {
+        run(() -> Repository.add(paths));
+    }
+
+    /** Unstage the file at PATH, or stage it for removal if it is tracked. */
+    public void rm(String path) {
+        run(() -> Repository.rm(path));
+    }
+
+    /** Commit the staging area with MESSAGE and return the new commit id. */
+    public String commit(String message) {
+        return call(() -> Repository.commit(message, null));
+    }
+
+    /** Return the first-parent history of the head commit, newest first. */
+    public List<CommitInfo> log() {
+        return call(Repository::log);
+    }
+
+    /** Give every commit ever made to ACTION, in order of commit id, or
+     *  newest first if ISBYTIME. */
+    public void globalLog(boolean isByTime, Consumer<CommitInfo> action) {
+        run(() -> Repository.globalLog(isByTime, action));
+    }
+
+    /** Return the ids of the commits whose message is MESSAGE, in order. */
+    public List<String> find(String message) {
+        return call(() -> Repository.find(message, false));
+    }
+
+    /** Return the ids of the commits whose message contains TEXT, in order. */
+    public List<String> findSubstring(String text) {
+        return call(() -> Repository.find(text, true));
+    }
+
+    /** Return the branches, staging area and working tree state. */
+    public Status status() {
+        return call(Repository::status);
+    }
+
+    /** Check out the head of BRANCH and make it the current branch. */
+    public void checkout(String branch) {
+        run(() -> Repository.checkout(branch));
+    }
+
+    /** Restore the file at PATH as it is in the head commit. */
+    public void checkoutFile(String path) {
+        run(() -> Repository.checkout("--", path));
+    }
+
+    /** Restore the file at PATH as it is in the commit COMMITID, which may be
+     *  abbreviated. */
+    public void checkoutFile(String commitId, String path) {
+        run(() -> Repository.checkout(commitId, "--", path));
+    }
+
+    /** Check out the commit COMMITID, which may be abbreviated, and move the
+     *  current branch to it. */
+    public void reset(String commitId) {
+        run(() -> Repository.reset(commitId));
+    }
+
+    /** Create the branch NAME at the head commit. */
+    public void branch(String name) {
+        run(() -> Repository.branch(name));
+    }
+
+    /** Delete the branch NAME. */
+    public void rmBranch(String name) {
+        run(() -> Repository.rmBranch(name));
+    }
+
+    /** Merge the branch NAME into the current branch. */
+    public MergeResult merge(String name) {
+        return call(() -> Repository.merge(name));
+    }
+
+    /** Return the best common ancestors of the commits FIRST and SECOND, each
+     *  a branch name, HEAD or a commit id. */
+    public MergeBase mergeBase(String first, String second) {
+        return call(() -> Repository.mergeBase(first, second));
+    }
+
+    /** Move every loose commit and blob into one packfile. */
+    public void repack() {
+        run(Repository::repack);
+    }
+
+    /** Write the commit graph anew from all of the commits. */
+    public void rebuildCommitGraph() {
+        run(Repository::commitGraph);
+    }
+
+    /** Return the value of the setting KEY, or null if it is not set. */
+    public String config(String key) {
+        return call(() -> Repository.config(key, null));
+    }
+
+    /** Set the setting KEY to VALUE. */
+    public void config(String key, String value) {
+        run(() -> Repository.config(key, value));
+    }
+
+    @Override
+    public String toString() {
+        return "GitletRepository[" + root + "]";
+    }
+
+    /** Run OPERATION on this repository. */
+    private void run(Runnable operation) {
+        call(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /** Run OPERATION on this repository and return its result. The index is
+     *  saved if it succeeds. */
+    private <T> T call(Supplier<T> operation) {
+        synchronized (GitletRepository.class) {
+            activate();
+            T result = operation.get();
+            Repository.saveIndex();
+            return result;
+        }
+    }
+
+    /** Make this the repository gitlet works on, bringing it up to date the
+     *  first time. */
+    private void activate() {
+        Repository.use(state);
+        if (!isUpgraded) {
+            Repository.mkalldir();
+            Repository.upgrade();
+            isUpgraded = true;
+        }
+    }
+
+    /** Return the canonical form of DIR. */
+    private static Path canonical(Path dir) {
+        try {
+            return dir.toFile().getCanonicalFile().toPath();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot open %s: %s", dir, excp.getMessage());
+        }
+    }
+}
@@ -13,6 +13,8 @@ import static gitlet.Utils.writeObject;
 public class HEAD implements Serializable {
 //    private String pointBranch; // a String indicates the Commit HEAD should point to
     private static String pointBranchName;
+    /** True if HEAD was saved during a Batch and not yet written. */
+    private static boolean isPending;
 
     /** Initialize the "HEAD", create a branch named master, and make "HEAD" point to "master",
      *  and then save the "HEAD" and "master".
@@ -46,12 +48,28 @@ public class HEAD implements Serializable {
 
     /** Save HEAD to File System. */
     public static void saveHEAD() {
+        if (Batch.isCoalescing()) {
+            isPending = true;
+            return;
+        }
         File file = Utils.join(Repository.BRANCH_DIR, "HEAD");
         writeObject(file, pointBranchName);
     }
 
-    /** Read HEAD from File System. */
+    /** Write HEAD if it was saved during a Batch since the last flush. */
+    public static void flush() {
+        if (isPending) {
+            isPending = false;
+            saveHEAD();
+        }
+    }
+
+    /** Read HEAD from File System, unless this process already read or
+     *  saved it. */
     public static void readHEAD() {
+        if (pointBranchName != null) {
+            return;
+        }
         File file = Utils.join(Repository.BRANCH_DIR, "HEAD");
         pointBranchName = readObject(file, String.class);
     }
@@ -62,6 +80,39 @@ public class HEAD implements Serializable {
         Branch pointBranch = Branch.readBranchIn(pointBranchName, false);
         return pointBranch.whichCommit();
     }
+    /** Forget HEAD, so that it is read again on next use. */
+    static void forget() {
+        pointBranchName = null;
+        isPending = false;
+    }
+
+    /** What HEAD has loaded from one repository, set aside while gitlet
+     *  works on another; see Repository.State. */
+    static final class State {
+        private final String pointBranchName;
+        private final boolean isPending;
+
+        private State(String pointBranchName, boolean isPending) {
+            this.pointBranchName = pointBranchName;
+            this.isPending = isPending;
+        }
+    }
+
+    /** Return what HEAD has loaded from the repository in use. */
+    static State setAside() {
+        return new State(pointBranchName, isPending);
+    }
+
+    /** Put SAVED, returned by setAside(), back in place, or start afresh if
+     *  SAVED is null. */
+    static void putBack(State saved) {
+        forget();
+        if (saved != null) {
+            pointBranchName = saved.pointBranchName;
+            isPending = saved.isPending;
+        }
+    }
+
     /** Return pointBranchName. */
     public static String getPointBranch() {
         return pointBranchName;
@@ -0,0 +1,298 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+
+/** The index of the working directory, kept in .gitlet/index: for each path
+ *  whose contents were hashed, the size, modification time and inode the file
+ *  had at the time, and the SHA1 of its contents. As long as a file's stat
+ *  data is unchanged its contents are taken to be unchanged too, so status and
+ *  add only read the files that were touched since they were last hashed.
+ *
+ *  A file modified within the timestamp resolution of the moment the index
+ *  was written could keep the modification time recorded for its previous
+ *  contents. Entries are therefore only trusted if the file's modification
+ *  time is older than that of the index file; "racily clean" entries are
+ *  hashed again, and saving the index then makes them trustworthy.
+ *
+ *  The workers of a command may use the index at once: its entries are only
+ *  touched under the lock of this class, and files are read outside it.
+ *
+ *  FORMAT :
+ *          int MAGIC | byte version | varint count | count entries
+ *  where each entry is the path as a String, followed by long size, long
+ *  modification time in nanoseconds, long inode and the 20-byte SHA1.
+ *
+ *  @author Hongfa You
+ */
+class Index {
+    /** Magic number opening the index file. */
+    private static final int MAGIC = 0x47494e44; // "GIND"
+    /** Version of the index file. */
+    private static final int VERSION = 1;
+    /** Attributes read for each file where the platform has them. */
+    private static final String UNIX_ATTRIBUTES = "unix:isRegularFile,size,lastModifiedTime,ino";
+
+    /** Entries of the index, by path. Loaded on first use. */
+    private static TreeMap<String, Entry> entries;
+    /** Modification time of the index file when it was loaded, in nanoseconds. */
+    private static long indexTime;
+    /** True if entries changed since the index was loaded. */
+    private static boolean isDirty;
+
+    /** Stat data of a file. */
+    static class Stat {
+        private final long size;
+        private final long mtime;
+        private final long inode;
+
+        Stat(long size, long mtime, long inode) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+        }
+
+        /** Return the stat data of FILE, or null if it is not a plain file. */
+        static Stat of(File file) {
+            try {
+                Map<String, Object> attrs = Files.readAttributes(file.toPath(), UNIX_ATTRIBUTES);
+                if (!(Boolean) attrs.get("isRegularFile")) {
+                    return null;
+                }
+                return new Stat((Long) attrs.get("size"),
+                        nanos((FileTime) attrs.get("lastModifiedTime")), (Long) attrs.get("ino"));
+            } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+                return basic(file);
+            } catch (NoSuchFileException excp) {
+                return null;
+            } catch (IOException excp) {
+                throw error("Cannot stat %s: %s", file, excp.getMessage());
+            }
+        }
+
+        /** Return the stat data of FILE where there is no inode to read. */
+        private static Stat basic(File file) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                        BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    return null;
+                }
+                return new Stat(attrs.size(), nanos(attrs.lastModifiedTime()), 0);
+            } catch (NoSuchFileException excp) {
+                return null;
+            } catch (IOException excp) {
+                throw error("Cannot stat %s: %s", file, excp.getMessage());
+            }
+        }
+
+        private static long nanos(FileTime time) {
+            return time.to(TimeUnit.NANOSECONDS);
+        }
+
+        /** Return true if OTHER is the same stat data. */
+        boolean isSame(Stat other) {
+            return other != null && size == other.size && mtime == other.mtime
+                    && inode == other.inode;
+        }
+
+        /** Write this stat data to OUT. */
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(size);
+            out.writeLong(mtime);
+            out.writeLong(inode);
+        }
+
+        /** Read stat data written by write() from IN. */
+        static Stat read(ByteBuffer in) {
+            return new Stat(in.getLong(), in.getLong(), in.getLong());
+        }
+    }
+
+    /** What the index knows of one path. */
+    private static class Entry {
+        private final Stat stat;
+        /** SHA1 String of the contents the file had with STAT. */
+        private final String hash;
+
+        Entry(Stat stat, String hash) {
+            this.stat = stat;
+            this.hash = hash;
+        }
+
+        /** Return true if the file, now with stat data NOW, can be taken to
+         *  still have contents HASH. */
+        boolean isClean(Stat now) {
+            return stat.size == now.size && stat.mtime == now.mtime
+                    && stat.inode == now.inode && stat.mtime < indexTime;
+        }
+    }
+
+    /** Return the SHA1 String of the contents of the file PATH of the working
+     *  directory, or null if there is no such file. The file is only read if
+     *  its stat data changed since it was last hashed.
+     * @param path : path of file, relative to the working directory.
+     */
+    static String hash(String path) {
+        File file = join(Repository.CWD, path);
+        Stat stat = Stat.of(file);
+        if (stat == null) {
+            remove(path);
+            return null;
+        }
+        String hash = cachedHash(path, stat);
+        if (hash == null) {
+            hash = sha1File(file);
+            put(path, stat, hash);
+        }
+        return hash;
+    }
+
+    /** Return the SHA1 String recorded for PATH if the file still has the
+     *  stat data STAT, or null if it has to be hashed again. */
+    static synchronized String cachedHash(String path, Stat stat) {
+        Entry entry = load().get(path);
+        return entry != null && entry.isClean(stat) ? entry.hash : null;
+    }
+
+    /** Record that the file PATH, with stat data STAT, has contents HASH.
+     *  STAT must have been read before the contents, so that a file changing
+     *  while it is read is hashed again next time. */
+    static synchronized void put(String path, Stat stat, String hash) {
+        if (stat != null) {
+            load().put(path, new Entry(stat, hash));
+            isDirty = true;
+        }
+    }
+
+    /** Record that blob BLOB was just written to the file PATH of the working
+     *  directory, so that it is not read back by the next status. */
+    static void checkedOut(String path, String blob) {
+        put(path, Stat.of(join(Repository.CWD, path)), blob);
+    }
+
+    /** Forget the entry of PATH, a file that is gone. */
+    private static synchronized void remove(String path) {
+        if (load().remove(path) != null) {
+            isDirty = true;
+        }
+    }
+
+    /** Write the index file if any entry changed. */
+    static synchronized void save() {
+        if (!isDirty) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeVarint(out, entries.size());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                writeString(out, item.getKey());
+                entry.stat.write(out);
+                writeId(out, entry.hash);
+            }
+            out.flush();
+            File tmpfile = ObjectStore.tempObject();
+            try (OutputStream file = Files.newOutputStream(tmpfile.toPath())) {
+                bytes.writeTo(file);
+            }
+            Files.move(tmpfile.toPath(), indexFile().toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            /* As if the index had just been loaded, for a process that goes on
+             * to run more commands. */
+            indexTime = Stat.nanos(Files.getLastModifiedTime(indexFile().toPath()));
+        } catch (IOException excp) {
+            throw error("Cannot write index: %s", excp.getMessage());
+        }
+        isDirty = false;
+    }
+
+    /** Forget the entries, so that the index file is read again on next use. */
+    static synchronized void forget() {
+        entries = null;
+        isDirty = false;
+    }
+
+    /** The index of one repository as loaded, set aside while gitlet works
+     *  on another; see Repository.State. */
+    static final class State {
+        private final TreeMap<String, Entry> entries;
+        private final long indexTime;
+        private final boolean isDirty;
+
+        private State(TreeMap<String, Entry> entries, long indexTime, boolean isDirty) {
+            this.entries = entries;
+            this.indexTime = indexTime;
+            this.isDirty = isDirty;
+        }
+    }
+
+    /** Return the index of the repository in use, as loaded. */
+    static synchronized State setAside() {
+        return new State(entries, indexTime, isDirty);
+    }
+
+    /** Put SAVED, returned by setAside(), back in place, or start afresh if
+     *  SAVED is null. */
+    static synchronized void putBack(State saved) {
+        forget();
+        if (saved != null) {
+            entries = saved.entries;
+            indexTime = saved.indexTime;
+            isDirty = saved.isDirty;
+        }
+    }
+
+    /** Return the entries, reading the index file if necessary. An index that
+     *  cannot be read is simply rebuilt. */
+    private static TreeMap<String, Entry> load() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new TreeMap<>();
+        File file = indexFile();
+        if (!file.isFile()) {
+            return entries;
+        }
+        try {
+            indexTime = Stat.nanos(Files.getLastModifiedTime(file.toPath()));
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (in.getInt() != MAGIC || in.get() != VERSION) {
+                return entries;
+            }
+            int count = (int) readVarint(in);
+            for (int i = 0; i < count; i += 1) {
+                String path = readString(in);
+                Stat stat = Stat.read(in);
+                entries.put(path, new Entry(stat, readId(in)));
+            }
+        } catch (IOException | BufferUnderflowException excp) {
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /** Return the index file of this repository. */
+    private static File indexFile() {
+        return join(Repository.GITLET_DIR, "index");
+    }
+}
@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+import static gitlet.Utils.*;
+
+/** The blobs that a hardlink checkout linked into the working directory,
+ *  kept in .gitlet/linked with the stat data each had when it was linked.
+ *  A linked blob shares its storage with a working file, so writing into
+ *  that file, in spite of it being read-only, would change the blob too.
+ *  As in the Index, a blob whose stat data is unchanged is taken to be
+ *  intact; any other is hashed again before it is read. The record is
+ *  appended before the link is made, so a crash cannot leave a linked blob
+ *  unrecorded.
+ *
+ *  FORMAT : a sequence of records, later ones replacing earlier ones,
+ *          20-byte SHA1 | long size | long modification time | long inode
+ *  A record cut short by a crash is ignored, and cut off the file when it
+ *  is read, so that the next record is appended where it began.
+ *
+ *  @author Hongfa You
+ */
+class LinkedBlobs {
+    /** Stat data of each linked blob, by SHA1 String. Loaded on first use. */
+    private static HashMap<String, Index.Stat> linked;
+
+    /** Record that blob ID, stored as the loose file LOOSE, is about to be
+     *  linked, unless it is already recorded with its present stat data. */
+    static synchronized void add(String id, File loose) {
+        Index.Stat stat = Index.Stat.of(loose);
+        if (stat != null && !stat.isSame(load().get(id))) {
+            append(id, stat);
+        }
+    }
+
+    /** Return true if blob ID, stored as the loose file LOOSE, still has its
+     *  contents: it was never linked, its stat data is unchanged since it
+     *  was, or it still hashes to ID. */
+    static synchronized boolean isIntact(String id, File loose) {
+        Index.Stat recorded = load().get(id);
+        if (recorded == null) {
+            return true;
+        }
+        Index.Stat stat = Index.Stat.of(loose);
+        if (recorded.isSame(stat)) {
+            return true;
+        }
+        if (stat == null || !ObjectStore.hashLoose(loose).equals(id)) {
+            return false;
+        }
+        append(id, stat);
+        return true;
+    }
+
+    /** Forget the records, so that they are read again on next use. */
+    static synchronized void forget() {
+        linked = null;
+    }
+
+    /** Return the records of the repository in use, or null if not loaded. */
+    static synchronized HashMap<String, Index.Stat> setAside() {
+        return linked;
+    }
+
+    /** Put SAVED, returned by setAside(), back in place. */
+    static synchronized void putBack(HashMap<String, Index.Stat> saved) {
+        linked = saved;
+    }
+
+    /** Record that blob ID has stat data STAT, in memory and on disk. */
+    private static void append(String id, Index.Stat stat) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeId(out, id);
+            stat.write(out);
+            out.flush();
+            Files.write(linkedFile().toPath(), bytes.toByteArray(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw error("Cannot record linked blob %s: %s", id, excp.getMessage());
+        }
+        linked.put(id, stat);
+    }
+
+    /** Return the records, reading them if necessary. */
+    private static HashMap<String, Index.Stat> load() {
+        if (linked != null) {
+            return linked;
+        }
+        linked = new HashMap<>();
+        File file = linkedFile();
+        if (!file.isFile()) {
+            return linked;
+        }
+        ByteBuffer in = ByteBuffer.wrap(readContents(file));
+        int end = 0;
+        try {
+            while (in.hasRemaining()) {
+                String id = readId(in);
+                linked.put(id, Index.Stat.read(in));
+                end = in.position();
+            }
+        } catch (BufferUnderflowException excp) {
+            /* A record cut short by a crash; its blob was never linked, and
+             * records appended after it could not be read. */
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            } catch (IOException ioExcp) {
+                throw error("Cannot record linked blobs: %s", ioExcp.getMessage());
+            }
+        }
+        return linked;
+    }
+
+    /** Return the file of the records. */
+    private static File linkedFile() {
+        return join(Repository.GITLET_DIR, "linked");
+    }
+}
@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static gitlet.Utils.error;
+
+/** Helper class reading every commit for "global-log".
+ *  globalLog(boolean isByTime, Consumer action) : Visit all commits, in id or time order.
+ *
+ *  Commits are read by a fixed pool of workers while the calling thread
+ *  hands finished ones, in order, to the action, which for the command line
+ *  writes them through one buffered stream. At most WINDOW commits are in
+ *  flight at once, so memory use does not grow with the history, and a slow
+ *  commit holds up the action but not the reads already queued behind it.
+ *
+ *  @author Hongfa You
+ */
+public class LogHelper {
+    /** Largest number of commits read ahead of the action. */
+    private static final int WINDOW = 256;
+
+    /** Give the information of every commit ever made to ACTION, on the
+     *  calling thread, in order of commit id, or if ISBYTIME newest first by
+     *  commit time. Commits of equal time, such as those made before times
+     *  were recorded, are ordered so that children come before their parents.
+     *  TIME COMPLEXITY : O(NlogN + C / P). N : the number of commits ever made.
+     *   C : total size of commits. P : number of cores.
+     */
+    protected static void globalLog(boolean isByTime, Consumer<CommitInfo> action) {
+        List<String> ids = isByTime ? idsByTime() : ObjectStore.commitIds();
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "global-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<CommitInfo>> window = new ArrayDeque<>();
+        try {
+            for (String id : ids) {
+                if (window.size() == WINDOW) {
+                    action.accept(next(window));
+                }
+                window.add(pool.submit(() -> CommitInfo.of(Commit.readCommitFromFile(id))));
+            }
+            while (!window.isEmpty()) {
+                action.accept(next(window));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the ids of all commits, newest first by commit time, then by
+     *  decreasing CommitGraph row. Times are read from the CommitGraph, so no
+     *  commit is read to order them. */
+    private static List<String> idsByTime() {
+        List<Integer> rows = new ArrayList<>(CommitGraph.size());
+        for (int row = 0; row < CommitGraph.size(); row += 1) {
+            rows.add(row);
+        }
+        rows.sort(Comparator.comparingLong((Integer row) -> CommitGraph.timestamp(row))
+                .thenComparingInt(row -> row).reversed());
+        List<String> ids = new ArrayList<>(rows.size());
+        for (int row : rows) {
+            ids.add(CommitGraph.idAt(row));
+        }
+        return ids;
+    }
+
+    /** Remove the oldest entry of WINDOW and return it once it is ready. */
+    private static CommitInfo next(Deque<Future<CommitInfo>> window) {
+        try {
+            return window.poll().get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("Interrupted while reading commits.");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw error("Cannot read commit: %s", cause.getMessage());
+        }
+    }
+}
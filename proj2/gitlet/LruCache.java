@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A map keeping at most a fixed number of entries, dropping the least
+ *  recently used one first, and counting how many lookups found their key.
+ *  All methods are synchronized, so one cache may be shared by the workers of
+ *  a command.
+ *
+ *  @author Hongfa You
+ */
+class LruCache<K, V> {
+    /** Name of this cache, used in stats(). */
+    private final String name;
+    /** Entries, least recently used first. */
+    private final LinkedHashMap<K, V> entries;
+    /** Number of lookups that found their key. */
+    private long hits;
+    /** Number of lookups that did not. */
+    private long misses;
+
+    /** An empty cache called NAME keeping at most CAPACITY entries. */
+    LruCache(String name, int capacity) {
+        this.name = name;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Return the value of KEY, or null if it is not cached. */
+    synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return value;
+    }
+
+    /** Cache VALUE as the value of KEY. */
+    synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    /** Forget the value of KEY. */
+    synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    /** Forget every value. The counters are kept. */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /** Return a one-line summary of the size and counters of this cache. */
+    synchronized String stats() {
+        return String.format("%s: %d cached, %d hits, %d misses",
+                name, entries.size(), hits, misses);
+    }
+}
@@ -1,5 +1,10 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Hongfa You
  */
@@ -8,27 +13,40 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
-        // if args is empty, print and exit
-        if (args.length == 0) {
-            Utils.abort("Please enter a command.");
+        try {
+            // if args is empty, print and exit
+            if (args.length == 0) {
+                Utils.abort("Please enter a command.");
+            }
+            if (Daemon.forward(args)) {
+                return;
+            }
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
         }
+    }
 
+    /** Run the command ARGS in this process, on the repository in the
+     *  current directory, printing what it returns. Aborted commands throw a
+     *  GitletException holding the message to print.
+     *  @param args : <COMMAND> <OPERAND1> <OPERAND2> ...
+     */
+    static void run(String[] args) {
         String firstArg = args[0];
-        if (!firstArg.equals("init")) {
-            Repository.mkalldir();
+        if (firstArg.equals("init")) {
+            GitletRepository.init(Repository.CWD.toPath());
+            Repository.printCacheStats();
+            return;
         }
+        GitletRepository repo = GitletRepository.open(Repository.CWD.toPath());
         switch(firstArg) {
-            case "init":
-                // handle the `init` command
-                Repository.init();
-                break;
-
             case "add":
-                // handle the `add [filename]` command
+                // handle the `add [filename | directory | pattern] ...` command
                 if (args.length <= 1) {
                     Utils.abort("Please specify a file to be staged.");
                 } else {
-                    Repository.add(args[1]);
+                    repo.add(Arrays.copyOfRange(args, 1, args.length));
                 }
                 break;
 
@@ -36,45 +54,64 @@ public class Main {
                 if (args.length < 2) {
                     Utils.abort("Please enter a commit message.");
                 }
-                Repository.commit(args[1], null);
+                repo.commit(args[1]);
                 break;
 
             case "rm":
                 if (args.length < 2) {
                     Utils.abort("Please specify a file to be unstaged.");
                 }
-                Repository.rm(args[1]);
+                repo.rm(args[1]);
                 break;
 
             case "log":
-                Repository.log();
+                for (CommitInfo info : repo.log()) {
+                    System.out.print(info);
+                }
                 break;
 
             case "global-log":
-                Repository.globalLog();
+                PrintStream out = new PrintStream(
+                        new BufferedOutputStream(System.out, 1 << 16), false);
+                repo.globalLog(args.length > 1 && args[1].equals("--by-time"), out::print);
+                out.flush();
                 break;
 
             case "find":
-                Repository.find(args[1]);
+                List<String> found;
+                if (args.length < 2) {
+                    Utils.abort("Please specify a message to find.");
+                }
+                if (args.length > 2 && args[1].equals("--substring")) {
+                    found = repo.findSubstring(args[2]);
+                } else {
+                    found = repo.find(args[1]);
+                }
+                found.forEach(Utils::message);
+                if (found.isEmpty()) {
+                    Utils.message("Found no commit with that message.");
+                }
                 break;
 
             case "status":
-                Repository.status();
+                System.out.print(repo.status());
                 break;
 
             case "checkout":
                 switch (args.length) {
                     case 2:
                     // checkout [branch name]
-                    Repository.checkout(args[1]);
+                    repo.checkout(args[1]);
                         break;
                     case 3:
                     // checkout -- [file name]
-                    Repository.checkout(args[1], args[2]);
+                    checkOperand(args[1]);
+                    repo.checkoutFile(args[2]);
                         break;
                     case 4:
                     // checkout [commit id] -- [file name]
-                    Repository.checkout(args[1], args[2], args[3]);
+                    checkOperand(args[2]);
+                    repo.checkoutFile(args[1], args[3]);
                         break;
                     default:
                         break;
@@ -82,24 +119,76 @@ public class Main {
                 break;
 
             case "branch":
-                Repository.branch(args[1]);
+                repo.branch(args[1]);
                 break;
 
             case "rm-branch":
-                Repository.rmBranch(args[1]);
+                repo.rmBranch(args[1]);
                 break;
 
             case "reset":
-                Repository.reset(args[1]);
+                repo.reset(args[1]);
                 break;
 
             case "merge":
-                Repository.merge(args[1]);
+                MergeResult result = repo.merge(args[1]);
+                if (result.isFastForward()) {
+                    Utils.message("Current branch fast-forwarded.");
+                } else if (result.isConflict()) {
+                    Utils.message("Encountered a merge conflict.");
+                }
+                break;
+
+            case "repack":
+                repo.repack();
+                break;
+
+            case "merge-base":
+                if (args.length < 2) {
+                    Utils.abort("Please specify a commit.");
+                }
+                MergeBase base = repo.mergeBase(args[1], args.length > 2 ? args[2] : null);
+                base.all().forEach(Utils::message);
+                Utils.message("Visited " + base.visited() + " commits.");
+                break;
+
+            case "commit-graph":
+                repo.rebuildCommitGraph();
+                break;
+
+            case "config":
+                if (args.length < 2) {
+                    Utils.abort("Please specify a config key.");
+                } else if (args.length > 2) {
+                    repo.config(args[1], args[2]);
+                } else if (repo.config(args[1]) != null) {
+                    Utils.message(repo.config(args[1]));
+                }
+                break;
+
+            case "batch":
+                Batch.run(args);
+                break;
+
+            case "daemon":
+                if (args.length > 1 && args[1].equals("stop")) {
+                    Daemon.stop();
+                } else {
+                    Daemon.serve(args.length > 1 ? args[1] : null);
+                }
                 break;
 
             default:
                 Utils.abort("No command with that name exists.");
                 break;
         }
+        Repository.printCacheStats();
+    }
+
+    /** Abort unless OPERAND is the "--" of the checkout of a file. */
+    private static void checkOperand(String operand) {
+        if (!operand.equals("--")) {
+            Utils.abort("Incorrect operands.");
+        }
     }
 }
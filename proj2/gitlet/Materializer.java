@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Utils.error;
+import static gitlet.Utils.join;
+
+/** Writes blobs into the working directory for checkout, reset and merge.
+ *  write(Map files) : Write many files at once, on a bounded pool of workers.
+ *
+ *  Writing a file costs a few system calls whatever its size, so checkouts
+ *  of many small files are bound by their latency rather than by the disk.
+ *  Files are therefore written by up to MAX_WORKERS threads at once, after
+ *  the directories they go in were made, in order, on the calling thread.
+ *  Every file is attempted even if some fail; the failures are then reported
+ *  together, so the caller either knows that every file was written or
+ *  learns of all those that were not, and can leave its refs alone.
+ *
+ *  If checkout.mode is "hardlink", blobs stored as is are linked into place
+ *  rather than copied; see Config. A file system that refuses links makes
+ *  the rest of the checkout copy files without trying again.
+ *
+ *  A checkout that takes longer than PROGRESS_DELAY shows its progress on
+ *  standard error, if that is a terminal.
+ *
+ *  @author Hongfa You
+ */
+class Materializer {
+    /** Fewest files worth starting workers for. */
+    private static final int PARALLEL_THRESHOLD = 32;
+    /** Largest number of workers. Writes mostly wait, so there may be more
+     *  workers than cores. */
+    private static final int MAX_WORKERS = 32;
+    /** Time after which progress is shown, and between updates, in ms. */
+    private static final long PROGRESS_DELAY = 1000;
+    private static final long PROGRESS_INTERVAL = 100;
+    /** Number of failures listed when reporting them. */
+    private static final int FAILURES_SHOWN = 10;
+
+    /** Write the blobs FILES, a map from path in the working directory to
+     *  blob id, into the working directory, overwriting what is there, and
+     *  record them in the Index. Aborts, once every file was attempted, if
+     *  any could not be written.
+     *  TIME COMPLEXITY : O(N / W + D). N : number of files. W : number of
+     *   workers. D : total size of the files.
+     */
+    static void write(Map<String, String> files) {
+        makeDirectories(files.keySet());
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean isLinking = new AtomicBoolean(Config.isHardlinkCheckout());
+        if (files.size() < PARALLEL_THRESHOLD) {
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                writeOne(entry.getKey(), entry.getValue(), isLinking, failures);
+            }
+        } else {
+            writeParallel(files, isLinking, failures);
+        }
+        if (!failures.isEmpty()) {
+            report(failures, files.size());
+        }
+    }
+
+    /** Write FILES on a pool of workers, linking them while ISLINKING, and
+     *  adding failures to FAILURES. */
+    private static void writeParallel(Map<String, String> files, AtomicBoolean isLinking,
+                                      ConcurrentLinkedQueue<String> failures) {
+        int workers = Math.min(MAX_WORKERS, 2 * Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "checkout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CountDownLatch remaining = new CountDownLatch(files.size());
+        AtomicInteger done = new AtomicInteger();
+        try {
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                pool.execute(() -> {
+                    try {
+                        writeOne(entry.getKey(), entry.getValue(), isLinking, failures);
+                    } finally {
+                        done.incrementAndGet();
+                        remaining.countDown();
+                    }
+                });
+            }
+            Progress progress = new Progress(files.size());
+            while (!remaining.await(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS)) {
+                progress.show(done.get());
+            }
+            progress.finish();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("Interrupted while checking out files.");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Write blob BLOB as the file PATH, linking it while ISLINKING, and
+     *  record it in the Index, or add the reason it could not be to FAILURES.
+     *  A blob that cannot be linked is copied; ISLINKING is cleared if linking
+     *  failed for a blob that could have been. */
+    private static void writeOne(String path, String blob, AtomicBoolean isLinking,
+                                 ConcurrentLinkedQueue<String> failures) {
+        try {
+            File dest = join(CWD, path);
+            if (!isLinking.get() || !ObjectStore.linkBlob(blob, dest)) {
+                if (isLinking.get() && ObjectStore.isLinkable(blob)) {
+                    isLinking.set(false);
+                }
+                ObjectStore.copyBlob(blob, dest);
+            }
+            Index.checkedOut(path, blob);
+        } catch (RuntimeException excp) {
+            failures.add(path + ": " + excp.getMessage());
+        }
+    }
+
+    /** Make the directories holding the files PATHS, parents first. */
+    private static void makeDirectories(Iterable<String> paths) {
+        TreeSet<String> dirs = new TreeSet<>();
+        for (String path : paths) {
+            int slash = path.lastIndexOf('/');
+            if (slash > 0) {
+                dirs.add(path.substring(0, slash));
+            }
+        }
+        for (String dir : dirs) {
+            join(CWD, dir).mkdirs();
+        }
+    }
+
+    /** Abort listing the FAILURES, out of TOTAL files. */
+    private static void report(ConcurrentLinkedQueue<String> failures, int total) {
+        List<String> sorted = new ArrayList<>(failures);
+        sorted.sort(null);
+        StringBuilder msg = new StringBuilder();
+        msg.append(String.format("Cannot check out %d of %d files:", sorted.size(), total));
+        for (int i = 0; i < sorted.size() && i < FAILURES_SHOWN; i += 1) {
+            msg.append(System.lineSeparator()).append("  ").append(sorted.get(i));
+        }
+        if (sorted.size() > FAILURES_SHOWN) {
+            msg.append(System.lineSeparator()).append("  ...");
+        }
+        throw new GitletException(msg.toString());
+    }
+
+    /** Progress of a checkout, shown on standard error once it has taken
+     *  PROGRESS_DELAY, if standard error is a terminal. A daemon shows none,
+     *  since what it prints goes back to its client. */
+    private static class Progress {
+        private final int total;
+        private final long start = System.currentTimeMillis();
+        /** Where progress goes, or null if it is not shown. */
+        private final PrintStream out;
+        private boolean isShown;
+
+        Progress(int total) {
+            this.total = total;
+            this.out = System.console() == null || Daemon.isServing() ? null : System.err;
+        }
+
+        /** Show that DONE files are written, if it is time to. */
+        void show(int done) {
+            if (out == null || System.currentTimeMillis() - start < PROGRESS_DELAY) {
+                return;
+            }
+            isShown = true;
+            out.printf("Updating files: %3d%% (%d/%d)\r", 100L * done / total, done, total);
+            out.flush();
+        }
+
+        /** End the progress line, if any was shown. */
+        void finish() {
+            if (isShown) {
+                out.printf("Updating files: 100%% (%d/%d), done.%n", total, total);
+            }
+        }
+    }
+}
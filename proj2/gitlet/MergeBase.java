@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/** The best common ancestors of two commits, found over all parents, and the
+ *  number of commits visited to find them.
+ *
+ *  Both commits are walked at once through the CommitGraph, newest generation
+ *  first, painting every commit with the sides it is reachable from. A commit
+ *  painted from both sides is a common ancestor, and its own ancestors are
+ *  marked stale since they cannot be better ones. The walk ends as soon as
+ *  only stale commits are left, so it visits the commits between the two
+ *  heads and their merge bases rather than the whole history. Common
+ *  ancestors that are ancestors of other ones are then dropped.
+ *
+ *  @author Hongfa You
+ */
+public class MergeBase {
+    private static final int FROM_FIRST = 1;
+    private static final int FROM_SECOND = 2;
+    private static final int STALE = 4;
+    private static final int BOTH = FROM_FIRST | FROM_SECOND;
+
+    /** Orders rows by decreasing generation number, then by decreasing row,
+     *  which is the order commits were added in. */
+    private static final Comparator<Integer> NEWEST_FIRST =
+            Comparator.comparingInt((Integer row) -> CommitGraph.generation(row))
+                    .thenComparingInt(row -> row).reversed();
+
+    /** Rows of the best common ancestors, newest first. */
+    private final List<Integer> bases;
+    /** Number of commits taken off the queue. */
+    private final int visited;
+
+    private MergeBase(List<Integer> bases, int visited) {
+        this.bases = bases;
+        this.visited = visited;
+    }
+
+    /** Return the best common ancestors of commits ID1 and ID2.
+     *  The walk goes on while any queued commit is not STALE. Rather than
+     *  scanning the queue for one, the number of queue entries of each row
+     *  and of entries not STALE are kept as rows are queued, taken off and
+     *  painted STALE.
+     *  TIME COMPLEXITY : O(V * logV). V : commits between the two commits
+     *  and their merge bases.
+     */
+    static MergeBase of(String id1, String id2) {
+        CommitGraph.rowOf(id1);
+        int row2 = CommitGraph.rowOf(id2);
+        /* Looking ID2 up may have rebuilt the graph, numbering rows anew. */
+        int row1 = CommitGraph.find(id1);
+        if (row1 == row2) {
+            List<Integer> bases = new ArrayList<>();
+            bases.add(row1);
+            return new MergeBase(bases, 1);
+        }
+
+        Map<Integer, Integer> paint = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(NEWEST_FIRST);
+        paint.put(row1, FROM_FIRST);
+        paint.put(row2, FROM_SECOND);
+        /* Number of entries of each row in the queue. */
+        Map<Integer, Integer> queued = new HashMap<>();
+        queued.put(row1, 1);
+        queued.put(row2, 1);
+        queue.add(row1);
+        queue.add(row2);
+        int nonStale = 2;
+        List<Integer> common = new ArrayList<>();
+        int visited = 0;
+        while (nonStale > 0) {
+            int row = queue.poll();
+            queued.merge(row, -1, Integer::sum);
+            visited += 1;
+            int flags = paint.get(row);
+            if ((flags & STALE) == 0) {
+                nonStale -= 1;
+            }
+            if ((flags & (BOTH | STALE)) == BOTH) {
+                if (!common.contains(row)) {
+                    common.add(row);
+                }
+                flags |= STALE;
+            }
+            for (int parent : parents(row)) {
+                int old = paint.getOrDefault(parent, 0);
+                if ((old & flags) != flags) {
+                    paint.put(parent, old | flags);
+                    if ((old & STALE) == 0 && (flags & STALE) != 0) {
+                        /* Its entries already queued are now STALE too. */
+                        nonStale -= queued.getOrDefault(parent, 0);
+                    }
+                    queue.add(parent);
+                    queued.merge(parent, 1, Integer::sum);
+                    if ((flags & STALE) == 0 && (old & STALE) == 0) {
+                        nonStale += 1;
+                    }
+                }
+            }
+        }
+        return new MergeBase(removeRedundant(common), visited);
+    }
+
+    /** Return the SHA1 String of the best common ancestor, the newest one if
+     *  there are several, or null if the commits have none. */
+    public String best() {
+        return bases.isEmpty() ? null : CommitGraph.idAt(bases.get(0));
+    }
+
+    /** Return the SHA1 Strings of all the best common ancestors, newest first. */
+    public List<String> all() {
+        List<String> ids = new ArrayList<>();
+        for (int row : bases) {
+            ids.add(CommitGraph.idAt(row));
+        }
+        return ids;
+    }
+
+    /** Return the number of commits visited to find the merge bases. */
+    public int visited() {
+        return visited;
+    }
+
+    /** Return the parents of ROW. */
+    private static int[] parents(int row) {
+        int first = CommitGraph.firstParent(row);
+        int second = CommitGraph.secondParent(row);
+        if (first == CommitGraph.NO_PARENT) {
+            return new int[0];
+        }
+        return second == CommitGraph.NO_PARENT ? new int[] {first} : new int[] {first, second};
+    }
+
+    /** Return the rows of COMMON that are not ancestors of other rows of
+     *  COMMON, newest first. */
+    private static List<Integer> removeRedundant(List<Integer> common) {
+        common.sort(NEWEST_FIRST);
+        List<Integer> result = new ArrayList<>();
+        for (int row : common) {
+            boolean redundant = false;
+            for (int other : result) {
+                if (isAncestor(row, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    /** Return true if ANCESTOR is an ancestor of ROW. Commits of a generation
+     *  lower than ANCESTOR's are not walked past. */
+    private static boolean isAncestor(int ancestor, int row) {
+        int floor = CommitGraph.generation(ancestor);
+        PriorityQueue<Integer> queue = new PriorityQueue<>(NEWEST_FIRST);
+        Set<Integer> seen = new HashSet<>();
+        queue.add(row);
+        while (!queue.isEmpty()) {
+            int next = queue.poll();
+            if (next == ancestor) {
+                return true;
+            }
+            for (int parent : parents(next)) {
+                if (CommitGraph.generation(parent) >= floor
+                        && seen.add(parent)) {
+                    queue.add(parent);
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -1,18 +1,24 @@
 
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashSet;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 import static gitlet.Repository.CWD;
 import static gitlet.Repository.STAGE_DIR;
 
 import static gitlet.Utils.*;
-import static gitlet.Utils.readContents;
 
 /** Class doing actual work for "merge". */
 public class MergeHelper {
@@ -20,75 +26,36 @@ public class MergeHelper {
     private static Commit current;
     private static Commit other;
     private static Boolean isConflict = false;
-    /** A HashSet contains SHA1 String of ancestors of "current" branch. */
-    private static Set<String> ancestrorSha1Set = new HashSet<>();
 
 
-    /** Return SHA1 String of Split point commit.
-     *  Time Complexity : O(n), n is the total number of ancestors of the two commits.
+    /** Return SHA1 String of Split point commit: the best common ancestor of
+     *  HEAD and the branch, following both parents of merge commits. After
+     *  criss-cross merges there can be several equally good ones; the newest
+     *  is taken. See MergeBase.
      * @param branchName
      * @return SHA1 String of Split point commit.
-     * TIME COMPLEXITY : O(NlogN).
-     *  N : length from intial commit to the commit indicated by branchName.
+     * TIME COMPLEXITY : O(VlogV). V : the number of commits between the two
+     *  heads and their split point.
      */
     protected static String findSplitPoint(String branchName) {
-        Commit commit = Commit.readCommitFromFile(HEAD.whichCommit());
-
-        /** Add ancestor of the commit indicated by HEAD into Set. **/
-        /** O(n). n : length from initial commit to the commit indicated by HEAD. */
-        String parent;
-        while (true) {
-            parent = commit.getfirstParent();
-            ancestrorSha1Set.add(commit.getSHA1());
-            if (parent == null) {
-                break;
-            }
-            commit = Commit.readCommitFromFile(parent);
-        }
-        /** Read the commit indicated by branchName in. **/
         String id = Branch.readBranchIn(branchName, true).whichCommit();
-        Commit commit2 = Commit.readCommitFromFile(id);
-        if (commit2 == null) {
-            return null;
-        }
-
-        /** Travel from the commit indicated by branchName back,
-         *  util we came across the latest common ancestor of these two commit.
-         * TIME COMPLEXITY : O(NlogN).
-         * N : length from intial commit to the commit indicated by branchName. */
-        String parent2;
-        while (true) {
-            parent2 = commit2.getfirstParent();
-            /** The latest common ancestor of these two commit. */
-            /** Expected time complexity of the op contains in Hashset if O(1). **/
-            if (ancestrorSha1Set.contains(commit2.getSHA1())) {
-                break;
-            }
-            /** In case of bad commit structure. */
-            if (parent2 == null) {
-                break;
-            }
-            commit2 = Commit.readCommitFromFile(parent2);
-        }
-
-//        if (parent2 == null) { }
-        return commit2.getSHA1();
+        MergeBase base = MergeBase.of(HEAD.whichCommit(), id);
+        return base.best();
     }
 
     /** Do check work for merge.
      * @param branchName : name of branch.
      * @param splitSha1 : sha1 String of split commit.
      * @param commitSHA1 SHA1 String of branchName.
-     * TIME COMPLEXITY : O(logN).
-     * N is the total number of ancestor commits for the two branches
+     * @return true if the current branch was fast-forwarded, leaving nothing to merge.
+     * TIME COMPLEXITY : O(1).
      */
-    protected static void mergeCheck(String branchName, String splitSha1, String commitSHA1) {
+    protected static boolean mergeCheck(String branchName, String splitSha1, String commitSHA1) {
         /** If there are staged additions or removals exist, print the error message and exit. */
         if (!Blob.isRemovalEmpty() || !Blob.isBlobMapEmpty()) {
             Utils.abort("You have uncommitted changes.");
         }
 
-        Commit branchCommit = Commit.readCommitFromFile(commitSHA1);
         HEAD.readHEAD();
         /** If attempting to merge a branch with itself, print the error message. */
         if (branchName.equals(HEAD.getPointBranch())) {
@@ -96,17 +63,18 @@ public class MergeHelper {
         }
 
         /** If the merge is complete, and the operation ends with the message. */
-        if (ancestrorSha1Set.contains(branchCommit.getSHA1())) { // TC: O(logN).
+        if (commitSHA1.equals(splitSha1)) {
             abort("Given branch is an ancestor of the current branch.");
         }
         /** If the split point is the current branch, then the effect is to check out
          * the given branch, and the operation ends after printing the message */
         if (splitSha1 != null && splitSha1.equals(HEAD.whichCommit())) {
             Repository.checkout(branchName);
-            abort("Current branch fast-forwarded.");
+            return true;
         }
         checkUncommited();
         checkUnstaged();
+        return false;
     }
 
     /** Check if there exists file staged but not committed.
@@ -124,25 +92,13 @@ public class MergeHelper {
 
     /** Check if there exists files unstaged. If exists, abort with error message. */
     private static void checkUnstaged() {
-        List<String> fileList = Utils.plainFilenamesIn(CWD);
         Commit currentCommit = Commit.readCommitFromFile(HEAD.whichCommit());
         String errMsg = "There is an untracked file in the way;"
                 + " delete it, or add and commit it first.";
-        Boolean toAbort = false;
-        for (String file : fileList) {
-            Boolean isCommitted = currentCommit.isFilemapContains(file);
-            if (!isCommitted) {
-                Boolean isBlobMapEmpty = Blob.isBlobMapEmpty();
-                if (isBlobMapEmpty) {
-                    toAbort = true;
-                } else {
-                    Boolean isStaged = Blob.isBlobmapContains(file);
-                    if (!isStaged) {
-                        toAbort = true;
-                        break;
-                    }
-                }
-            }
+        Boolean toAbort;
+        try (Stream<String> files = WorkTreeHelper.files()) {
+            toAbort = files.anyMatch(file -> !currentCommit.isFilemapContains(file)
+                    && (Blob.isBlobMapEmpty() || !Blob.isBlobmapContains(file)));
         }
         if (toAbort) {
             abort(errMsg);
@@ -160,140 +116,62 @@ public class MergeHelper {
     /** Driver method for merge.
      * @param splitSha1 : SHA1 String of "split" commit.
      * @param commitSHA1 : SHA1 String of "other" commit.
+     * @return true if the merge encountered a conflict.
      */
-    protected static void doMerge(String splitSha1, String commitSHA1) {
+    protected static boolean doMerge(String splitSha1, String commitSHA1) {
         /** Read the three commit in. */
         readCommit(splitSha1, commitSHA1);
-        traverseSplitMap();
-        traverseCurMap();
-        traverseOtherMap();
-        if (isConflict) {
-            message("Encountered a merge conflict.");
-        }
+        isConflict = false;
+        mergeChanges();
+        return isConflict;
     }
 
     /** Helper function for doMerge.
-     *  Traverse the fileMap of "split" commit and check the files.
+     *  Only files changed in "other" since "split" can need any work, so the
+     *  trees of the two are diffed, skipping every subtree they share, and
+     *  each changed file is checked against "current". Blobs are named by
+     *  their contents, so files are compared by blob id.
+     *  Every file is written before any is deleted or staged, so a file that
+     *  cannot be written stops the merge with the staging area untouched.
+     *  The files taken from other are written together, in parallel, by the
+     *  Materializer.
+     *  TIME COMPLEXITY : O(T * N + D). T : trees changed in other. N : entries
+     *  of a tree. D : total size of the files written.
      * */
-    private static void traverseSplitMap() {
-        String errMsg = "File does not exist in ";
-        for (Map.Entry<String, String> entry : split.fileMap.entrySet()) {
-            String fileName = entry.getKey();
-            Boolean isInCurrent = current.isFilemapContains(fileName);
-            Boolean isInOther = other.isFilemapContains(fileName);
-            File otherFile = null;
-            File currentFile = null;
-            File splitFile = split.getFilefromCommit(fileName, errMsg + "split.");
-            /** count = 3 : file both in current and other.
-             *  count = 2 : file in current but not in other.
-             *  count = 1 : file in other but not in current. */
-            int count = 0;
-            if (isInCurrent && isInOther) {
-                count = 3;
-                otherFile = other.getFilefromCommit(fileName, errMsg + "other.");
-                currentFile = current.getFilefromCommit(fileName, errMsg + "current.");
-            } else if (!isInCurrent && !isInOther) {
-                count = 0;
-            } else if (!isInOther) {
-                currentFile = current.getFilefromCommit(fileName, errMsg + "current.");
-                count = 2;
-            } else if (!isInCurrent) {
-                otherFile = other.getFilefromCommit(fileName, errMsg + "other.");
-                count = 1;
+    private static void mergeChanges() {
+        TreeMap<String, String> taken = new TreeMap<>();
+        List<String> conflicts = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        Tree.diff(split.getTreeId(), other.getTreeId(), (fileName, splitFile, otherFile) -> {
+            String currentFile = current.getCommittedFileSHA1(fileName);
+            if (Objects.equals(currentFile, otherFile)) {
+                /** Modified in the same way, or in other only back to current. */
+                return;
             }
-
-            switch (count) {
-                case 3: /** **/
-                    Boolean modifiedInOther = !isFileSame(splitFile, otherFile);
-                    Boolean modifiedInCurrent = !isFileSame(splitFile, currentFile);
-                    if (modifiedInCurrent && modifiedInOther) {
-                        /** Modified in other and HEAD. **/
-                        Boolean modifiedSameWay = isFileSame(otherFile, currentFile);
-                        if (!modifiedSameWay) {
-                            /**In different way: in conflict. **/
-                            overwriteConfilctFile(currentFile, otherFile, fileName);
-                            isConflict = true;
-                        }
-                        /** ELSE : in the same way, be left unchanged. */
-                    } else if (!modifiedInCurrent) {
-                        /** 1. Modified in other but not in HEAD: be checked out and staged. **/
-                        String otherFileName = other.getCommittedFileSHA1(fileName);
-                        File dir = Utils.join(Repository.COMMITED_DIR, otherFileName);
-                        File dest = join(Repository.CWD, fileName);
-                        Utils.secureCopyFile(dir, dest);
-                        Blob.add(fileName);
-                    }
-//                    else if (!modifiedInOther) {
-                        /** 2. Modified in HEAD but not in other. Stay as they are. **/
-//                    }
-                    break;
-                case 2:
-                    Boolean unModifiedInCurrent = isFileSame(splitFile, currentFile);
-                    if (unModifiedInCurrent) {
-                        /**6. Unmodified in HEAD but absent in other: be removed and untracked.*/
-                        File file = Utils.join(Repository.CWD, fileName);
-                        file.delete();
-                        Blob.remove(fileName, true);
-                    } else {
-                        /** In different way*/
-                        overwriteConfilctFile(currentFile, null, fileName);
-                        isConflict = true;
-                    }
-                    break;
-                case 1:
-                    Boolean unModifiedInOther = isFileSame(splitFile, otherFile);
-                    if (!unModifiedInOther) {
-                        /** In different way. */
-                        overwriteConfilctFile(null, otherFile, fileName);
-                        isConflict = true;
-                    }
-                    /**ELSE: 7.Unmodified in other but not present in HEAD: remain absent.*/
-                    break;
-                default:
-                    break;
+            if (!Objects.equals(currentFile, splitFile)) {
+                /** Modified in other and HEAD in different ways: in conflict. */
+                overwriteConfilctFile(currentFile, otherFile, fileName);
+                conflicts.add(fileName);
+                isConflict = true;
+            } else if (otherFile == null) {
+                /** Unmodified in HEAD but absent in other: be removed and untracked. */
+                removed.add(fileName);
+            } else {
+                /** Modified or added in other but not in HEAD: be checked out and staged. */
+                taken.put(fileName, otherFile);
             }
+        });
+        Materializer.write(taken);
+        for (String fileName : removed) {
+            WorkTreeHelper.deleteFile(fileName);
+            Blob.remove(fileName, true);
         }
-    }
-
-    /** Helper function for doMerge.
-     *  Traverse the fileMap of "current" commit and check the files.
-     * */
-    private static void traverseCurMap() {
-        String errMsg = "File does not exist in ";
-        for (Map.Entry<String, String> entry : current.fileMap.entrySet()) {
-            String key = entry.getKey();
-            if (!split.isFilemapContains(key) && !other.isFilemapContains(key)) {
-                /** 4. Not in split nor other but in HEAD: remain as they are. */
-                Blob.stageForMerge(key, entry.getValue());
-            } else if (!split.isFilemapContains(key)) {
-                /** Both in current and in other, but absent in split. **/
-                File otherFile = other.getFilefromCommit(key, errMsg + "other.");
-                File currentFile = current.getFilefromCommit(key, errMsg + "current.");
-                if (!isFileSame(currentFile, otherFile)) {
-                    /** In different way. **/
-                    overwriteConfilctFile(currentFile, otherFile, key);
-                    isConflict = true;
-                }
-            }
+        for (String fileName : conflicts) {
+            Blob.add(fileName);
         }
-    }
-
-    /** Helper function for doMerge.
-     *  Traverse the fileMap of "other" commit and check the files.
-     * */
-    private static void traverseOtherMap() {
-        for (Map.Entry<String, String> entry : other.fileMap.entrySet()) {
-            String key = entry.getKey();
-            if (!split.isFilemapContains(key) && !current.isFilemapContains(key)) {
-                /** 5. Not in split nor HEAD but in other: be checked out and staged. */
-                String fileId = other.getCommittedFileSHA1(key);
-                File dir = Utils.join(Repository.COMMITED_DIR, fileId);
-                File dest = join(Repository.CWD, key);
-                Utils.secureCopyFile(dir, dest);
-                Blob.stageForMerge(key, entry.getValue());
-            }
+        for (Map.Entry<String, String> entry : taken.entrySet()) {
+            Blob.stageForMerge(entry.getKey(), entry.getValue());
         }
-
     }
 
     /** Overwrite conflict file.
@@ -303,32 +181,37 @@ public class MergeHelper {
      *          =======
      *          contents of file in given branch
      *          >>>>>>>
+     *  The caller stages it once every file of the merge is written.
      * */
-    private static void overwriteConfilctFile(File currFile, File otherFile, String fileName) {
+    private static void overwriteConfilctFile(String currFile, String otherFile, String fileName) {
         File newFile = Utils.join(Repository.CWD, fileName);
-        if (newFile.exists()) {
-            newFile.delete();
-        }
-        try {
-            newFile.createNewFile();
-        } catch (IOException ioexcp) {
-            System.out.println(ioexcp.getMessage());
-        }
+        /* Written anew rather than into the old file, which may be a link
+         * into the object store; see Config. Its directory may be gone, if
+         * the file was deleted in HEAD. */
+        newFile.delete();
+        newFile.getParentFile().mkdirs();
         String headStr = "<<<<<<< HEAD\n";
         String sepStr = "=======\n";
         String endStr = ">>>>>>>\n";
-        if (currFile != null && otherFile != null) {
-            byte[] headbyte = readContents(currFile);
-            byte[] otherbyte = readContents(otherFile);
-            Utils.writeContents(newFile, headStr, headbyte, sepStr, otherbyte, endStr);
-        } else if (currFile == null) {
-            byte[] otherbyte = readContents(otherFile);
-            Utils.writeContents(newFile, headStr, sepStr, otherbyte, endStr);
-        } else if (otherFile == null) {
-            byte[] headbyte = readContents(currFile);
-            Utils.writeContents(newFile, headStr, headbyte, sepStr, endStr);
+        /** Both versions are decompressed straight into the conflict file. */
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(newFile), Utils.BUFFER_SIZE)) {
+            out.write(headStr.getBytes(StandardCharsets.UTF_8));
+            if (currFile != null) {
+                try (InputStream in = ObjectStore.openBlob(currFile)) {
+                    in.transferTo(out);
+                }
+            }
+            out.write(sepStr.getBytes(StandardCharsets.UTF_8));
+            if (otherFile != null) {
+                try (InputStream in = ObjectStore.openBlob(otherFile)) {
+                    in.transferTo(out);
+                }
+            }
+            out.write(endStr.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ioexcp) {
+            throw Utils.error("Cannot write conflict file %s: %s", fileName, ioexcp.getMessage());
         }
-        Blob.add(fileName);
     }
 
 }
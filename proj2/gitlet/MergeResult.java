@@ -0,0 +1,33 @@
+package gitlet;
+
+/** What a merge did: either fast-forwarded the current branch to the other
+ *  one, or made a merge commit, which may hold conflicts.
+ *
+ *  @author Hongfa You
+ */
+public final class MergeResult {
+    private final String commitId;
+    private final boolean isFastForward;
+    private final boolean isConflict;
+
+    MergeResult(String commitId, boolean isFastForward, boolean isConflict) {
+        this.commitId = commitId;
+        this.isFastForward = isFastForward;
+        this.isConflict = isConflict;
+    }
+
+    /** Return the SHA1 String of the new head commit. */
+    public String commitId() {
+        return commitId;
+    }
+
+    /** Return true if the current branch was only moved to the other one. */
+    public boolean isFastForward() {
+        return isFastForward;
+    }
+
+    /** Return true if some files were left with conflict markers. */
+    public boolean isConflict() {
+        return isConflict;
+    }
+}
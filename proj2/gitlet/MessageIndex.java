@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Repository.MESSAGE_DIR;
+import static gitlet.Repository.TRIGRAM_DIR;
+import static gitlet.Utils.*;
+
+/** Indexes of commit messages, so that find reads the commits it prints
+ *  instead of every commit ever made. Both are append-only and are added to
+ *  as commits are made.
+ *
+ *  The message index has one file in .gitlet/message_idx per distinct
+ *  message, named by the SHA1 of the message, so looking a message up is
+ *  opening one file.
+ *  FORMAT :
+ *          String message | 20-byte commit ids
+ *
+ *  The trigram index has one file in .gitlet/trigram_idx per sequence of
+ *  three characters found in any message, named by the hexadecimal UTF-8 bytes
+ *  of those characters, listing the 20-byte SHA1 of every distinct message
+ *  holding them. A substring of at least three characters can only be in the
+ *  messages listed under all of its trigrams, so only those are read.
+ *
+ *  A crash may leave the last id of either kind of file partly written; it
+ *  is ignored when read, and cut off before the file is next appended to.
+ *
+ *  @author Hongfa You
+ */
+class MessageIndex {
+    /** Length of the character sequences indexed. */
+    private static final int GRAM = 3;
+    private static final int ID_SIZE = 20;
+
+    /** Add COMMIT to the indexes. Its message is added to the trigram index
+     *  the first time the message is seen, before the message file is
+     *  written, so that a crash in between leaves the message to be added
+     *  again rather than missing from the trigram index. */
+    static void append(Commit commit) {
+        String message = commit.getMessage();
+        String key = sha1(message);
+        File file = join(MESSAGE_DIR, key);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, message);
+            out.flush();
+            int header = bytes.size();
+            boolean isNew = cutToWholeIds(file, header) == 0;
+            if (isNew) {
+                byte[] keyBytes = Pack.toBytes(key);
+                for (String gram : trigrams(message)) {
+                    File postings = join(TRIGRAM_DIR, gramName(gram));
+                    cutToWholeIds(postings, 0);
+                    appendTo(postings, keyBytes);
+                }
+            } else {
+                bytes.reset();
+            }
+            writeId(out, commit.getSHA1());
+            appendTo(file, bytes.toByteArray());
+        } catch (IOException excp) {
+            throw error("Cannot write message index: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the SHA1 Strings of the commits whose message is MSG, in order.
+     *  TIME COMPLEXITY : O(K). K : number of such commits.
+     */
+    static List<String> find(String msg) {
+        File file = join(MESSAGE_DIR, sha1(msg));
+        TreeSet<String> result = new TreeSet<>();
+        if (file.isFile()) {
+            ByteBuffer in = ByteBuffer.wrap(readContents(file));
+            if (msg.equals(readMessage(in))) {
+                readIds(in, result);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the SHA1 Strings of the commits whose message contains TEXT, in
+     *  order. TEXT shorter than a trigram is looked for in every message.
+     *  TIME COMPLEXITY : O(P + C). P : total length of the posting lists of the
+     *   trigrams of TEXT. C : total size of the candidate message files.
+     */
+    static List<String> search(String text) {
+        List<String> candidates = text.length() < GRAM
+                ? plainFilenamesIn(MESSAGE_DIR) : candidates(text);
+        TreeSet<String> result = new TreeSet<>();
+        for (String key : candidates) {
+            File file = join(MESSAGE_DIR, key);
+            if (!file.isFile()) {
+                continue;
+            }
+            ByteBuffer in = ByteBuffer.wrap(readContents(file));
+            String message = readMessage(in);
+            if (message != null && message.contains(text)) {
+                readIds(in, result);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Write the indexes anew from every stored commit.
+     *  TIME COMPLEXITY : O(C). C : total size of commits.
+     */
+    static void rebuild() {
+        for (File dir : new File[] {MESSAGE_DIR, TRIGRAM_DIR}) {
+            for (String name : plainFilenamesIn(dir)) {
+                join(dir, name).delete();
+            }
+        }
+        for (String id : ObjectStore.commitIds()) {
+            append(Commit.fromBytes(ObjectStore.readCommit(id)));
+        }
+    }
+
+    /** Return the keys of the messages listed under every trigram of TEXT,
+     *  intersecting the shortest posting lists first. */
+    private static List<String> candidates(String text) {
+        List<File> postings = new ArrayList<>();
+        for (String gram : trigrams(text)) {
+            File file = join(TRIGRAM_DIR, gramName(gram));
+            if (!file.isFile()) {
+                return new ArrayList<>();
+            }
+            postings.add(file);
+        }
+        postings.sort(Comparator.comparingLong(File::length));
+        Set<String> result = null;
+        for (File file : postings) {
+            Set<String> keys = new HashSet<>();
+            ByteBuffer in = ByteBuffer.wrap(readContents(file));
+            while (in.remaining() >= ID_SIZE) {
+                String key = readId(in);
+                if (result == null || result.contains(key)) {
+                    keys.add(key);
+                }
+            }
+            result = keys;
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the distinct trigrams of TEXT. */
+    private static Set<String> trigrams(String text) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i += 1) {
+            result.add(text.substring(i, i + GRAM));
+        }
+        return result;
+    }
+
+    /** Return the name of the posting file of GRAM. */
+    private static String gramName(String gram) {
+        return toHex(gram.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return the message opening the message file read into IN, or null if
+     *  a crash left it partly written. */
+    private static String readMessage(ByteBuffer in) {
+        try {
+            return readString(in);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException excp) {
+            return null;
+        }
+    }
+
+    /** Add the ids left in IN to RESULT, ignoring a partly written one. */
+    private static void readIds(ByteBuffer in, Set<String> result) {
+        while (in.remaining() >= ID_SIZE) {
+            result.add(readId(in));
+        }
+    }
+
+    /** Cut FILE back to its HEADER bytes followed by whole 20-byte ids,
+     *  dropping what a crash left of a partly written id, or of the header,
+     *  so that what is appended next is read where it was written. Return
+     *  the length FILE is left with, 0 if it does not exist. */
+    private static long cutToWholeIds(File file, int header) throws IOException {
+        long length = file.length();
+        long whole = length < header ? 0 : header + (length - header) / ID_SIZE * ID_SIZE;
+        if (whole != length) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(whole);
+            }
+        }
+        return whole;
+    }
+
+    /** Append BYTES to FILE, creating it if needed. */
+    private static void appendTo(File file, byte[] bytes) throws IOException {
+        Files.write(file.toPath(), bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
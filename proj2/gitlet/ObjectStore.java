@@ -0,0 +1,686 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Repository.COMMITED_DIR;
+import static gitlet.Repository.INFOCOMMIT_DIR;
+import static gitlet.Repository.PACK_DIR;
+import static gitlet.Repository.TREE_DIR;
+import static gitlet.Utils.error;
+import static gitlet.Utils.join;
+
+/** Helper class giving access to stored commits, trees and blobs, wherever they
+ *  live. An object is either loose, i.e. a file of its own in .gitlet/infocommit,
+ *  .gitlet/tree_obj or .gitlet/commited_obj, or packed into one of the packs in
+ *  .gitlet/pack_dir.
+ *  Loose objects are looked up first, so freshly written objects are always
+ *  found; "repack" moves every loose object into a single pack.
+ *
+ *  Objects are written compressed at the level set by Config. A compressed
+ *  loose object starts with LOOSE_MAGIC and its long size, followed by its
+ *  zlib stream; a loose object without LOOSE_MAGIC is stored as is.
+ *
+ *  @author Hongfa You
+ */
+class ObjectStore {
+    /** Number of earlier versions of a file each blob is tried against. */
+    private static final int DELTA_WINDOW = 10;
+    /** Longest chain of deltas a read may have to go through. */
+    private static final int MAX_DELTA_DEPTH = 10;
+    /** Blobs larger than this are never deltified. */
+    private static final long MAX_DELTA_SIZE = 16 * 1024 * 1024;
+
+    /** Magic number opening a compressed loose object. */
+    private static final byte[] LOOSE_MAGIC = {0, 'G', 'Z', 1};
+    /** Length of the header of a compressed loose object. */
+    private static final int LOOSE_HEADER = LOOSE_MAGIC.length + 8;
+
+    /** Packs of this repository, opened on first use. */
+    private static List<Pack> packs;
+
+    /** Return the serialized commit ID, or null if there is no such commit.
+     * @param id : SHA1 String of commit.
+     */
+    static byte[] readCommit(String id) {
+        File loose = join(INFOCOMMIT_DIR, id);
+        InputStream stream = loose.isFile() ? openLoose(loose) : findPacked(id, Pack.COMMIT);
+        if (stream == null) {
+            return null;
+        }
+        try (InputStream in = stream) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw error("Cannot read commit %s: %s", id, excp.getMessage());
+        }
+    }
+
+    /** Save the serialized commit CONTENTS as loose commit ID. */
+    static void writeCommit(String id, byte[] contents) {
+        writeLoose(new ByteArrayInputStream(contents), join(INFOCOMMIT_DIR, id));
+    }
+
+    /** Return true if there is at least one commit in this repository. */
+    static boolean hasCommits() {
+        String[] loose = INFOCOMMIT_DIR.list();
+        if (loose != null && loose.length > 0) {
+            return true;
+        }
+        for (Pack pack : packs()) {
+            for (int i = 0; i < pack.size(); i += 1) {
+                if (pack.typeAt(i) == Pack.COMMIT) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Return the SHA1 Strings of all commits, loose or packed, in
+     *  lexicographic order. */
+    static List<String> commitIds() {
+        TreeSet<String> result = new TreeSet<>(Utils.plainFilenamesIn(INFOCOMMIT_DIR));
+        for (Pack pack : packs()) {
+            for (int i = 0; i < pack.size(); i += 1) {
+                if (pack.typeAt(i) == Pack.COMMIT) {
+                    result.add(pack.idAt(i));
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the encoded tree ID, or null if there is no such tree.
+     * @param id : SHA1 String of tree.
+     */
+    static byte[] readTree(String id) {
+        File loose = join(TREE_DIR, id);
+        InputStream stream = loose.isFile() ? openLoose(loose) : findPacked(id, Pack.TREE);
+        if (stream == null) {
+            return null;
+        }
+        try (InputStream in = stream) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw error("Cannot read tree %s: %s", id, excp.getMessage());
+        }
+    }
+
+    /** Save the encoded tree CONTENTS as loose tree ID, unless tree ID is
+     *  already stored. Trees are named by their contents, so a stored tree
+     *  never needs rewriting. */
+    static void writeTree(String id, byte[] contents) {
+        File dest = join(TREE_DIR, id);
+        if (dest.isFile() || findPacked(id, Pack.TREE) != null) {
+            return;
+        }
+        File tmpfile = tempObject();
+        writeLoose(new ByteArrayInputStream(contents), tmpfile);
+        if (!tmpfile.renameTo(dest)) {
+            tmpfile.delete();
+            throw error("Cannot write tree %s.", id);
+        }
+    }
+
+    /** Return a stream over the contents of blob ID.
+     * @param id : SHA1 String of blob.
+     */
+    static InputStream openBlob(String id) {
+        File loose = looseBlob(id);
+        if (loose != null) {
+            return openLoose(loose);
+        }
+        InputStream packed = findPacked(id, Pack.BLOB);
+        if (packed == null) {
+            throw error("No blob with id %s.", id);
+        }
+        return packed;
+    }
+
+    /** Return the size in bytes of blob ID. */
+    private static long blobSize(String id) {
+        File loose = looseBlob(id);
+        if (loose != null) {
+            return looseSize(loose);
+        }
+        for (Pack pack : packs()) {
+            int pos = pack.find(id);
+            if (pos >= 0 && pack.typeAt(pos) == Pack.BLOB) {
+                return pack.sizeAt(pos);
+            }
+        }
+        throw error("No blob with id %s.", id);
+    }
+
+    /** Return true if blob ID is stored, loose or packed. */
+    static boolean hasBlob(String id) {
+        return join(COMMITED_DIR, id).isFile() || isPacked(id, Pack.BLOB);
+    }
+
+    /** Return the entire contents of blob ID. */
+    static byte[] readBlob(String id) {
+        try (InputStream in = openBlob(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw error("Cannot read blob %s: %s", id, excp.getMessage());
+        }
+    }
+
+    /** Write the contents of blob ID to DEST, overwriting it if it exists and
+     *  creating the directories above it if they do not.
+     *  The blob is decompressed straight into DEST. */
+    static void copyBlob(String id, File dest) {
+        dest.getParentFile().mkdirs();
+        try (InputStream in = openBlob(id)) {
+            Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("Cannot write %s: %s", dest, excp.getMessage());
+        }
+    }
+
+    /** Make DEST a hard link to blob ID and return true, if ID is a loose blob
+     *  stored as is and the file system allows it. The blob is made read-only
+     *  first, so that DEST cannot be written into. Return false, leaving DEST
+     *  alone, if ID cannot be linked, or if being read-only would not stop
+     *  this process writing into it, as for root.
+     * @param id : SHA1 String of blob.
+     * @param dest : file of the working directory, which is replaced.
+     */
+    static boolean linkBlob(String id, File dest) {
+        if (!isLinkable(id)) {
+            return false;
+        }
+        File loose = looseBlob(id);
+        if (loose == null || loose.canWrite() && (!loose.setReadOnly() || loose.canWrite())) {
+            return false;
+        }
+        LinkedBlobs.add(id, loose);
+        /* Linked beside the store, then moved over DEST, so that DEST is
+         * replaced at once and a link that cannot be made leaves it alone. */
+        Path tmp = tempObject().toPath();
+        try {
+            Files.delete(tmp);
+            Files.createLink(tmp, loose.toPath());
+            Files.move(tmp, dest.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException excp) {
+            tmp.toFile().delete();
+            return false;
+        }
+    }
+
+    /** Return the loose file of blob ID, or null if it has none. A blob that
+     *  linkBlob linked into the working directory is checked first, in case
+     *  the working file was written into in spite of being read-only; see
+     *  LinkedBlobs. If it was, the link is broken and null returned, so that
+     *  the blob is read from a pack if one has it; otherwise the blob is
+     *  reported as lost, rather than handed out with the wrong contents.
+     * @param id : SHA1 String of blob.
+     */
+    private static File looseBlob(String id) {
+        File loose = join(COMMITED_DIR, id);
+        if (!loose.isFile()) {
+            return null;
+        }
+        if (LinkedBlobs.isIntact(id, loose)) {
+            return loose;
+        }
+        loose.delete();
+        if (!isPacked(id, Pack.BLOB)) {
+            throw error("Blob %s was changed through a file linked to it in the "
+                    + "working directory; its contents are lost.", id);
+        }
+        return null;
+    }
+
+    /** Return true if blob ID is a loose blob stored as is, which linkBlob
+     *  can link where the file system allows it. */
+    static boolean isLinkable(String id) {
+        File loose = join(COMMITED_DIR, id);
+        return loose.isFile() && !isCompressed(loose);
+    }
+
+    /** Return true if blob ID has exactly the contents of FILE.
+     *  Sizes are compared first; a blob stored as is is then compared with
+     *  FILE in place, without decoding. */
+    static boolean isBlobSame(String id, File file) {
+        if (blobSize(id) != file.length()) {
+            return false;
+        }
+        File loose = looseBlob(id);
+        if (loose != null) {
+            return isLooseSame(loose, file);
+        }
+        try (InputStream in1 = openBlob(id);
+             InputStream in2 = new FileInputStream(file)) {
+            return isStreamSame(in1, in2);
+        } catch (IOException excp) {
+            throw error("Cannot compare blob %s: %s", id, excp.getMessage());
+        }
+    }
+
+    /** Return true if blobs ID1 and ID2 have the same contents. */
+    static boolean isBlobSame(String id1, String id2) {
+        if (id1.equals(id2)) {
+            return true;
+        }
+        if (blobSize(id1) != blobSize(id2)) {
+            return false;
+        }
+        try (InputStream in1 = openBlob(id1);
+             InputStream in2 = openBlob(id2)) {
+            return isStreamSame(in1, in2);
+        } catch (IOException excp) {
+            throw error("Cannot compare blobs %s and %s: %s", id1, id2, excp.getMessage());
+        }
+    }
+
+    /** Return true if the loose object OBJ has exactly the contents of FILE.
+     *  Sizes are compared first, and an object stored as is is compared as
+     *  a plain file by Utils.isFileSame. */
+    static boolean isLooseSame(File obj, File file) {
+        if (looseSize(obj) != file.length()) {
+            return false;
+        }
+        if (!isCompressed(obj)) {
+            return Utils.isFileSame(obj, file);
+        }
+        try (InputStream in1 = openLoose(obj);
+             InputStream in2 = new FileInputStream(file)) {
+            return isStreamSame(in1, in2);
+        } catch (IOException excp) {
+            throw error("Cannot compare %s: %s", obj, excp.getMessage());
+        }
+    }
+
+    /** Return the SHA1 String of the contents of the loose object OBJ. */
+    static String hashLoose(File obj) {
+        return Utils.sha1Stream(openLoose(obj));
+    }
+
+    /** Store the contents of the plain file SRC as the loose object DEST.
+     *  Returns the SHA1 String of those contents. */
+    static String writeLoose(File src, File dest) {
+        try {
+            return writeLoose(new FileInputStream(src), dest);
+        } catch (IOException excp) {
+            throw error("Cannot store %s: %s", src, excp.getMessage());
+        }
+    }
+
+    /** Return a new, empty file in .gitlet to write an object into before
+     *  moving it to its final place. */
+    static File tempObject() {
+        try {
+            return File.createTempFile("tmp_obj", null, Repository.GITLET_DIR);
+        } catch (IOException excp) {
+            throw error("Cannot create temporary object: %s", excp.getMessage());
+        }
+    }
+
+    /** Store the bytes read from IN, which is closed, as the loose object
+     *  DEST, compressing them at the level set by Config. At level 0 they
+     *  are stored as is, unless they happen to start with LOOSE_MAGIC.
+     *  The bytes are hashed as they go by, in a single pass with a fixed-size
+     *  buffer, and their SHA1 String is returned. */
+    static String writeLoose(InputStream in, File dest) {
+        int level = Config.compressionLevel();
+        MessageDigest md = Utils.sha1Digest();
+        Deflater deflater = null;
+        try (InputStream src = new BufferedInputStream(new DigestInputStream(in, md),
+                Utils.BUFFER_SIZE);
+             FileOutputStream out = new FileOutputStream(dest)) {
+            src.mark(LOOSE_MAGIC.length);
+            byte[] head = src.readNBytes(LOOSE_MAGIC.length);
+            src.reset();
+            if (level == 0 && !Arrays.equals(head, LOOSE_MAGIC)) {
+                src.transferTo(out);
+                return Utils.toHex(md.digest());
+            }
+            out.write(LOOSE_MAGIC);
+            out.write(new byte[8]);
+            deflater = new Deflater(level);
+            DeflaterOutputStream zipped = new DeflaterOutputStream(out, deflater, Utils.BUFFER_SIZE);
+            long size = src.transferTo(zipped);
+            zipped.finish();
+            out.getChannel().write(ByteBuffer.allocate(8).putLong(0, size), LOOSE_MAGIC.length);
+            return Utils.toHex(md.digest());
+        } catch (IOException excp) {
+            throw error("Cannot write object %s: %s", dest, excp.getMessage());
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /** Return a stream over the contents of the loose object FILE,
+     *  decompressing it if necessary. */
+    static InputStream openLoose(File file) {
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(file), Utils.BUFFER_SIZE);
+            in.mark(LOOSE_HEADER);
+            byte[] head = in.readNBytes(LOOSE_MAGIC.length);
+            if (!Arrays.equals(head, LOOSE_MAGIC)) {
+                in.reset();
+                return in;
+            }
+            in.skipNBytes(8);
+            return new InflaterInputStream(in);
+        } catch (IOException excp) {
+            throw error("Cannot read object %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return true if the loose object FILE is compressed. */
+    private static boolean isCompressed(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return Arrays.equals(in.readNBytes(LOOSE_MAGIC.length), LOOSE_MAGIC);
+        } catch (IOException excp) {
+            throw error("Cannot read object %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return the size of the contents of the loose object FILE. */
+    private static long looseSize(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            byte[] head = in.readNBytes(LOOSE_MAGIC.length);
+            return Arrays.equals(head, LOOSE_MAGIC) ? in.readLong() : file.length();
+        } catch (IOException excp) {
+            throw error("Cannot read object %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Move every loose commit, tree and blob, together with the contents of
+     *  the existing packs, into one new pack, then delete what it replaces.
+     *  Blobs are deltified against earlier versions of the same file. */
+    static void repack() {
+        List<Pack> oldPacks = packs();
+        File[] oldFiles = PACK_DIR.listFiles();
+        List<String> looseCommits = Utils.plainFilenamesIn(INFOCOMMIT_DIR);
+        List<String> looseTrees = Utils.plainFilenamesIn(TREE_DIR);
+        List<String> looseBlobs = Utils.plainFilenamesIn(COMMITED_DIR);
+
+        TreeSet<String> commits = new TreeSet<>(looseCommits);
+        TreeSet<String> trees = new TreeSet<>(looseTrees);
+        TreeSet<String> blobs = new TreeSet<>(looseBlobs);
+        for (Pack pack : oldPacks) {
+            for (int i = 0; i < pack.size(); i += 1) {
+                byte type = pack.typeAt(i);
+                (type == Pack.COMMIT ? commits : type == Pack.TREE ? trees : blobs)
+                        .add(pack.idAt(i));
+            }
+        }
+        TreeSet<String> ids = new TreeSet<>(commits);
+        ids.addAll(trees);
+        ids.addAll(blobs);
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        /* A pack is named after the objects it holds, so if the pack already
+         * exists only the loose copies and the other packs need to go. */
+        String name = "pack-" + Utils.sha1(String.join("", ids));
+        File newIndex = join(PACK_DIR, name + Pack.INDEX_SUFFIX);
+        if (!newIndex.exists()) {
+            Pack.Writer writer = new Pack.Writer(PACK_DIR, name);
+            int level = Config.compressionLevel();
+            for (String id : commits) {
+                byte[] contents = readCommit(id);
+                writeObject(writer, id, Pack.COMMIT, contents.length,
+                        new ByteArrayInputStream(contents), level);
+            }
+            for (String id : trees) {
+                byte[] contents = readTree(id);
+                writeObject(writer, id, Pack.TREE, contents.length,
+                        new ByteArrayInputStream(contents), level);
+            }
+            writeBlobs(writer, commits, blobs, level);
+            writer.finish();
+        }
+
+        closePacks();
+        String newName = newIndex.getName();
+        String newPack = name + Pack.PACK_SUFFIX;
+        for (File file : oldFiles) {
+            if (!file.getName().equals(newName) && !file.getName().equals(newPack)) {
+                file.delete();
+            }
+        }
+        for (String id : looseCommits) {
+            join(INFOCOMMIT_DIR, id).delete();
+        }
+        for (String id : looseTrees) {
+            join(TREE_DIR, id).delete();
+        }
+        for (String id : looseBlobs) {
+            join(COMMITED_DIR, id).delete();
+        }
+    }
+
+    /** Write BLOBS to WRITER, as deltas where that pays off and otherwise
+     *  compressed at LEVEL.
+     *  Each blob is named after a file of COMMITS that refers to it, and blobs
+     *  are visited by name and then by decreasing size, so the versions of one
+     *  file are next to each other and the larger ones become bases. Each blob
+     *  is tried against the previous DELTA_WINDOW versions of its file whose
+     *  chains are shorter than MAX_DELTA_DEPTH, and is stored as the smallest
+     *  delta found if that is at most half its size. A blob is written when it
+     *  leaves the window, by which time it is known whether it is a base.
+     *  Each distinct tree is walked once, however many commits share it.
+     *  TIME COMPLEXITY : O(C + T + B * DELTA_WINDOW * S). C : number of commits.
+     *  T : total size of trees. B : number of blobs. S : size of a blob.
+     */
+    private static void writeBlobs(Pack.Writer writer, TreeSet<String> commits,
+                                   TreeSet<String> blobs, int level) {
+        Map<String, String> names = new HashMap<>();
+        Set<String> seenTrees = new HashSet<>();
+        for (String id : commits) {
+            String tree = Commit.readCommitFromFile(id).getTreeId();
+            if (tree != null) {
+                Tree.walk(tree, seenTrees, (path, blob) -> names.putIfAbsent(blob, path));
+            }
+        }
+        Map<String, Long> sizes = new HashMap<>();
+        for (String id : blobs) {
+            sizes.put(id, blobSize(id));
+        }
+        List<String> order = new ArrayList<>(blobs);
+        order.sort(Comparator.comparing((String id) -> names.getOrDefault(id, ""))
+                .thenComparing(sizes::get, Comparator.reverseOrder())
+                .thenComparing(Comparator.naturalOrder()));
+
+        ArrayDeque<PendingBlob> window = new ArrayDeque<>();
+        String windowName = null;
+        for (String id : order) {
+            String fileName = names.getOrDefault(id, "");
+            if (!fileName.equals(windowName)) {
+                while (!window.isEmpty()) {
+                    window.removeFirst().write(writer, level);
+                }
+                windowName = fileName;
+            }
+            long size = sizes.get(id);
+            if (size > MAX_DELTA_SIZE) {
+                writeObject(writer, id, Pack.BLOB, size, openBlob(id), level);
+                continue;
+            }
+            PendingBlob blob = new PendingBlob(id, readBlob(id));
+            PendingBlob base = null;
+            for (PendingBlob candidate : window) {
+                if (candidate.depth >= MAX_DELTA_DEPTH) {
+                    continue;
+                }
+                int limit = blob.delta == null
+                        ? blob.content.length / 2 : blob.delta.length - 1;
+                byte[] delta = Delta.create(candidate.id, candidate.content,
+                        blob.content, limit);
+                if (delta != null) {
+                    blob.delta = delta;
+                    base = candidate;
+                }
+            }
+            if (base != null) {
+                base.isBase = true;
+                blob.depth = base.depth + 1;
+            }
+            window.addLast(blob);
+            if (window.size() > DELTA_WINDOW) {
+                window.removeFirst().write(writer, level);
+            }
+        }
+        while (!window.isEmpty()) {
+            window.removeFirst().write(writer, level);
+        }
+    }
+
+    /** Add object ID of type TYPE, whose SIZE bytes are read from IN, to
+     *  WRITER, compressed at LEVEL unless LEVEL is 0. */
+    private static void writeObject(Pack.Writer writer, String id, byte type,
+                                    long size, InputStream in, int level) {
+        if (level == 0) {
+            writer.add(id, type, in);
+        } else {
+            writer.addDeflated(id, type, size, in, level);
+        }
+    }
+
+    /** A blob in the delta window of repack, not written yet. */
+    private static class PendingBlob {
+        private final String id;
+        private final byte[] content;
+        /** Delta against an earlier blob of the window, or null. */
+        private byte[] delta;
+        /** Length of the chain of deltas leading to this blob. */
+        private int depth;
+        /** True if a later blob is stored as a delta against this one. */
+        private boolean isBase;
+
+        PendingBlob(String id, byte[] content) {
+            this.id = id;
+            this.content = content;
+        }
+
+        /** Add this blob to WRITER. Delta bases are stored whole so that their
+         *  ranges can be read directly; other blobs are compressed at LEVEL. */
+        void write(Pack.Writer writer, int level) {
+            if (delta != null) {
+                writer.addDelta(id, Pack.BLOB, delta);
+            } else if (isBase) {
+                writer.add(id, Pack.BLOB, new ByteArrayInputStream(content));
+            } else {
+                writeObject(writer, id, Pack.BLOB, content.length,
+                        new ByteArrayInputStream(content), level);
+            }
+        }
+    }
+
+    /** Return true if object ID of type TYPE is packed. */
+    private static boolean isPacked(String id, byte type) {
+        for (Pack pack : packs()) {
+            int pos = pack.find(id);
+            if (pos >= 0 && pack.typeAt(pos) == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the packed object ID of type TYPE, or null if it is not packed. */
+    private static InputStream findPacked(String id, byte type) {
+        for (Pack pack : packs()) {
+            int pos = pack.find(id);
+            if (pos >= 0 && pack.typeAt(pos) == type) {
+                return pack.open(pos);
+            }
+        }
+        return null;
+    }
+
+    /** Return the packs of this repository, opening them if necessary.
+     *  Objects may be read by several workers at once, which share the packs. */
+    private static synchronized List<Pack> packs() {
+        if (packs == null) {
+            List<Pack> opened = new ArrayList<>();
+            File[] files = PACK_DIR.listFiles((dir, name) -> name.endsWith(Pack.INDEX_SUFFIX));
+            if (files != null) {
+                for (File idx : files) {
+                    opened.add(new Pack(idx));
+                }
+            }
+            packs = opened;
+        }
+        return packs;
+    }
+
+    /** Close the packs of the previous repository; see Repository.setRoot. */
+    static void forget() {
+        closePacks();
+    }
+
+    /** Return the packs of the repository in use, or null if none are open.
+     *  They are kept open while gitlet works on another repository. */
+    static synchronized List<Pack> setAside() {
+        return packs;
+    }
+
+    /** Put SAVED, returned by setAside(), back in place. The packs in use are
+     *  not closed, as they were saved before. */
+    static synchronized void putBack(List<Pack> saved) {
+        packs = saved;
+    }
+
+    /** Close all open packs; they are reopened on next use, even if one could
+     *  not be closed. */
+    private static synchronized void closePacks() {
+        if (packs != null) {
+            List<Pack> closing = packs;
+            packs = null;
+            for (Pack pack : closing) {
+                pack.close();
+            }
+        }
+    }
+
+    /** Return true if IN1 and IN2 yield the same bytes. */
+    private static boolean isStreamSame(InputStream in1, InputStream in2) throws IOException {
+        byte[] buf1 = new byte[Utils.BUFFER_SIZE];
+        byte[] buf2 = new byte[Utils.BUFFER_SIZE];
+        while (true) {
+            int n1 = in1.readNBytes(buf1, 0, buf1.length);
+            int n2 = in2.readNBytes(buf2, 0, buf2.length);
+            if (n1 != n2 || !Arrays.equals(buf1, 0, n1, buf2, 0, n2)) {
+                return false;
+            }
+            if (n1 < buf1.length) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.error;
+
+/** A packfile: many objects stored in one data file, located through a sorted
+ *  index that is memory-mapped and searched with a 256-entry fan-out table.
+ *
+ *  FORMAT of NAME.pack :
+ *          "GPAK" | int version | object data, back to back
+ *  FORMAT of NAME.idx :
+ *          "GIDX" | int version | int count | int[256] fan-out | count records
+ *  Entry i of the fan-out table is the number of objects whose first id byte
+ *  is at most i, so the objects starting with byte b are the records in
+ *  [fanout[b - 1], fanout[b]). Each record is RECORD_SIZE bytes:
+ *          20-byte id | byte type | byte kind | 2 bytes padding | long offset | long length
+ *  and the records are sorted by id. An object of kind WHOLE is stored as is;
+ *  one of kind DEFLATED as its long size followed by its zlib stream; one of
+ *  kind DELTA as a Delta against another object of the same pack. A delta is
+ *  read by streaming through its chain of bases, one range at a time, without
+ *  rebuilding any intermediate version, so delta bases are never DEFLATED.
+ *
+ *  @author Hongfa You
+ */
+class Pack {
+    /** Type of a packed commit. */
+    static final byte COMMIT = 1;
+    /** Type of a packed blob. */
+    static final byte BLOB = 2;
+    /** Type of a packed tree. */
+    static final byte TREE = 3;
+
+    /** Kind of an object stored as is. */
+    static final byte WHOLE = 0;
+    /** Kind of an object stored as a delta against another packed object. */
+    static final byte DELTA = 1;
+    /** Kind of an object stored compressed. */
+    static final byte DEFLATED = 2;
+
+    /** Suffix of pack data files. */
+    static final String PACK_SUFFIX = ".pack";
+    /** Suffix of pack index files. */
+    static final String INDEX_SUFFIX = ".idx";
+
+    private static final int PACK_MAGIC = 0x4750414b; // "GPAK"
+    private static final int INDEX_MAGIC = 0x47494458; // "GIDX"
+    private static final int VERSION = 3;
+    private static final int ID_SIZE = 20;
+    private static final int RECORD_SIZE = 40;
+    private static final int FANOUT_OFFSET = 12;
+    private static final int RECORDS_OFFSET = FANOUT_OFFSET + 256 * 4;
+    /** Number of parsed deltas kept by each pack. */
+    private static final int DELTA_CACHE_SIZE = 256;
+
+    /** The mapped index file. */
+    private final MappedByteBuffer index;
+    /** The pack data file, mapped as a whole when it is small enough. */
+    private final FileChannel data;
+    private final MappedByteBuffer dataMap;
+    /** Number of objects in this pack. */
+    private final int count;
+    /** Recently parsed deltas, by position. */
+    private final Map<Integer, Delta> deltas = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Delta> eldest) {
+            return size() > DELTA_CACHE_SIZE;
+        }
+    };
+
+    /** Open the pack whose index file is IDXFILE. */
+    Pack(File idxFile) {
+        String name = idxFile.getName();
+        File packFile = new File(idxFile.getParentFile(),
+                name.substring(0, name.length() - INDEX_SUFFIX.length()) + PACK_SUFFIX);
+        try (FileChannel idx = FileChannel.open(idxFile.toPath(), StandardOpenOption.READ)) {
+            index = idx.map(FileChannel.MapMode.READ_ONLY, 0, idx.size());
+            int version = index.getInt(4);
+            if (index.getInt(0) != INDEX_MAGIC || version < 1 || version > VERSION) {
+                throw error("Bad pack index %s.", idxFile);
+            }
+            count = index.getInt(8);
+            data = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+            long size = data.size();
+            dataMap = size <= Integer.MAX_VALUE
+                    ? data.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+        } catch (IOException excp) {
+            throw error("Cannot open pack %s: %s", idxFile, excp.getMessage());
+        }
+    }
+
+    /** Return the number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /** Return the position of the object ID in this pack, or -1 if it is not
+     *  packed here. The search is confined to the fan-out bucket of ID.
+     * @param id : 40-character SHA1 String.
+     */
+    int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = toBytes(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(FANOUT_OFFSET + (first - 1) * 4);
+        int hi = index.getInt(FANOUT_OFFSET + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the id of the object at position POS. */
+    String idAt(int pos) {
+        byte[] id = new byte[ID_SIZE];
+        index.get(RECORDS_OFFSET + pos * RECORD_SIZE, id);
+        return Utils.toHex(id);
+    }
+
+    /** Return the type of the object at position POS. */
+    byte typeAt(int pos) {
+        return index.get(RECORDS_OFFSET + pos * RECORD_SIZE + ID_SIZE);
+    }
+
+    /** Return the kind, WHOLE, DELTA or DEFLATED, of the object at position POS. */
+    byte kindAt(int pos) {
+        return index.get(RECORDS_OFFSET + pos * RECORD_SIZE + ID_SIZE + 1);
+    }
+
+    /** Return the number of bytes the object at position POS takes in the pack. */
+    long lengthAt(int pos) {
+        return index.getLong(RECORDS_OFFSET + pos * RECORD_SIZE + 32);
+    }
+
+    /** Return the size in bytes of the object at position POS. */
+    long sizeAt(int pos) {
+        switch (kindAt(pos)) {
+            case DELTA:
+                return delta(pos).size();
+            case DEFLATED:
+                return read(pos).getLong(0);
+            default:
+                return lengthAt(pos);
+        }
+    }
+
+    /** Return a read-only buffer holding the stored bytes of the object at
+     *  position POS, which for a DELTA object are the delta itself. */
+    private ByteBuffer read(int pos) {
+        long offset = index.getLong(RECORDS_OFFSET + pos * RECORD_SIZE + 24);
+        long length = lengthAt(pos);
+        if (dataMap != null) {
+            return dataMap.slice((int) offset, (int) length);
+        }
+        try {
+            return data.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } catch (IOException excp) {
+            throw error("Cannot read packed object %s: %s", idAt(pos), excp.getMessage());
+        }
+    }
+
+    /** Return a stream over the object at position POS. */
+    InputStream open(int pos) {
+        return open(pos, 0, sizeAt(pos));
+    }
+
+    /** Return a stream over LEN bytes of the object at position POS,
+     *  starting at offset OFF. */
+    InputStream open(int pos, long off, long len) {
+        byte kind = kindAt(pos);
+        if (kind == DELTA) {
+            return new DeltaInputStream(pos, off, len);
+        }
+        ByteBuffer buf = read(pos);
+        if (kind == WHOLE) {
+            return new BufferInputStream(buf.slice((int) off, (int) len));
+        }
+        /* DEFLATED objects are never delta bases, so they are read whole. */
+        ByteBuffer zipped = buf.slice(8, buf.remaining() - 8);
+        return new InflaterInputStream(new BufferInputStream(zipped));
+    }
+
+    /** Return the parsed delta of the DELTA object at position POS. The
+     *  deltas kept are shared by the threads reading this pack. */
+    private Delta delta(int pos) {
+        synchronized (deltas) {
+            Delta result = deltas.get(pos);
+            if (result == null) {
+                result = new Delta(read(pos));
+                deltas.put(pos, result);
+            }
+            return result;
+        }
+    }
+
+    /** Release the pack data file. The mappings stay valid until collected. */
+    void close() {
+        try {
+            data.close();
+        } catch (IOException excp) {
+            throw error("Cannot close pack: %s", excp.getMessage());
+        }
+    }
+
+    /** Compare the id of the record at POS with KEY, unsigned byte by byte. */
+    private int compareId(int pos, byte[] key) {
+        int base = RECORDS_OFFSET + pos * RECORD_SIZE;
+        for (int i = 0; i < ID_SIZE; i += 1) {
+            int cmp = (index.get(base + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the 20 bytes denoted by the hexadecimal SHA1 String ID. */
+    static byte[] toBytes(String id) {
+        byte[] result = new byte[ID_SIZE];
+        for (int i = 0; i < ID_SIZE; i += 1) {
+            result[i] = (byte) Integer.parseInt(id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Writes a new pack. Objects may be added in any order; their data is
+     *  streamed straight into the pack file and the index is written, sorted,
+     *  by finish(). */
+    static class Writer {
+        private final File packFile;
+        private final File idxFile;
+        private final CountingOutputStream counted;
+        private final DataOutputStream out;
+        private final List<Entry> entries = new ArrayList<>();
+
+        /** Start writing the pack NAME in directory DIR. */
+        Writer(File dir, String name) {
+            packFile = Utils.join(dir, name + PACK_SUFFIX);
+            idxFile = Utils.join(dir, name + INDEX_SUFFIX);
+            try {
+                counted = new CountingOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(packFile), Utils.BUFFER_SIZE));
+                out = new DataOutputStream(counted);
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+            } catch (IOException excp) {
+                throw error("Cannot create pack %s: %s", packFile, excp.getMessage());
+            }
+        }
+
+        /** Append the object ID of type TYPE, whose contents are read from IN. */
+        void add(String id, byte type, InputStream in) {
+            add(id, type, WHOLE, in);
+        }
+
+        /** Append the object ID of type TYPE, stored as DELTA, a Delta against
+         *  another object of this pack. */
+        void addDelta(String id, byte type, byte[] delta) {
+            add(id, type, DELTA, new ByteArrayInputStream(delta));
+        }
+
+        /** Append the object ID of type TYPE, whose SIZE bytes are read from
+         *  IN, compressed at zlib level LEVEL. */
+        void addDeflated(String id, byte type, long size, InputStream in, int level) {
+            long offset = counted.count();
+            Deflater deflater = new Deflater(level);
+            try (InputStream src = in) {
+                out.writeLong(size);
+                DeflaterOutputStream zipped =
+                        new DeflaterOutputStream(out, deflater, Utils.BUFFER_SIZE);
+                src.transferTo(zipped);
+                zipped.finish();
+            } catch (IOException excp) {
+                throw error("Cannot pack object %s: %s", id, excp.getMessage());
+            } finally {
+                deflater.end();
+            }
+            entries.add(new Entry(toBytes(id), type, DEFLATED, offset, counted.count() - offset));
+        }
+
+        /** Append the object ID of type TYPE and kind KIND, whose stored bytes
+         *  are read from IN. */
+        private void add(String id, byte type, byte kind, InputStream in) {
+            long offset = counted.count();
+            try (InputStream src = in) {
+                src.transferTo(out);
+            } catch (IOException excp) {
+                throw error("Cannot pack object %s: %s", id, excp.getMessage());
+            }
+            entries.add(new Entry(toBytes(id), type, kind, offset, counted.count() - offset));
+        }
+
+        /** Flush the pack data and write its index. */
+        void finish() {
+            entries.sort(Comparator.comparing((Entry e) -> e.id, Arrays::compareUnsigned));
+            int[] fanout = new int[256];
+            for (Entry e : entries) {
+                fanout[e.id[0] & 0xff] += 1;
+            }
+            for (int i = 1; i < 256; i += 1) {
+                fanout[i] += fanout[i - 1];
+            }
+            try {
+                out.close();
+                try (DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(idxFile)))) {
+                    idx.writeInt(INDEX_MAGIC);
+                    idx.writeInt(VERSION);
+                    idx.writeInt(entries.size());
+                    for (int n : fanout) {
+                        idx.writeInt(n);
+                    }
+                    for (Entry e : entries) {
+                        idx.write(e.id);
+                        idx.writeByte(e.type);
+                        idx.writeByte(e.kind);
+                        idx.write(new byte[2]);
+                        idx.writeLong(e.offset);
+                        idx.writeLong(e.length);
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("Cannot write pack %s: %s", packFile, excp.getMessage());
+            }
+        }
+
+        /** Location of one object in the pack being written. */
+        private static class Entry {
+            private final byte[] id;
+            private final byte type;
+            private final byte kind;
+            private final long offset;
+            private final long length;
+
+            Entry(byte[] id, byte type, byte kind, long offset, long length) {
+                this.id = id;
+                this.type = type;
+                this.kind = kind;
+                this.offset = offset;
+                this.length = length;
+            }
+        }
+    }
+
+    /** An InputStream over a range of a DELTA object. It walks the delta's
+     *  instructions in order, reading literal bytes from the pack mapping and
+     *  opening a range of the base for each copy, so a chain of deltas is
+     *  streamed through rather than materialized. */
+    private class DeltaInputStream extends InputStream {
+        private final Delta delta;
+        private final ByteBuffer data;
+        private final int basePos;
+        /** Target offset of the next byte to read, and the end of the range. */
+        private long pos;
+        private final long end;
+        /** Stream over the rest of the current instruction's output. */
+        private InputStream current;
+
+        DeltaInputStream(int deltaPos, long off, long len) {
+            delta = delta(deltaPos);
+            data = Pack.this.read(deltaPos);
+            basePos = find(delta.baseId());
+            if (basePos < 0) {
+                throw error("Missing delta base %s.", delta.baseId());
+            }
+            pos = off;
+            end = off + len;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (pos < end) {
+                if (current == null) {
+                    int i = delta.find(pos);
+                    long skip = pos - delta.start(i);
+                    long n = Math.min(delta.length(i) - skip, end - pos);
+                    if (delta.isCopy(i)) {
+                        current = open(basePos, delta.source(i) + skip, n);
+                    } else {
+                        int from = (int) (delta.source(i) + skip);
+                        current = new BufferInputStream(data.slice(from, (int) n));
+                    }
+                }
+                int n = current.read(b, off, (int) Math.min(len, end - pos));
+                if (n > 0) {
+                    pos += n;
+                    return n;
+                }
+                current = null;
+            }
+            return -1;
+        }
+    }
+
+    /** An OutputStream counting the bytes written through it. */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        /** Return the number of bytes written so far. */
+        long count() {
+            return count;
+        }
+    }
+
+    /** An InputStream reading the remaining bytes of a ByteBuffer. */
+    static class BufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
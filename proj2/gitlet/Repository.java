@@ -2,6 +2,7 @@ package gitlet;
 
 import java.io.File;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static gitlet.Utils.*;
 
@@ -12,22 +13,142 @@ import static gitlet.Utils.*;
  *  @author Hongfa You
  */
 public class Repository {
-    /** The current working directory. */
-    public static final File CWD = new File(System.getProperty("user.dir"));
+    /** The current working directory: the root of the repository in use. */
+    public static File CWD = new File(System.getProperty("user.dir"));
     /** The .gitlet directory. */
-    public static final File GITLET_DIR = join(CWD, ".gitlet");
+    public static File GITLET_DIR;
     /** The .gitlet/staged_obj directory. */
-    public static final File STAGE_DIR = join(GITLET_DIR, "staged_obj");
+    public static File STAGE_DIR;
     /** The .gitlet/commited_obj directory. */
-    public static final File COMMITED_DIR = join(GITLET_DIR, "commited_obj");
+    public static File COMMITED_DIR;
     /** The .gitlet/unstaged_obj directory. */
-    public static final File UNSTAGE_DIR = join(GITLET_DIR, "unstaged_obj");
+    public static File UNSTAGE_DIR;
     /** The .gitlet directory. */
-    public static final File INFOCOMMIT_DIR = join(GITLET_DIR, "infocommit");
+    public static File INFOCOMMIT_DIR;
     /** The .gitlet/infostaged_dir directory. */
-    public static final File INFOSTAGE_DIR = join(GITLET_DIR, "infostaged_dir");
+    public static File INFOSTAGE_DIR;
     /** The .gitlet/branch_dir directory. */
-    public static final File BRANCH_DIR = join(GITLET_DIR, "branch_dir");
+    public static File BRANCH_DIR;
+    /** The .gitlet/pack_dir directory. */
+    public static File PACK_DIR;
+    /** The .gitlet/tree_obj directory. */
+    public static File TREE_DIR;
+    /** The .gitlet/message_idx directory. */
+    public static File MESSAGE_DIR;
+    /** The .gitlet/trigram_idx directory. */
+    public static File TRIGRAM_DIR;
+
+    static {
+        setRoot(CWD);
+    }
+
+    /** The repository in use, with what was loaded from it. */
+    private static State current;
+
+    /** What gitlet has loaded from one repository: its staging area, index,
+     *  caches, mapped graphs and open packs. GitletRepository keeps one for
+     *  each repository, so that switching back to a repository puts them
+     *  back in place instead of reading them again. */
+    static final class State {
+        /** Working directory of the repository. */
+        private final File root;
+        private HEAD.State head;
+        private Branch.State branches;
+        private LruCache<String, Commit> commits;
+        private Blob.State staged;
+        private Index.State index;
+        private Properties settings;
+        private CommitGraph.State graph;
+        private CommitIndex.State commitIndex;
+        private List<Pack> packs;
+        private HashMap<String, Index.Stat> linked;
+
+        /** A state of the repository at ROOT with nothing loaded yet. */
+        State(File root) {
+            this.root = root;
+        }
+
+        /** Set aside what is loaded from this repository. */
+        private void setAside() {
+            head = HEAD.setAside();
+            branches = Branch.setAside();
+            commits = Commit.setAside();
+            staged = Blob.setAside();
+            index = Index.setAside();
+            settings = Config.setAside();
+            graph = CommitGraph.setAside();
+            commitIndex = CommitIndex.setAside();
+            packs = ObjectStore.setAside();
+            linked = LinkedBlobs.setAside();
+        }
+
+        /** Put back what was set aside from this repository. */
+        private void putBack() {
+            HEAD.putBack(head);
+            Branch.putBack(branches);
+            Commit.putBack(commits);
+            Blob.putBack(staged);
+            Index.putBack(index);
+            Config.putBack(settings);
+            CommitGraph.putBack(graph);
+            CommitIndex.putBack(commitIndex);
+            ObjectStore.putBack(packs);
+            LinkedBlobs.putBack(linked);
+        }
+    }
+
+    /** Make ROOT the repository that the other methods work on, forgetting
+     *  what was loaded from the previous one, commits included. Trees stay
+     *  cached, since they are named by their contents. Only GitletRepository, which
+     *  serializes access to repositories, should call this after startup.
+     * @param root : working directory of the repository.
+     */
+    static void setRoot(File root) {
+        setDirs(root);
+        HEAD.forget();
+        Branch.forget();
+        Commit.forget();
+        Blob.forget();
+        Index.forget();
+        Config.forget();
+        CommitGraph.forget();
+        CommitIndex.forget();
+        ObjectStore.forget();
+        LinkedBlobs.forget();
+        current = new State(root);
+    }
+
+    /** Make the repository of NEXT the one the other methods work on,
+     *  setting aside what is loaded from the one in use and putting back
+     *  what NEXT had loaded. Nothing is read or closed.
+     *  Only GitletRepository should call this.
+     *  TIME COMPLEXITY : O(1).
+     */
+    static void use(State next) {
+        if (current == next) {
+            return;
+        }
+        current.setAside();
+        current = next;
+        setDirs(next.root);
+        next.putBack();
+    }
+
+    /** Point the directories of the repository at ROOT. */
+    private static void setDirs(File root) {
+        CWD = root;
+        GITLET_DIR = join(CWD, ".gitlet");
+        STAGE_DIR = join(GITLET_DIR, "staged_obj");
+        COMMITED_DIR = join(GITLET_DIR, "commited_obj");
+        UNSTAGE_DIR = join(GITLET_DIR, "unstaged_obj");
+        INFOCOMMIT_DIR = join(GITLET_DIR, "infocommit");
+        INFOSTAGE_DIR = join(GITLET_DIR, "infostaged_dir");
+        BRANCH_DIR = join(GITLET_DIR, "branch_dir");
+        PACK_DIR = join(GITLET_DIR, "pack_dir");
+        TREE_DIR = join(GITLET_DIR, "tree_obj");
+        MESSAGE_DIR = join(GITLET_DIR, "message_idx");
+        TRIGRAM_DIR = join(GITLET_DIR, "trigram_idx");
+    }
 
     /** Create a new Gitlet version-control system in the current directory.
      *
@@ -37,60 +158,49 @@ public class Repository {
      *
      *  In addition, save the new created initial commit, master branch,
      *  HEAD branch to the file system for future use.
+     *  @return SHA1 String of the initial commit.
      *  TIME COMPLEXITY : O(1).
      */
-    public static void init() {
+    public static String init() {
         String errMsg = "A Gitlet version-control system already exists in the current directory.";
         if (GITLET_DIR.exists()) {
             abort(errMsg);
         } else {
             mkalldir();
         }
+        Config.set(Config.FORMAT, Integer.toString(UpgradeHelper.CURRENT_FORMAT));
         Commit initial = new Commit("initial commit", null, null);
         initial.saveCommit();
+        CommitGraph.append(initial);
+        MessageIndex.append(initial);
         HEAD.initialize(initial.getSHA1());
+        return initial.getSHA1();
     }
 
-    /** Adds a copy of the file as it currently exists to the staging area.
+    /** Adds a copy of the files as they currently exist to the staging area.
      *
-     *  If file named filename doesn't exists, or it is a directory, just exit.
-     *  If the file is identical to the version in the current commit, do not stage
+     *  Each name is a file, a directory standing for all of the files under
+     *  it, such as ".", or a glob pattern such as "*.txt"; see StageHelper.expand.
+     *  If a file named doesn't exist, or a pattern matches no file, just exit.
+     *  If a file is identical to the version in the current commit, do not stage
      *  it, and remove it from the staging area if already there.
-     *  If the new-added file is already unstaged, just unremove it.
-     *  @param filename : name of File to be added (staged).
-     *  TIME COMPLEXITY : O(M + logN)
-     *  M:the size of the file being added   N:the number of files in the commit.
+     *  If a new-added file is already unstaged, just unremove it.
+     *
+     *  Each file is read at most once: it is streamed through a SHA1 digest while
+     *  being written to a temporary object, and the digest is then compared with
+     *  the id of the blob in the current commit to decide whether the temporary
+     *  object is staged or thrown away. Heap use does not depend on file sizes.
+     *  If the Index shows a file untouched since it last had the committed
+     *  contents, it is not read at all. Files are read in parallel, and the
+     *  staging area is written once for all of them.
+     *  @param names : paths of Files to be added (staged), relative to the
+     *   working directory, directories or glob patterns.
+     *  TIME COMPLEXITY : O(K * logN + M / P)
+     *  K:the number of files added   M:their total size
+     *  N:the number of files in the commit   P:the number of cores.
      */
-    public static void add(String filename) {
-        File destFile = join(CWD, filename);
-        /** File named filename doesn't exists, or it is a directory, exit. */
-        if (!destFile.exists()) {
-            abort("File does not exist.");
-        } else if (destFile.isDirectory()) {
-            abort(filename + "is a directory.");
-        }
-
-        /** If the new-added file is already unstaged, just unremove it. */
-        if (Blob.isRemovalContains(filename)) {
-            Blob.unremove(filename);
-            return;
-        }
-
-        /** Load current Commit and files in it. */
-        Commit lastCommit = Commit.readCommitFromFile(HEAD.whichCommit());
-        File commitedFile = lastCommit.loadfile(filename); //TC: O(logN)
-
-        /** Check if file staged is the same as the file in CWD. */
-        /** If it is, remove it from staging area. */
-        if (commitedFile != null && isFileSame(commitedFile, destFile)) {
-            String sha1 = Utils.sha1(filename);
-            File stagedfile = join(STAGE_DIR, sha1);
-            if (stagedfile.exists()) {
-                restrictedDelete(stagedfile);
-            }
-            return;
-        }
-        Blob.add(filename);
+    public static void add(String... names) {
+        StageHelper.addAll(StageHelper.expand(names));
     }
 
     /** Create a new Commit and saves a snapshot of tracked files in the current
@@ -110,10 +220,11 @@ public class Repository {
      *  result of being staged for removal by the rm command.
      * @param msg : message for new commit.
      * @param sp : second parent.
+     * @return SHA1 String of the new commit.
      * TIME COMPLEXITY : O(N) , N : total number of files the commit is tracking.
      * SPACE COMPLEXITY : O(M) , M : total size of the files staged for addition when "commit".
      */
-    public static void commit(String msg, String sp) {
+    public static String commit(String msg, String sp) {
         if (msg.length() == 0) {
             abort("Please enter a commit message.");
         }
@@ -123,16 +234,20 @@ public class Repository {
         CommitHelper.staged2Commited(commit); // SC : O(M).
         HEAD.switch2commit(commit.getSHA1());
         commit.saveCommit();
+        CommitGraph.append(commit);
+        MessageIndex.append(commit);
+        return commit.getSHA1();
     }
 
     /** Unstage the file if it is currently staged for addition. If the file is
      * tracked in the current commit, stage it for removal and remove the file from
      * the working directory if the user has not already done so (don't remove it
      * unless it is tracked in the current commit).
-     * @param filename : name of file to "rm".
+     * @param name : path of file to "rm", relative to the working directory.
      * TIME COMPLEXITY : O(logN). N : total number of files the commit is tracking.
      */
-    public static void rm(String filename) {
+    public static void rm(String name) {
+        String filename = WorkTreeHelper.normalize(name);
         boolean iSinCommit = StageHelper.checkCommit2Unstaged(filename);
         boolean iSinStage = StageHelper.unstageOne(filename);
         if (!iSinCommit && !iSinStage) {
@@ -147,72 +262,59 @@ public class Repository {
      * (In regular Git, this is what you get with git log --first-parent). This set
      * of commit nodes is called the commit’s history. The information it should display
      * is the commit id, the time the commit was made, and the commit message.
+     * The history is followed through the CommitGraph; commits are only read
+     * to return them.
+     * @return the commits of the history, newest first.
      * TIME COMPLEXITY : O(N).  N : the number of nodes in head’s history.
      */
-    public static void log() {
-        Commit commit = Commit.readCommitFromFile(HEAD.whichCommit());
-        String parent;
-        while (true) {
-            parent = commit.getfirstParent();
-            commit.printCommitInfo();
-            if (parent == null) {
-                break;
-            }
-            commit = Commit.readCommitFromFile(parent);
+    public static List<CommitInfo> log() {
+        List<CommitInfo> history = new ArrayList<>();
+        int row = CommitGraph.rowOf(HEAD.whichCommit());
+        while (row != CommitGraph.NO_PARENT) {
+            history.add(CommitInfo.of(Commit.readCommitFromFile(CommitGraph.idAt(row))));
+            row = CommitGraph.firstParent(row);
         }
+        return history;
     }
 
     /** Like log, except displays information about all commits ever made. The order of
      *  the commits does not matter. Hint: there is a useful method in gitlet.Utils that
      *  will help you iterate over files within a directory.
+     *  Commits are read in parallel and handed over in order by LogHelper.
+     * @param isByTime : if true, give the newest commits first.
+     * @param action : called with each commit in turn.
      *  TIME COMPLEXITY : O(N).  N : the number of commits ever made.
      */
-    public static void globalLog() {
-        List<String> fileList = Utils.plainFilenamesIn(INFOCOMMIT_DIR);
-        Commit commit;
-
-        for (String filename: fileList) {
-            commit = Commit.readCommitFromFile(filename);
-            commit.printCommitInfo();
-        }
+    public static void globalLog(boolean isByTime, Consumer<CommitInfo> action) {
+        LogHelper.globalLog(isByTime, action);
     }
 
-    /** Prints out the ids of all commits that have the given commit message, one per line.
+    /** Returns the ids of all commits that have the given commit message, in order.
      * If there are multiple such commits, it prints the ids out on separate lines. The
      * commit message is a single operand; to indicate a multiword message, put the operand
      * in quotation marks, as for the commit command below.
+     * The commits are looked up in the MessageIndex rather than read one by one.
      * @param msg : commit message to find.
-     * TIME COMPLEXITY : O(N).  N : the number of commits ever made.
+     * @param isSubstring : if true, find the commits whose message contains msg.
+     * @return SHA1 Strings of the commits found, possibly none.
+     * TIME COMPLEXITY : O(K).  K : the number of commits found, for a whole message.
      */
-    public static void find(String msg) {
+    public static List<String> find(String msg, boolean isSubstring) {
         if (msg == null) {
             abort("Please specify a message to find.");
         }
-        List<String> fileList = Utils.plainFilenamesIn(INFOCOMMIT_DIR);
-        Commit commit;
-        boolean isFinded = false;
-        for (String filename: fileList) {
-            commit = Commit.readCommitFromFile(filename);
-            if (commit.getMessage().equals(msg)) {
-                message(commit.getSHA1());
-                isFinded = true;
-            }
-        }
-        if (!isFinded) {
-            message("Found no commit with that message.");
-        }
+        return isSubstring ? MessageIndex.search(msg) : MessageIndex.find(msg);
     }
 
     /** Displays what branches currently exist, and marks the current branch with a *.
      *  Also displays what files have been staged for addition or removal. An example of
-     *  the exact format it should follow is as follows.
+     *  Status.toString() gives the text in the exact format required.
      */
-    public static void status() {
-        List<String> commitList = Utils.plainFilenamesIn(Repository.INFOCOMMIT_DIR);
-        if (commitList.isEmpty()) {
+    public static Status status() {
+        if (!ObjectStore.hasCommits()) {
             Utils.abort("Not in an initialized Gitlet directory.");
         }
-        StatusHelper.printStatus();
+        return StatusHelper.status();
     }
 
     /** Takes the version of the file as it exists in the head commit and puts it in the
@@ -227,7 +329,7 @@ public class Repository {
             Utils.abort("Incorrect operands.");
         }
         String commitId = HEAD.whichCommit();
-        CheckoutHelper.overwriteOne(commitId, filename);
+        CheckoutHelper.overwriteOne(commitId, WorkTreeHelper.normalize(filename));
         // unstageOne(filename);
         /** Only version 3 (checkout of a full branch) modifies the staging area:
         * otherwise files scheduled for addition or removal remain so. */
@@ -242,7 +344,10 @@ public class Repository {
      *  present in the checked-out branch are deleted.
      *  The staging area is cleared, unless the checked-out branch is the current branch
      *  (see Failure cases below).
+     *  Only the files that differ from the checked-out commit are written or deleted;
+     *  see CheckoutHelper.switchTo.
      * @param branchName : name of branch to checkout.
+     * TIME COMPLEXITY : O(N + D). N : number of files. D : size of the files that change.
      */
     public static void checkout(String branchName) {
         // checkout [branch name]
@@ -256,9 +361,9 @@ public class Repository {
         }
 
         CheckoutHelper.checkUntracked();
+        /* HEAD only moves once every file was written. */
+        CheckoutHelper.switchTo(Branch.readBranchIn(branchName, false).whichCommit());
         HEAD.switchHEAD(branchName);
-        deleteCWDall();
-        CheckoutHelper.overwriteAll(HEAD.whichCommit());
         CheckoutHelper.unstageAll();
     }
 
@@ -283,7 +388,7 @@ public class Repository {
         } else {
             commitId = commitName;
         }
-        CheckoutHelper.overwriteOne(commitId, fileName);
+        CheckoutHelper.overwriteOne(commitId, WorkTreeHelper.normalize(fileName));
         // unstageOne(fileName);
         /* Only version 3 (checkout of a full branch) modifies the staging area:
         * otherwise files scheduled for addition or removal remain so. */
@@ -321,42 +426,130 @@ public class Repository {
      *  may be abbreviated as for checkout. The staging area is cleared. The command is essentially
      *  checkout of an arbitrary commit that also changes the current branch head.
      * @param commitID : SHA1 String of commit to reset to.
-     * TIME COMPLEXITY : O(N). N : total size of files tracked by the given commit.
+     * TIME COMPLEXITY : O(N + D). N : number of files tracked by the given commit.
+     *  D : total size of the files that change; see CheckoutHelper.switchTo.
      *  O(1), be constant with respect to any measure involving number of commits.
     */
     public static void reset(String commitID) {
+        commitID = resolveId(commitID);
         CheckoutHelper.checkUntracked();
-        Commit commit = Commit.readCommitFromFile(commitID);
-        deleteCWDall();
+        CheckoutHelper.switchTo(commitID);
         HEAD.switch2commit(commitID);
-        CheckoutHelper.overwriteAll(commitID); // TC : O(1).
         CheckoutHelper.unstageAll();
     }
 
     /** Driver method for merge.
      * @param branchName : name of the other branch.
-     * TIME COMPLEXITY : O(NlgN+D).
-     *   N : the total number of ancestor commits for the two branches
+     * @return whether the merge fast-forwarded or met conflicts, and the new head.
+     * TIME COMPLEXITY : O(VlgV+D).
+     *   V : the number of commits between the two branches and their split point
      *   D : total amount of data in all the files under these commits.
      */
-    public static void merge(String branchName) {
-        String splitCommitSha1 = MergeHelper.findSplitPoint(branchName); // TC: O(NlogN)
+    public static MergeResult merge(String branchName) {
+        String splitCommitSha1 = MergeHelper.findSplitPoint(branchName); // TC: O(VlogV)
         String commitSHA1 = Branch.readBranchIn(branchName, true).whichCommit();
-        MergeHelper.mergeCheck(branchName, splitCommitSha1, commitSHA1);
-        MergeHelper.doMerge(splitCommitSha1, commitSHA1);
+        if (MergeHelper.mergeCheck(branchName, splitCommitSha1, commitSHA1)) {
+            return new MergeResult(commitSHA1, true, false);
+        }
+        boolean isConflict = MergeHelper.doMerge(splitCommitSha1, commitSHA1);
         String commitMsg = "Merged " + branchName + " into " + HEAD.getPointBranch() + ".";
-        commit(commitMsg, commitSHA1);
+        return new MergeResult(commit(commitMsg, commitSHA1), false, isConflict);
+    }
+
+
+    /** Returns the best common ancestors of two commits, newest first, with
+     *  the number of commits visited to find them. Each commit is given by a
+     *  branch name, HEAD or a commit id.
+     * @param name1 : first commit.
+     * @param name2 : second commit, or null for the current head commit.
+     * TIME COMPLEXITY : O(VlgV). V : the number of commits between the two
+     *  commits and their common ancestors.
+     */
+    public static MergeBase mergeBase(String name1, String name2) {
+        String id1 = resolveCommit(name1);
+        String id2 = name2 == null ? HEAD.whichCommit() : resolveCommit(name2);
+        return MergeBase.of(id1, id2);
+    }
+
+    /** Return SHA1 String of the commit NAME, which is a branch name, a commit
+     *  id or an abbreviation of one. */
+    private static String resolveCommit(String name) {
+        if (name.equals("HEAD")) {
+            return HEAD.whichCommit();
+        } else if (Branch.isBranchExist(name)) {
+            return Branch.readBranchIn(name, false).whichCommit();
+        }
+        return resolveId(name);
+    }
+
+    /** Return SHA1 String of the commit ID, which is a full commit id or an
+     *  abbreviation of one; aborts if there is no such commit. */
+    private static String resolveId(String id) {
+        String commitId = id.length() < 40 ? CheckoutHelper.find(id) : id;
+        if (commitId == null) {
+            abort("No commit with that id exists.");
+        }
+        return commitId;
+    }
+
+    /** Moves every loose commit and blob into a single packfile in .gitlet/pack_dir,
+     *  merging in any existing packs. Packed objects are read through a memory-mapped
+     *  index, so commands no longer open one file per object.
+     *  TIME COMPLEXITY : O(NlogN + D). N : number of objects. D : their total size.
+     */
+    public static void repack() {
+        ObjectStore.repack();
     }
 
 
-    /** Delete all of the files in current working directory. */
-    private static void deleteCWDall() {
-        List<String> fileList = Utils.plainFilenamesIn(CWD);
-        File file;
-        for (String filename: fileList) {
-            file = join(CWD, filename);
-//            Utils.restrictedDelete(filename);
-            file.delete();
+    /** Writes .gitlet/commit_graph anew from all of the commits. The graph is
+     *  kept up to date by every commit, so this is only needed if it was lost
+     *  or damaged.
+     *  TIME COMPLEXITY : O(N). N : the number of commits ever made.
+     */
+    public static void commitGraph() {
+        CommitGraph.rebuild();
+    }
+
+
+    /** Returns the value of the setting KEY of this repository, or sets it to VALUE
+     *  if VALUE is not null. See Config for the settings there are.
+     * @param key : name of setting, such as "core.compression".
+     * @param value : new value, or null to read the current one.
+     * @return the current value, or null if KEY is not set or was just set.
+     */
+    public static String config(String key, String value) {
+        if (value != null) {
+            Config.set(key, value);
+            return null;
+        }
+        return Config.get(key);
+    }
+
+
+    /** Save the stat data and hashes of the working files gathered by this
+     *  command in .gitlet/index; see Index.
+     */
+    public static void saveIndex() {
+        if (!Batch.isCoalescing()) {
+            Index.save();
+        }
+    }
+
+    /** Bring a repository written by an older version of gitlet up to date.
+     *  This happens once per repository; see UpgradeHelper.
+     */
+    public static void upgrade() {
+        UpgradeHelper.upgrade();
+    }
+
+    /** Print the size and hit and miss counters of the in-memory caches to
+     *  standard error, if the system property gitlet.cacheStats is true. */
+    public static void printCacheStats() {
+        if (Boolean.getBoolean("gitlet.cacheStats")) {
+            System.err.println(Commit.cache.stats());
+            System.err.println(Tree.CACHE.stats());
+            System.err.println(Branch.cache.stats());
         }
     }
 
@@ -369,6 +562,10 @@ public class Repository {
         restrictCreateDir(INFOSTAGE_DIR);
         restrictCreateDir(INFOCOMMIT_DIR);
         restrictCreateDir(BRANCH_DIR);
+        restrictCreateDir(PACK_DIR);
+        restrictCreateDir(TREE_DIR);
+        restrictCreateDir(MESSAGE_DIR);
+        restrictCreateDir(TRIGRAM_DIR);
     }
 
 }
@@ -1,17 +1,142 @@
 package gitlet;
 
 import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static gitlet.Repository.STAGE_DIR;
 import static gitlet.Repository.CWD;
 
 import static gitlet.Utils.*;
 
-/** **/
+/** Helper class providing static helper methods for "add" and "rm".
+ *  expand(String... names) : Return the files named by files, directories and globs.
+ *  addAll(List paths) : Stage many files, hashing them in parallel.
+ *  checkCommit2Unstaged(String filename) : Remove a tracked file from the working directory.
+ *  unstageOne(String filename) : Unstage a file staged for addition.
+ */
 public class StageHelper {
 
+    /** A file of "add" once read: its stat data and blob id, and the object
+     *  holding its contents if it is to be staged, or null if it is the same
+     *  as in the current commit. */
+    private static class Added {
+        private final String path;
+        private final Index.Stat stat;
+        private final String blob;
+        private final File tmpfile;
+
+        Added(String path, Index.Stat stat, String blob, File tmpfile) {
+            this.path = path;
+            this.stat = stat;
+            this.blob = blob;
+            this.tmpfile = tmpfile;
+        }
+    }
+
     /***  PROTECTED METHOD ***/
 
+    /** Return the paths, relative to the working directory, of the files named
+     *  by NAMES, in order and without duplicates. A name is a file; a
+     *  directory, standing for every file under it, "." being the whole
+     *  working tree; or a glob pattern such as "src/*.java" or "**.txt",
+     *  matched against the paths of the files in the working tree, in which
+     *  '*' does not cross '/' but '**' does. The working tree is only walked
+     *  if there is a directory or pattern, and then once for all of them.
+     * @param names : operands of "add".
+     * TIME COMPLEXITY : O(K) for K files, O(N * G) with directories or
+     *  patterns. N : files in the working tree. G : directories and patterns.
+     */
+    protected static List<String> expand(String... names) {
+        TreeSet<String> result = new TreeSet<>();
+        List<String> specs = new ArrayList<>();
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String name : names) {
+            String path = WorkTreeHelper.normalize(name);
+            File file = join(CWD, path);
+            if (isGlob(name)) {
+                specs.add(name);
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + path));
+            } else if (file.isDirectory()) {
+                String prefix = path.isEmpty() ? "" : path + "/";
+                specs.add(name);
+                matchers.add(candidate -> candidate.toString().startsWith(prefix));
+            } else if (file.isFile()) {
+                result.add(path);
+            } else {
+                abort("File does not exist.");
+            }
+        }
+        if (matchers.isEmpty()) {
+            return new ArrayList<>(result);
+        }
+        boolean[] isMatched = new boolean[matchers.size()];
+        try (Stream<String> files = WorkTreeHelper.files()) {
+            files.forEach(file -> {
+                Path candidate = Path.of(file);
+                for (int i = 0; i < matchers.size(); i += 1) {
+                    if (matchers.get(i).matches(candidate)) {
+                        isMatched[i] = true;
+                        result.add(file);
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < isMatched.length; i += 1) {
+            if (!isMatched[i]) {
+                abort("No file matches " + specs.get(i) + ".");
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Stage the files PATHS of the working directory, as "add" does each.
+     *  A file staged for removal is only unremoved. The rest are read, each
+     *  at most once, by parallel workers that compare them with the current
+     *  commit and write the ones that changed to temporary objects; files the
+     *  Index shows untouched since they had the committed contents are not
+     *  read at all. The results are then staged in order on this thread, and
+     *  the journal of the staging area is written once.
+     * @param paths : normalized paths of files, as returned by expand().
+     * TIME COMPLEXITY : O(K * logN + M / P). K : number of files. N : number
+     *  of files in the commit. M : total size of the files read. P : cores.
+     */
+    protected static void addAll(List<String> paths) {
+        Commit lastCommit = Commit.readCommitFromFile(HEAD.whichCommit());
+        List<String> toRead = new ArrayList<>();
+        List<String> committed = new ArrayList<>();
+        boolean isHolding = Blob.hold();
+        try {
+            for (String path : paths) {
+                if (Blob.isRemovalContains(path)) {
+                    Blob.unremove(path);
+                } else {
+                    toRead.add(path);
+                    committed.add(lastCommit.getCommittedFileSHA1(path)); //TC: O(logN)
+                }
+            }
+            for (Added added : readAll(toRead, committed)) {
+                Index.put(added.path, added.stat, added.blob);
+                if (added.tmpfile == null) {
+                    unstageOne(added.path);
+                } else {
+                    Blob.addStaged(added.path, added.tmpfile, added.blob);
+                }
+            }
+        } finally {
+            if (isHolding) {
+                Blob.flush();
+            }
+        }
+    }
 
     /** Check current Commit for file to unstage from it.
      *  If the file exists in the Commit, move it from .gitlet/commited_obj to .gitlet/unstaged_obj.
@@ -26,8 +151,7 @@ public class StageHelper {
             return false;
         }
         if (commit.isFilemapContains(filename)) {
-            File cwdfile = Utils.join(CWD, filename);
-            cwdfile.delete();
+            WorkTreeHelper.deleteFile(filename);
             return true;
         }
         return false;
@@ -50,6 +174,50 @@ public class StageHelper {
 
     /*** PRIVATE METHOD ***/
 
+    /** Return what was read of the files PATHS, whose blobs in the current
+     *  commit are COMMITTED (null for untracked files), in the same order.
+     *  If any file cannot be read, the temporary objects already written are
+     *  deleted and nothing is staged. */
+    private static List<Added> readAll(List<String> paths, List<String> committed) {
+        List<File> written = Collections.synchronizedList(new ArrayList<>());
+        try {
+            return IntStream.range(0, paths.size()).parallel()
+                    .mapToObj(i -> readOne(paths.get(i), committed.get(i), written))
+                    .collect(Collectors.toList());
+        } catch (RuntimeException excp) {
+            synchronized (written) {
+                written.forEach(File::delete);
+            }
+            throw excp;
+        }
+    }
+
+    /** Return what was read of the file PATH, whose blob in the current commit
+     *  is COMMITTED, adding the temporary object written, if any, to WRITTEN.
+     *  Run by the workers of readAll(). */
+    private static Added readOne(String path, String committed, List<File> written) {
+        File file = join(CWD, path);
+        Index.Stat stat = Index.Stat.of(file);
+        if (stat == null) {
+            abort("File does not exist.");
+        }
+        if (committed != null && committed.equals(Index.cachedHash(path, stat))) {
+            return new Added(path, stat, committed, null);
+        }
+        File tmpfile = ObjectStore.tempObject();
+        written.add(tmpfile);
+        String blob = ObjectStore.writeLoose(file, tmpfile); //TC: O(M)
+        if (blob.equals(committed)) {
+            tmpfile.delete();
+            return new Added(path, stat, blob, null);
+        }
+        return new Added(path, stat, blob, tmpfile);
+    }
+
+    /** Return true if NAME is a glob pattern rather than a path. */
+    private static boolean isGlob(String name) {
+        return name.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
 
 
 }
@@ -0,0 +1,91 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.List;
+
+/** What "status" found in a repository: its branches, the files staged for
+ *  addition and removal, the files modified but not staged, and the untracked
+ *  files, each list in the order status prints it. toString() gives the text
+ *  status prints.
+ *
+ *  @author Hongfa You
+ */
+public final class Status {
+    private final List<String> branches;
+    private final String currentBranch;
+    private final List<String> staged;
+    private final List<String> removed;
+    private final List<String> modified;
+    private final List<String> untracked;
+
+    Status(List<String> branches, String currentBranch, List<String> staged,
+           List<String> removed, List<String> modified, List<String> untracked) {
+        this.branches = Collections.unmodifiableList(branches);
+        this.currentBranch = currentBranch;
+        this.staged = Collections.unmodifiableList(staged);
+        this.removed = Collections.unmodifiableList(removed);
+        this.modified = Collections.unmodifiableList(modified);
+        this.untracked = Collections.unmodifiableList(untracked);
+    }
+
+    /** Return the names of all branches. */
+    public List<String> branches() {
+        return branches;
+    }
+
+    /** Return the name of the current branch. */
+    public String currentBranch() {
+        return currentBranch;
+    }
+
+    /** Return the paths of the files staged for addition. */
+    public List<String> staged() {
+        return staged;
+    }
+
+    /** Return the paths of the files staged for removal. */
+    public List<String> removed() {
+        return removed;
+    }
+
+    /** Return the files modified but not staged, each a path followed by
+     *  "(modified)" or "(deleted)". */
+    public List<String> modified() {
+        return modified;
+    }
+
+    /** Return the paths of the files neither staged nor tracked. */
+    public List<String> untracked() {
+        return untracked;
+    }
+
+    /** Return this status as the status command prints it. */
+    @Override
+    public String toString() {
+        String nl = System.lineSeparator();
+        StringBuilder text = new StringBuilder();
+        text.append("=== Branches ===").append(nl);
+        for (String branch : branches) {
+            if (branch.equals(currentBranch)) {
+                text.append('*');
+            }
+            text.append(branch).append(nl);
+        }
+        text.append(nl);
+        section(text, "=== Staged Files ===", staged);
+        section(text, "=== Removed Files ===", removed);
+        section(text, "=== Modifications Not Staged For Commit ===", modified);
+        section(text, "=== Untracked Files ===", untracked);
+        return text.toString();
+    }
+
+    /** Append the section TITLE listing LINES to TEXT. */
+    private static void section(StringBuilder text, String title, List<String> lines) {
+        String nl = System.lineSeparator();
+        text.append(title).append(nl);
+        for (String line : lines) {
+            text.append(line).append(nl);
+        }
+        text.append(nl);
+    }
+}
@@ -0,0 +1,261 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+import static gitlet.Utils.*;
+
+/** Represents a gitlet tree object: the snapshot of one directory.
+ *  A tree maps the names of the files of its directory to their blobs, and the
+ *  names of its subdirectories, which end with '/', to their trees. Trees are
+ *  named by the SHA1 of their encoding, so a directory whose contents did not
+ *  change between two commits is the very same tree in both, and a commit only
+ *  writes the trees on the paths to the files it changes.
+ *
+ *  Since every path under a subtree starts with the subtree's name, visiting
+ *  entries in name order and descending into subtrees yields the paths of a
+ *  snapshot in the same order as sorting them.
+ *
+ *  FORMAT :
+ *          int MAGIC | varint count | count entries
+ *  where each entry is the name as a varint UTF-8 length and bytes, followed
+ *  by the 20-byte id of its blob or tree.
+ *
+ *  @author Hongfa You
+ */
+class Tree {
+    /** Magic number opening an encoded tree. */
+    private static final int MAGIC = 0x47545245; // "GTRE"
+    /** Number of parsed trees kept in memory. */
+    private static final int CACHE_SIZE = 4096;
+    /** Entries of the tree with no entries. */
+    private static final TreeMap<String, String> NO_ENTRIES = new TreeMap<>();
+
+    /** Recently read trees, by SHA1 String. Trees never change once written. */
+    static final LruCache<String, Tree> CACHE = new LruCache<>("trees", CACHE_SIZE);
+
+    /** Entries of this tree, from name to SHA1 String of blob or tree. */
+    private final TreeMap<String, String> entries;
+
+    /** A tree with ENTRIES. */
+    private Tree(TreeMap<String, String> entries) {
+        this.entries = entries;
+    }
+
+    /** Return the tree ID, aborting if there is no such tree. */
+    static Tree read(String id) {
+        Tree tree = CACHE.get(id);
+        if (tree == null) {
+            byte[] bytes = ObjectStore.readTree(id);
+            if (bytes == null) {
+                throw error("No tree with id %s.", id);
+            }
+            tree = fromBytes(bytes);
+            CACHE.put(id, tree);
+        }
+        return tree;
+    }
+
+    /** Return the entries of this tree. Names of subtrees end with '/'. */
+    Map<String, String> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /** Return the SHA1 String of the blob of PATH in tree ID, or null if the
+     *  tree does not track PATH.
+     *  TIME COMPLEXITY : O(D * logN). D : depth of PATH. N : entries of a tree.
+     */
+    static String lookup(String id, String path) {
+        Tree tree = read(id);
+        int from = 0;
+        int slash = path.indexOf('/');
+        while (slash >= 0) {
+            String sub = tree.entries.get(path.substring(from, slash + 1));
+            if (sub == null) {
+                return null;
+            }
+            tree = read(sub);
+            from = slash + 1;
+            slash = path.indexOf('/', from);
+        }
+        return tree.entries.get(path.substring(from));
+    }
+
+    /** Return every file of tree ID, from path to SHA1 String of its blob.
+     *  TIME COMPLEXITY : O(NlogN). N : number of files.
+     */
+    static TreeMap<String, String> flatten(String id) {
+        TreeMap<String, String> files = new TreeMap<>();
+        walk(id, null, files::put);
+        return files;
+    }
+
+    /** Call VISITOR with the path and blob of every file of tree ID. Subtrees
+     *  in SEEN are skipped, and those visited are added to it, so that walking
+     *  many snapshots reads each distinct tree once; SEEN may be null.
+     */
+    static void walk(String id, Set<String> seen, BiConsumer<String, String> visitor) {
+        walk(id, "", seen, visitor);
+    }
+
+    private static void walk(String id, String prefix, Set<String> seen,
+                             BiConsumer<String, String> visitor) {
+        if (seen != null && !seen.add(id)) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : read(id).entries.entrySet()) {
+            String name = entry.getKey();
+            if (isTree(name)) {
+                walk(entry.getValue(), prefix + name, seen, visitor);
+            } else {
+                visitor.accept(prefix + name, entry.getValue());
+            }
+        }
+    }
+
+    /** Store the tree of FILES, from path to SHA1 String of blob, and return
+     *  its SHA1 String. */
+    static String store(Map<String, String> files) {
+        return update(null, new TreeMap<>(files));
+    }
+
+    /** Return the SHA1 String of the tree ID with CHANGES applied, where
+     *  CHANGES maps paths to their new blobs, or to null to remove them.
+     *  ID is null for the empty tree. Only the trees on the paths of CHANGES are
+     *  rewritten; every other subtree is shared with ID. Subtrees left empty
+     *  are removed, but the root is kept even if empty.
+     *  TIME COMPLEXITY : O(C * D * N). C : number of changes. D : depth of
+     *  the changed paths. N : entries of a changed tree.
+     */
+    static String update(String id, SortedMap<String, String> changes) {
+        return update(id == null ? NO_ENTRIES : read(id).entries, id, changes, true);
+    }
+
+    private static String update(TreeMap<String, String> base, String baseId,
+                                 SortedMap<String, String> changes, boolean isRoot) {
+        TreeMap<String, String> entries = new TreeMap<>(base);
+        Map<String, TreeMap<String, String>> subChanges = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                subChanges.computeIfAbsent(path.substring(0, slash + 1), k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, change.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> sub : subChanges.entrySet()) {
+            String dir = sub.getKey();
+            String oldId = entries.get(dir);
+            TreeMap<String, String> oldEntries = oldId == null ? NO_ENTRIES : read(oldId).entries;
+            String newId = update(oldEntries, oldId, sub.getValue(), false);
+            if (newId == null) {
+                entries.remove(dir);
+            } else {
+                entries.put(dir, newId);
+            }
+        }
+
+        if (entries.isEmpty() && !isRoot) {
+            return null;
+        }
+        if (baseId != null && entries.equals(base)) {
+            return baseId;
+        }
+        Tree tree = new Tree(entries);
+        byte[] bytes = tree.toBytes();
+        String id = sha1(bytes);
+        ObjectStore.writeTree(id, bytes);
+        CACHE.put(id, tree);
+        return id;
+    }
+
+    /** Visitor of the files that differ between two trees. */
+    interface DiffVisitor {
+        /** Called for PATH, whose blob is BLOB1 in the first tree and BLOB2
+         *  in the second; either is null where PATH is absent. */
+        void visit(String path, String blob1, String blob2);
+    }
+
+    /** Call VISITOR, in path order, for every file whose blob differs between
+     *  trees ID1 and ID2; either may be null for the empty tree. Subtrees with
+     *  the same id are skipped without being read.
+     *  TIME COMPLEXITY : O(T * N). T : trees that differ. N : entries of a tree.
+     */
+    static void diff(String id1, String id2, DiffVisitor visitor) {
+        diff(id1, id2, "", visitor);
+    }
+
+    private static void diff(String id1, String id2, String prefix, DiffVisitor visitor) {
+        if (Objects.equals(id1, id2)) {
+            return;
+        }
+        TreeMap<String, String> entries1 = id1 == null ? NO_ENTRIES : read(id1).entries;
+        TreeMap<String, String> entries2 = id2 == null ? NO_ENTRIES : read(id2).entries;
+        TreeSet<String> names = new TreeSet<>(entries1.keySet());
+        names.addAll(entries2.keySet());
+        for (String name : names) {
+            String entry1 = entries1.get(name);
+            String entry2 = entries2.get(name);
+            if (Objects.equals(entry1, entry2)) {
+                continue;
+            }
+            if (isTree(name)) {
+                diff(entry1, entry2, prefix + name, visitor);
+            } else {
+                visitor.visit(prefix + name, entry1, entry2);
+            }
+        }
+    }
+
+    /** Return true if the entry NAME is a subtree. */
+    private static boolean isTree(String name) {
+        return name.endsWith("/");
+    }
+
+    /** Return this tree in its encoding. */
+    private byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            writeVarint(out, entries.size());
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writeString(out, entry.getKey());
+                writeId(out, entry.getValue());
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw error("Cannot encode tree: %s", excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Decode a tree from BYTES. */
+    private static Tree fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (bytes.length < 4 || in.getInt() != MAGIC) {
+            throw error("Corrupt tree.");
+        }
+        int count = (int) readVarint(in);
+        TreeMap<String, String> entries = new TreeMap<>();
+        for (int i = 0; i < count; i += 1) {
+            String name = readString(in);
+            entries.put(name, readId(in));
+        }
+        return new Tree(entries);
+    }
+}
@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Repository.COMMITED_DIR;
+import static gitlet.Utils.join;
+
+/** Helper class bringing repositories written by older versions of gitlet up to
+ *  date, once. The format of a repository is recorded in .gitlet/config under
+ *  Config.FORMAT; a repository without it predates the compact commit encoding.
+ *
+ *  FORMAT 1 : commits use the compact encoding of Commit.toBytes(), and every
+ *             blob is named by the SHA1 of its contents.
+ *  FORMAT 2 : the snapshot of each commit is a Tree instead of a file map.
+ *  FORMAT 3 : every commit is in the CommitGraph.
+ *  FORMAT 4 : every commit is in the MessageIndex.
+ *  FORMAT 5 : the staging area is one snapshot with a generation, and its
+ *             journal names the generation it follows; see Blob.
+ *
+ *  @author Hongfa You
+ */
+class UpgradeHelper {
+    /** Format of repositories written by this version of gitlet. */
+    static final int CURRENT_FORMAT = 5;
+
+    /** Upgrade this repository if it is older than CURRENT_FORMAT. */
+    protected static void upgrade() {
+        String value = Config.get(Config.FORMAT);
+        int format = value == null ? 0 : Integer.parseInt(value);
+        if (format >= CURRENT_FORMAT) {
+            return;
+        }
+        if (ObjectStore.hasCommits()) {
+            if (format < 2) {
+                upgradeCommits(format < 1);
+            }
+            if (format < 3) {
+                CommitGraph.rebuild();
+            }
+            if (format < 4) {
+                MessageIndex.rebuild();
+            }
+        }
+        if (format < 5) {
+            Blob.upgrade();
+        }
+        Config.set(Config.FORMAT, Integer.toString(CURRENT_FORMAT));
+    }
+
+    /** Rewrite every commit in the current encoding, with its files stored as
+     *  a Tree. If REKEYBLOBS, the blobs committed before blobs were
+     *  content-addressed are renamed along the way. Each blob is read once; the
+     *  loose copies under their old names are deleted at the end, and packed
+     *  ones are left for repack to carry along.
+     *  TIME COMPLEXITY : O(C + D). C : total size of commits. D : total size of blobs.
+     */
+    private static void upgradeCommits(boolean rekeyBlobs) {
+        List<String> commitIds = ObjectStore.commitIds();
+        Map<String, String> renamed = new HashMap<>();
+        Set<String> verified = new HashSet<>();
+        for (String id : commitIds) {
+            byte[] bytes = ObjectStore.readCommit(id);
+            Commit commit = Commit.fromBytes(bytes);
+            boolean changed = !Commit.isEncoded(bytes);
+            if (rekeyBlobs && !commit.isFilemapNull()) {
+                for (Map.Entry<String, String> entry : commit.getFileMap().entrySet()) {
+                    String blob = entry.getValue();
+                    if (!verified.contains(blob) && !renamed.containsKey(blob)) {
+                        String contentId = rekey(blob);
+                        if (contentId.equals(blob)) {
+                            verified.add(blob);
+                        } else {
+                            renamed.put(blob, contentId);
+                        }
+                    }
+                    if (renamed.containsKey(blob)) {
+                        entry.setValue(renamed.get(blob));
+                        changed = true;
+                    }
+                }
+            }
+            if (changed) {
+                ObjectStore.writeCommit(id, commit.toBytes());
+            }
+        }
+        for (String oldId : renamed.keySet()) {
+            join(COMMITED_DIR, oldId).delete();
+        }
+    }
+
+    /** Make sure the contents of blob ID are stored under their SHA1, and
+     *  return that SHA1. */
+    private static String rekey(String id) {
+        String contentId = Utils.sha1Stream(ObjectStore.openBlob(id));
+        if (!contentId.equals(id) && !ObjectStore.hasBlob(contentId)) {
+            File tmpfile = ObjectStore.tempObject();
+            ObjectStore.writeLoose(ObjectStore.openBlob(id), tmpfile);
+            if (!tmpfile.renameTo(join(COMMITED_DIR, contentId))) {
+                tmpfile.delete();
+                throw Utils.error("Cannot rename blob %s.", id);
+            }
+        }
+        return contentId;
+    }
+}
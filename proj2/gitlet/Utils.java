@@ -1,18 +1,24 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
@@ -30,6 +36,9 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** Size of the buffers used when streaming file contents. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
     /* SHA-1 HASH VALUES. */
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
@@ -62,6 +71,51 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of the contents of FILE, read through a
+     *  fixed-size buffer so that large files are never held in memory.
+     *  Throws IllegalArgumentException in case of problems. */
+    static String sha1File(File file) {
+        try {
+            return sha1Stream(new FileInputStream(file));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the SHA-1 hash of the bytes read from IN, which is closed.
+     *  Throws IllegalArgumentException in case of problems. */
+    static String sha1Stream(InputStream input) {
+        try (InputStream in = input) {
+            MessageDigest md = sha1Digest();
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a new SHA-1 MessageDigest. */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns DIGEST as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        Formatter result = new Formatter();
+        for (byte b : digest) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -219,6 +273,81 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* COMPACT ENCODING UTILITIES */
+
+    /** Write N >= 0 to OUT in 7-bit groups, least significant first, with the
+     *  high bit of each byte set when more groups follow. */
+    static void writeVarint(DataOutputStream out, long n) throws IOException {
+        while ((n & ~0x7fL) != 0) {
+            out.writeByte((int) ((n & 0x7f) | 0x80));
+            n >>>= 7;
+        }
+        out.writeByte((int) n);
+    }
+
+    /** Read a number written by writeVarint from IN. */
+    static long readVarint(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Write the String S to OUT as its UTF-8 length and bytes. */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /** Read a String written by writeString from IN. */
+    static String readString(ByteBuffer in) {
+        int len = (int) readVarint(in);
+        String result = new String(in.array(), in.arrayOffset() + in.position(), len,
+                StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return result;
+    }
+
+    /** Write the 40-character SHA1 String ID to OUT as its 20 bytes. */
+    static void writeId(DataOutputStream out, String id) throws IOException {
+        for (int i = 0; i < UID_LENGTH; i += 2) {
+            out.writeByte(Character.digit(id.charAt(i), 16) << 4
+                          | Character.digit(id.charAt(i + 1), 16));
+        }
+    }
+
+    /** Read a SHA1 String written by writeId from IN. */
+    static String readId(ByteBuffer in) {
+        char[] result = new char[UID_LENGTH];
+        for (int i = 0; i < UID_LENGTH; i += 2) {
+            int b = in.get() & 0xff;
+            result[i] = HEX_DIGITS[b >>> 4];
+            result[i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
@@ -237,13 +366,52 @@ class Utils {
     /** Compare the content of two file
      * If same, return true;
      * else return false;
+     * Files of different sizes differ without being read. Others are mapped
+     * into memory MAP_CHUNK bytes at a time and compared until they differ,
+     * so comparing large files needs no heap.
+     * TIME COMPLEXITY : O(1) if sizes differ, else O(K). K : bytes up to the
+     *  first difference.
      */
     public static boolean isFileSame(File file1, File file2) {
-        byte[] bfile1 = readContents(file1);
-        byte[] bfile2 = readContents(file2);
-        return Arrays.equals(bfile1, bfile2);
+        return isFileSame(file1, null, file2, null);
     }
 
+    /** Return true if FILE1 and FILE2 have the same contents, as
+     *  isFileSame(file1, file2), given the SHA1 Strings HASH1 and HASH2 of
+     *  their contents where they are known, or null. Files whose hashes are
+     *  both known are not read.
+     */
+    static boolean isFileSame(File file1, String hash1, File file2, String hash2) {
+        long size = file1.length();
+        if (size != file2.length()) {
+            return false;
+        }
+        if (hash1 != null && hash2 != null) {
+            return hash1.equals(hash2);
+        }
+        try (FileChannel in1 = FileChannel.open(file1.toPath(), StandardOpenOption.READ);
+             FileChannel in2 = FileChannel.open(file2.toPath(), StandardOpenOption.READ)) {
+            if (in1.size() != in2.size()) {
+                return false;
+            }
+            size = in1.size();
+            for (long at = 0; at < size; at += MAP_CHUNK) {
+                long length = Math.min(MAP_CHUNK, size - at);
+                ByteBuffer chunk1 = in1.map(FileChannel.MapMode.READ_ONLY, at, length);
+                ByteBuffer chunk2 = in2.map(FileChannel.MapMode.READ_ONLY, at, length);
+                if (chunk1.mismatch(chunk2) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException excp) {
+            throw error("Cannot compare %s and %s: %s", file1, file2, excp.getMessage());
+        }
+    }
+
+    /** Number of bytes of each file isFileSame maps at once. */
+    private static final long MAP_CHUNK = 64L * 1024 * 1024;
+
     /** Create directory named dirname, if it doesn't exists.
      * @param dirname
      */
@@ -272,12 +440,13 @@ class Utils {
         return fmt.toString();
     }
 
-    /** Abort with message printed.
+    /** Abort the command with message printed. The command is stopped by a
+     *  GitletException, whose message Main prints, so that a daemon serving
+     *  many commands survives the ones that abort.
      * @param msg : message.
      */
     public static void abort(String msg) {
-        System.out.println(msg);
-        System.exit(0);
+        throw new GitletException(msg);
     }
 
 }
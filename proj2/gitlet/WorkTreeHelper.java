@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.GITLET_DIR;
+
+/** Helper class walking the working directory, subdirectories included.
+ *  files() : Stream the paths of all files in the working directory, in order.
+ *  normalize(String name) : Return the path under which file name is tracked.
+ *  deleteFile(String path) : Delete a file and the directories it leaves empty.
+ *
+ *  Paths are relative to the working directory and use '/' between names,
+ *  the same as the paths of a commit, whose order they are also listed in.
+ *  The .gitlet directory is never listed.
+ *
+ *  @author Hongfa You
+ */
+public class WorkTreeHelper {
+
+    /** Return the paths of all plain files in the working directory, in
+     *  lexicographic order.
+     *  Every directory is listed by its own task on the common ForkJoinPool,
+     *  so deep and wide trees are read on all cores. The stream only waits for
+     *  a directory when it reaches it, so callers start consuming paths while
+     *  later directories are still being read, and each path is kept once.
+     *  TIME COMPLEXITY : O(NlogM / P). N : number of files and directories.
+     *  M : entries of a directory. P : number of cores.
+     */
+    protected static Stream<String> files() {
+        DirScan root = new DirScan(CWD, "");
+        ForkJoinPool.commonPool().execute(root);
+        return root.stream();
+    }
+
+    /** Return the path, relative to the working directory and with '/'
+     *  between names, of the file NAME given on the command line, so that
+     *  "./a//b.txt" and "a/b.txt" are tracked as the same file. */
+    protected static String normalize(String name) {
+        String path = CWD.toPath().relativize(
+                new File(CWD, name).toPath().normalize()).toString();
+        return File.separatorChar == '/' ? path : path.replace(File.separatorChar, '/');
+    }
+
+    /** Delete the file PATH of the working directory, together with the
+     *  directories above it that this leaves empty.
+     * @param path : path of file.
+     */
+    protected static void deleteFile(String path) {
+        File file = Utils.join(CWD, path);
+        file.delete();
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Task listing one directory and forking a task for each subdirectory.
+     *  A task is done as soon as its own directory is listed; the tasks of its
+     *  subdirectories run on, and are joined by stream(). */
+    private static class DirScan extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        /** Directory to list. */
+        private final File dir;
+        /** Path of DIR, ending with '/' unless it is the working directory. */
+        private final String prefix;
+        /** Entries of DIR in order: the path of each file, and the task of
+         *  each subdirectory. Set by compute(). */
+        private List<Object> entries;
+
+        DirScan(File dir, String prefix) {
+            this.dir = dir;
+            this.prefix = prefix;
+        }
+
+        /** Directory names are sorted as if they ended with '/', as in a Tree,
+         *  so that listing subtrees in place keeps every path in order. */
+        @Override
+        protected void compute() {
+            File[] children = dir.listFiles();
+            entries = new ArrayList<>();
+            if (children == null) {
+                return;
+            }
+            String[] names = new String[children.length];
+            for (int i = 0; i < children.length; i += 1) {
+                File child = children[i];
+                if (child.isDirectory()) {
+                    boolean skip = child.equals(GITLET_DIR) || Files.isSymbolicLink(child.toPath());
+                    names[i] = skip ? null : child.getName() + "/";
+                } else if (child.isFile()) {
+                    names[i] = child.getName();
+                }
+            }
+            names = Arrays.stream(names).filter(name -> name != null).sorted()
+                    .toArray(String[]::new);
+            for (String name : names) {
+                if (name.endsWith("/")) {
+                    DirScan sub = new DirScan(new File(dir, name), prefix + name);
+                    sub.fork();
+                    entries.add(sub);
+                } else {
+                    entries.add(prefix + name);
+                }
+            }
+        }
+
+        /** Return the paths of the files under this directory, in order,
+         *  waiting for each directory to be listed when it is reached. */
+        Stream<String> stream() {
+            join();
+            return entries.stream().flatMap(entry -> entry instanceof DirScan
+                    ? ((DirScan) entry).stream() : Stream.of((String) entry));
+        }
+    }
+}
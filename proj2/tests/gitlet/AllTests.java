@@ -0,0 +1,24 @@
+package gitlet;
+
+/** Runs every test of gitlet; see Tests.
+ *
+ *  @author Hongfa You
+ */
+class AllTests {
+
+    public static void main(String[] args) {
+        Tests.run(ObjectStoreTest.class);
+        Tests.run(BlobTest.class);
+        Tests.run(CommitGraphTest.class);
+        Tests.run(CommitIndexTest.class);
+        Tests.run(CommitTest.class);
+        Tests.run(DeltaTest.class);
+        Tests.run(GitletRepositoryTest.class);
+        Tests.run(LinkedBlobsTest.class);
+        Tests.run(MergeBaseTest.class);
+        Tests.run(MessageIndexTest.class);
+        Tests.run(StatusHelperTest.class);
+        Tests.run(UpgradeHelperTest.class);
+        Tests.exit();
+    }
+}
@@ -0,0 +1,159 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static gitlet.Tests.*;
+
+/** Tests of the staging area kept by Blob as a snapshot and a journal:
+ *  what a process reads back after another one crashed is the last
+ *  snapshot plus exactly the changes recorded since. A crash is simulated
+ *  by leaving the files as they are and forgetting the staging area in
+ *  memory, as a new process would start. The blob id of each staged file
+ *  is read back with it.
+ *
+ *  @author Hongfa You
+ */
+class BlobTest {
+
+    public static void main(String[] args) {
+        Tests.run(BlobTest.class);
+        Tests.exit();
+    }
+
+    /** Changes recorded in the journal are read back. */
+    static void testJournalReplayed() {
+        GitletRepository repo = newRepository();
+        write(repo, "c.txt", "c\n");
+        repo.add("c.txt");
+        repo.commit("add c");
+        write(repo, "a.txt", "a\n");
+        write(repo, "dir/b.txt", "b\n");
+        repo.add("a.txt", "dir/b.txt");
+        repo.rm("c.txt");
+        check(journalFile().isFile(), "nothing was journaled");
+
+        Blob.forget();
+        checkEquals(List.of("a.txt", "dir/b.txt"), sorted(repo.status().staged()), "staged");
+        checkEquals(List.of("c.txt"), repo.status().removed(), "removed");
+    }
+
+    /** A record cut short by a crash is dropped, and what is recorded after
+     *  it is read back too. */
+    static void testTornRecordDropped() {
+        GitletRepository repo = newRepository();
+        write(repo, "a.txt", "a\n");
+        write(repo, "b.txt", "b\n");
+        repo.add("a.txt");
+        append(journalFile(), new byte[] {1, 20, 'b', '.'});
+
+        Blob.forget();
+        checkEquals(List.of("a.txt"), repo.status().staged(), "staged after the crash");
+        repo.add("b.txt");
+        Blob.forget();
+        checkEquals(List.of("a.txt", "b.txt"), sorted(repo.status().staged()),
+                "staged after an add");
+    }
+
+    /** A journal left behind by a crash just after a new snapshot was
+     *  written is ignored, and not appended to. */
+    static void testStaleJournalIgnored() {
+        GitletRepository repo = newRepository();
+        write(repo, "a.txt", "a\n");
+        repo.add("a.txt");
+        byte[] stale = Utils.readContents(journalFile());
+        repo.commit("add a");
+        check(!journalFile().exists(), "commit left the journal");
+        Utils.writeContents(journalFile(), (Object) stale);
+
+        Blob.forget();
+        checkEquals(List.of(), repo.status().staged(), "staged after the crash");
+        write(repo, "b.txt", "b\n");
+        repo.add("b.txt");
+        Blob.forget();
+        checkEquals(List.of("b.txt"), repo.status().staged(), "staged after an add");
+    }
+
+    /** The snapshot alone holds a cleared staging area. */
+    static void testSnapshotAfterClear() {
+        GitletRepository repo = newRepository();
+        write(repo, "a.txt", "a\n");
+        repo.add("a.txt");
+        repo.commit("add a");
+        check(snapshotFile().isFile(), "commit wrote no snapshot");
+        Blob.forget();
+        checkEquals(List.of(), repo.status().staged(), "staged after commit");
+    }
+
+    /** The id of each staged file is recorded, in the journal and in the
+     *  snapshot, so that commit need not read the file again. */
+    static void testBlobIdsRecorded() {
+        GitletRepository repo = newRepository();
+        write(repo, "a.txt", "a\n");
+        repo.add("a.txt");
+        String key = Utils.sha1("a.txt");
+        String id = Utils.sha1("a\n");
+        checkEquals(id, Blob.stagedBlob(key), "id staged");
+        Blob.forget();
+        checkEquals(id, Blob.stagedBlob(key), "id read from the journal");
+
+        write(repo, "b.txt", "b\n");
+        repo.add("b.txt");
+        repo.rm("b.txt");
+        checkEquals(null, Blob.stagedBlob(Utils.sha1("b.txt")), "id of an unstaged file");
+        Blob.deleteRemoval();
+        Blob.forget();
+        checkEquals(id, Blob.stagedBlob(key), "id read from the snapshot");
+    }
+
+    /** A file staged by an older version, without its id, is hashed at
+     *  commit. */
+    static void testAddWithoutIdCommitted() {
+        GitletRepository repo = newRepository();
+        write(repo, "a.txt", "a\n");
+        repo.add("a.txt");
+        byte[] journal = Utils.readContents(journalFile());
+        byte[] header = Arrays.copyOf(journal, 12);
+        byte[] record = {1, 5, 'a', '.', 't', 'x', 't'};
+        Utils.writeContents(journalFile(), header, record);
+
+        Blob.forget();
+        checkEquals(null, Blob.stagedBlob(Utils.sha1("a.txt")), "id staged");
+        String commit = repo.commit("add a");
+        repo.root().resolve("a.txt").toFile().delete();
+        repo.checkoutFile(commit, "a.txt");
+        checkEquals("a\n", read(repo, "a.txt"), "a.txt committed");
+    }
+
+    /** Return NAMES sorted, as the staging area lists them by hashed name. */
+    private static List<String> sorted(List<String> names) {
+        List<String> result = new ArrayList<>(names);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Append BYTES to FILE. */
+    private static void append(File file, byte[] bytes) {
+        try {
+            Files.write(file.toPath(), bytes, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /** Return the journal of the repository in use. */
+    private static File journalFile() {
+        return Utils.join(Repository.INFOSTAGE_DIR, "journal");
+    }
+
+    /** Return the snapshot of the repository in use. */
+    private static File snapshotFile() {
+        return Utils.join(Repository.INFOSTAGE_DIR, "snapshot");
+    }
+}
@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Tests.*;
+
+/** Tests of the CommitGraph as a file derived from the commits: lost, it is
+ *  written anew, and every lookup through it still finds every commit.
+ *  A new process is simulated by forgetting the graph and the CommitIndex.
+ *
+ *  @author Hongfa You
+ */
+class CommitGraphTest {
+
+    public static void main(String[] args) {
+        Tests.run(CommitGraphTest.class);
+        Tests.exit();
+    }
+
+    /** Abbreviated ids and global-log by time still see every commit. */
+    static void testLostGraphRebuilt() {
+        GitletRepository repo = newRepository();
+        List<String> ids = commit(repo, 4);
+        loseGraph();
+
+        String first = ids.get(0);
+        repo.checkoutFile(first.substring(0, 8), "f.txt");
+        checkEquals("version 0\n", read(repo, "f.txt"), "f.txt of the first commit");
+        repo.reset(ids.get(2).substring(0, 8));
+        checkEquals("version 2\n", read(repo, "f.txt"), "f.txt after reset");
+        List<String> logged = new ArrayList<>();
+        repo.globalLog(true, info -> logged.add(info.id()));
+        checkEquals(ids.size() + 1, logged.size(), "commits in global-log --by-time");
+        check(logged.containsAll(ids), "global-log --by-time misses commits");
+    }
+
+    /** A commit made after the graph was lost is in it exactly once. */
+    static void testCommitAfterLostGraph() {
+        GitletRepository repo = newRepository();
+        commit(repo, 2);
+        loseGraph();
+        String id = commit(repo, 1).get(0);
+
+        Set<String> rows = new HashSet<>();
+        for (int row = 0; row < CommitGraph.size(); row += 1) {
+            check(rows.add(CommitGraph.idAt(row)), "%s has two rows", CommitGraph.idAt(row));
+        }
+        checkEquals(4, rows.size(), "commits in the graph");
+        check(CommitGraph.find(id) != CommitGraph.NO_PARENT, "the new commit has no row");
+    }
+
+    /** Make COUNT commits in REPO, each changing one file, and return their ids. */
+    private static List<String> commit(GitletRepository repo, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i += 1) {
+            write(repo, "f.txt", "version " + i + "\n");
+            repo.add("f.txt");
+            ids.add(repo.commit("commit " + i + " " + System.nanoTime()));
+        }
+        return ids;
+    }
+
+    /** Delete the graph file of the repository in use, as a new process
+     *  would find it. */
+    private static void loseGraph() {
+        File file = Utils.join(Repository.GITLET_DIR, "commit_graph");
+        check(file.delete(), "no graph to delete");
+        CommitGraph.forget();
+        CommitIndex.forget();
+    }
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Tests.*;
+
+/** Tests of the CommitIndex: commits are appended to it, not written anew,
+ *  and every commit resolves to its row of the CommitGraph, whether it is
+ *  among the sorted ids or the appended ones.
+ *
+ *  @author Hongfa You
+ */
+class CommitIndexTest {
+    /** Offset of the first entry, and size of an entry, in the index file. */
+    private static final int IDS_OFFSET = 12 + 256 * 4;
+    private static final int ENTRY_SIZE = 24;
+
+    public static void main(String[] args) {
+        Tests.run(CommitIndexTest.class);
+        Tests.exit();
+    }
+
+    /** Each commit appends its id, leaving the sorted ids alone. */
+    static void testCommitAppends() {
+        GitletRepository repo = newRepository();
+        List<String> ids = commit(repo, 3);
+        int sorted = sortedCount();
+        for (String id : commit(repo, 3)) {
+            ids.add(id);
+            checkEquals(sorted, sortedCount(), "sorted ids after a commit");
+        }
+        checkEquals(CommitGraph.size(), entryCount(), "ids in the index");
+        check(entryCount() > sorted, "no id was appended");
+        checkRows();
+        for (String id : ids) {
+            checkEquals(id, CommitIndex.resolve(id.substring(0, 8)), "resolved id");
+        }
+    }
+
+    /** A full tail is sorted in with the other ids. */
+    static void testFullTailSorted() {
+        GitletRepository repo = newRepository();
+        List<String> ids = commit(repo, 300);
+        int sorted = sortedCount();
+        checkEquals(CommitGraph.size(), entryCount(), "ids in the index");
+        check(sorted >= 256 && entryCount() - sorted < 256,
+                "the tail was not sorted: %d of %d ids sorted", sorted, entryCount());
+        checkRows();
+        for (String id : ids) {
+            checkEquals(id, CommitIndex.resolve(id.substring(0, 6)), "resolved id");
+        }
+    }
+
+    /** An index that does not match the graph is written anew. */
+    static void testStaleIndexRebuilt() {
+        GitletRepository repo = newRepository();
+        List<String> ids = commit(repo, 5);
+        File file = indexFile();
+        byte[] contents = Utils.readContents(file);
+        Utils.writeContents(file, (Object) Arrays.copyOf(contents,
+                contents.length - ENTRY_SIZE));
+        CommitIndex.forget();
+        checkEquals(ids.get(4), CommitIndex.resolve(ids.get(4).substring(0, 8)),
+                "resolved id");
+        checkEquals(CommitGraph.size(), sortedCount(), "sorted ids after a rebuild");
+        checkRows();
+    }
+
+    /** Make COUNT commits in REPO, each changing one file, and return their ids. */
+    private static List<String> commit(GitletRepository repo, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i += 1) {
+            write(repo, "f.txt", "version " + i + " " + System.nanoTime() + "\n");
+            repo.add("f.txt");
+            ids.add(repo.commit("commit " + i));
+        }
+        return ids;
+    }
+
+    /** Check that every commit of the graph is indexed with its row. */
+    private static void checkRows() {
+        for (int row = 0; row < CommitGraph.size(); row += 1) {
+            String id = CommitGraph.idAt(row);
+            checkEquals(row, CommitIndex.rowOf(Pack.toBytes(id)), "row of " + id);
+            checkEquals(row, CommitGraph.find(id), "graph row of " + id);
+        }
+    }
+
+    /** Return the number of sorted ids in the index file. */
+    private static int sortedCount() {
+        return ByteBuffer.wrap(Utils.readContents(indexFile())).getInt(8);
+    }
+
+    /** Return the number of ids in the index file. */
+    private static int entryCount() {
+        return (int) ((indexFile().length() - IDS_OFFSET) / ENTRY_SIZE);
+    }
+
+    /** Return the index file of the repository in use. */
+    private static File indexFile() {
+        return Utils.join(Repository.GITLET_DIR, "commit_index");
+    }
+}
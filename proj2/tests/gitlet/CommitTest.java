@@ -0,0 +1,174 @@
+package gitlet;
+
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Tests.*;
+
+/** Tests of Commit.fromBytes on commits written by older versions of gitlet,
+ *  kept here as they were stored: version 1 of the compact encoding, with
+ *  the files inline, version 2, with a tree but no timestamp, and Java
+ *  serialization. Flag 4 means files inline in version 1 and a tree in
+ *  version 2, so only the version tells them apart.
+ *
+ *  @author Hongfa You
+ */
+class CommitTest {
+    /** Date of every commit of the versions these were written by. */
+    private static final String DATE = "Thu Nov 9 17:01:33 2021 -0800";
+
+    /** Version 1 commit "two notes" with files notes1.txt and notes2.txt,
+     *  the second name sharing 5 bytes with the first. */
+    private static final String V1_NOTES =
+            "R0NNVAGRV/ehwgSvoTEnmvICta52qzha0wUr5wb4UXnP0+lijf+RY7KWWCEu7gl0" +
+            "d28gbm90ZXMdVGh1IE5vdiA5IDE3OjAxOjMzIDIwMjEgLTA4MDACAApub3RlczEu" +
+            "dHh0xwWbsZQzzDyrqmI2yD1WZoqEPdIFBTIudHh0e770WzvHCFUBDgJGBxdkMSXD" +
+            "vso=";
+    /** Version 1 merge commit with both parents and files a.txt and b.txt. */
+    private static final String V1_MERGE =
+            "R0NNVAEl2YHryWOHOIPkpQCb2qVK0iJ/yQezgNhR3f8RUTPxbs0C+SsHQQ+n+eqf" +
+            "k4SQd1LwEjGg6V2QonYVF3guGU1lcmdlZCBvdGhlciBpbnRvIG1hc3Rlci4dVGh1" +
+            "IE5vdiA5IDE3OjAxOjMzIDIwMjEgLTA4MDACAAVhLnR4dG/PnfvUee2CaX/ucZuf" +
+            "jGEKEf8qAAViLnR4dFXKYobj5PT7pdBEgzP6mfxaQEpz";
+    /** Version 1 initial commit, with no flags. */
+    private static final String V1_INITIAL =
+            "R0NNVAG6ljAdDcmQ6Tgt2KRV4epf9SZ7qgAOaW5pdGlhbCBjb21taXQdVGh1IE5v" +
+            "diA5IDE3OjAxOjMzIDIwMjEgLTA4MDA=";
+    /** Version 2 commit "second", with a first parent and a tree. */
+    private static final String V2_SECOND =
+            "R0NNVAK78ecJx/w4PfRHRXojKJTCQ0tBXQWWjTi2QjBsulp17hNgABLeeGLZVQZz" +
+            "ZWNvbmQdVGh1IE5vdiA5IDE3OjAxOjMzIDIwMjEgLTA4MDCySpYaS0lmzNxwX338" +
+            "mqe4wa9Twg==";
+    /** Version 2 merge commit with both parents and a tree. */
+    private static final String V2_MERGE =
+            "R0NNVAIc55ehnZq+MnJ9aER1JXYycUox3Ae78ecJx/w4PfRHRXojKJTCQ0tBXX0E" +
+            "QRgwpbo+wDpVVbhNnoP+4sA7GU1lcmdlZCBvdGhlciBpbnRvIG1hc3Rlci4dVGh1" +
+            "IE5vdiA5IDE3OjAxOjMzIDIwMjEgLTA4MDB0U1/OILdLCNe5R8M3g2Gf5XqdTw==";
+    /** Commit "first" as serialized by the first version of gitlet, with
+     *  files a.txt and b.txt. */
+    private static final String SERIALIZED =
+            "rO0ABXNyAA1naXRsZXQuQ29tbWl0j1Aa8WCYNpoCAAZMAApkYXRlU3RyaW5ndAAS" +
+            "TGphdmEvbGFuZy9TdHJpbmc7TAAHZmlsZU1hcHQAE0xqYXZhL3V0aWwvVHJlZU1h" +
+            "cDtMAAtmaXJzdHBhcmVudHEAfgABTAAHbWVzc2FnZXEAfgABTAAMc2Vjb25kcGFy" +
+            "ZW50cQB+AAFMAAZzaGExSWRxAH4AAXhwdAAdVGh1IE5vdiA5IDE3OjAxOjMzIDIw" +
+            "MjEgLTA4MDBzcgARamF2YS51dGlsLlRyZWVNYXAMwfY+LSVq5gMAAUwACmNvbXBh" +
+            "cmF0b3J0ABZMamF2YS91dGlsL0NvbXBhcmF0b3I7eHBwdwQAAAACdAAFYS50eHR0" +
+            "ACgwOTYzMzQ3MmYzMDg3Y2YyYjliOWJmNGEwODNiYWYxNmY2YWYwYmMydAAFYi50" +
+            "eHR0AChhOGJmNmE2M2Y1NmRlNDMxNWQ1NWJkOWZlNTllNjkxZTNlOWQ2Zjc3eHQA" +
+            "KDExNjkxZDJlOTBiMGMwNDVhY2JhMTZhNTIwNjI2YjBkODZkMTAyNDV0AAVmaXJz" +
+            "dHB0ACg1YjAzMzhlYzZhNDE5MjJhMmM3ZDFlYWYyMWYzNjJjYjEwZWNiOThm";
+
+    public static void main(String[] args) {
+        Tests.run(CommitTest.class);
+        Tests.exit();
+    }
+
+    /** A version 1 commit reads its files inline, names shared with the
+     *  previous one included, and has no tree until one is stored. */
+    static void testVersion1Files() {
+        Commit commit = decode(V1_NOTES);
+        checkEquals("9157f7a1c204afa131279af202b5ae76ab385ad3", commit.getSHA1(), "id");
+        checkEquals("2be706f85179cfd3e9628dff9163b29658212eee", commit.getfirstParent(),
+                "first parent");
+        checkEquals(null, commit.getsecondParent(), "second parent");
+        checkEquals("two notes", commit.getMessage(), "message");
+        checkEquals(DATE, commit.getDate(), "date");
+        checkEquals(0L, commit.getTimestamp(), "timestamp");
+        checkEquals(Map.of("notes1.txt", "c7059bb19433cc3cabaa6236c83d56668a843dd2",
+                "notes2.txt", "7bbef45b3bc70855010e02460717643125c3beca"),
+                commit.getFileMap(), "files");
+        checkEquals("7bbef45b3bc70855010e02460717643125c3beca",
+                commit.getCommittedFileSHA1("notes2.txt"), "blob of notes2.txt");
+    }
+
+    /** A version 1 merge reads both parents and its files. */
+    static void testVersion1Merge() {
+        Commit commit = decode(V1_MERGE);
+        checkEquals("25d981ebc963873883e4a5009bdaa54ad2227fc9", commit.getSHA1(), "id");
+        checkEquals("b380d851ddff115133f16ecd02f92b07410fa7f9", commit.getfirstParent(),
+                "first parent");
+        checkEquals("ea9f9384907752f01231a0e95d90a2761517782e", commit.getsecondParent(),
+                "second parent");
+        checkEquals("Merged other into master.", commit.getMessage(), "message");
+        checkEquals(Map.of("a.txt", "6fcf9dfbd479ed82697fee719b9f8c610a11ff2a",
+                "b.txt", "55ca6286e3e4f4fba5d0448333fa99fc5a404a73"),
+                commit.getFileMap(), "files");
+    }
+
+    /** A version 1 initial commit has no parents and no files. */
+    static void testVersion1Initial() {
+        Commit commit = decode(V1_INITIAL);
+        checkEquals("initial commit", commit.getMessage(), "message");
+        checkEquals(null, commit.getfirstParent(), "first parent");
+        check(commit.isFilemapNull(), "the initial commit has files");
+        checkEquals(null, commit.getTreeId(), "tree");
+    }
+
+    /** In version 2 flag 4 is a tree, read as its id and not as files. */
+    static void testVersion2Tree() {
+        Commit commit = decode(V2_SECOND);
+        checkEquals("bbf1e709c7fc383df447457a232894c2434b415d", commit.getSHA1(), "id");
+        checkEquals("968d38b642306cba5a75ee13600012de7862d955", commit.getfirstParent(),
+                "first parent");
+        checkEquals("second", commit.getMessage(), "message");
+        checkEquals(DATE, commit.getDate(), "date");
+        checkEquals(0L, commit.getTimestamp(), "timestamp");
+        checkEquals("b24a961a4b4966ccdc705f7dfc9aa7b8c1af53c2", commit.getTreeId(), "tree");
+
+        Commit merge = decode(V2_MERGE);
+        checkEquals("bbf1e709c7fc383df447457a232894c2434b415d", merge.getfirstParent(),
+                "first parent of the merge");
+        checkEquals("7d04411830a5ba3ec03a5555b84d9e83fee2c03b", merge.getsecondParent(),
+                "second parent of the merge");
+        checkEquals("74535fce20b74b08d7b947c33783619fe57a9d4f", merge.getTreeId(),
+                "tree of the merge");
+    }
+
+    /** A commit of the first version is read through Java serialization. */
+    static void testSerialized() {
+        Commit commit = decode(SERIALIZED);
+        checkEquals("5b0338ec6a41922a2c7d1eaf21f362cb10ecb98f", commit.getSHA1(), "id");
+        checkEquals("11691d2e90b0c045acba16a520626b0d86d10245", commit.getfirstParent(),
+                "first parent");
+        checkEquals("first", commit.getMessage(), "message");
+        checkEquals(DATE, commit.getDate(), "date");
+        checkEquals(Map.of("a.txt", "09633472f3087cf2b9b9bf4a083baf16f6af0bc2",
+                "b.txt", "a8bf6a63f56de4315d55bd9fe59e691e3e9d6f77"),
+                commit.getFileMap(), "files");
+    }
+
+    /** Older commits are encoded anew with a tree holding the same files,
+     *  and read back the same. */
+    static void testReencoded() {
+        newRepository();
+        for (String fixture : new String[] {V1_NOTES, V1_MERGE, SERIALIZED}) {
+            Commit old = decode(fixture);
+            TreeMap<String, String> files = new TreeMap<>(old.getFileMap());
+            check(!Commit.isEncoded(Base64.getDecoder().decode(fixture)),
+                    "%s is in the current encoding", old.getSHA1());
+            byte[] bytes = old.toBytes();
+            check(Commit.isEncoded(bytes), "%s is not in the current encoding", old.getSHA1());
+            Commit commit = Commit.fromBytes(bytes);
+            checkEquals(old.getSHA1(), commit.getSHA1(), "id");
+            checkEquals(old.getfirstParent(), commit.getfirstParent(), "first parent");
+            checkEquals(old.getsecondParent(), commit.getsecondParent(), "second parent");
+            checkEquals(old.getMessage(), commit.getMessage(), "message");
+            checkEquals(old.getDate(), commit.getDate(), "date");
+            checkEquals(old.getTreeId(), commit.getTreeId(), "tree");
+            checkEquals(files, commit.getFileMap(), "files");
+        }
+    }
+
+    /** A commit of an unknown version is refused. */
+    static void testUnknownVersion() {
+        byte[] bytes = Base64.getDecoder().decode(V2_SECOND);
+        bytes[4] = (byte) (Commit.FORMAT_VERSION + 1);
+        checkThrows(() -> Commit.fromBytes(bytes), "decoding an unknown version");
+    }
+
+    /** Return the commit stored as FIXTURE, in Base64. */
+    private static Commit decode(String fixture) {
+        return Commit.fromBytes(Base64.getDecoder().decode(fixture));
+    }
+}
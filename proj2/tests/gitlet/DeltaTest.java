@@ -0,0 +1,248 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static gitlet.Tests.*;
+
+/** Tests of Delta and of reading packed deltas: a delta is parsed back into
+ *  the instructions that rebuild its target, and a chain of deltas as deep
+ *  as repack makes them is streamed through, whole or from any offset.
+ *
+ *  @author Hongfa You
+ */
+class DeltaTest {
+    /** Longest chain of deltas repack makes; ObjectStore.MAX_DELTA_DEPTH. */
+    private static final int MAX_DEPTH = 10;
+    /** Lines of the file the versions are made of. */
+    private static final int LINES = 40;
+
+    public static void main(String[] args) {
+        Tests.run(DeltaTest.class);
+        Tests.exit();
+    }
+
+    /** A delta parses into instructions that rebuild its target. */
+    static void testCreateParse() {
+        byte[] base = version(0);
+        byte[] target = version(3);
+        String baseId = Utils.sha1((Object) base);
+        byte[] data = Delta.create(baseId, base, target, target.length);
+        check(data != null, "no delta of a close version");
+        check(data.length < target.length / 2, "delta of %d bytes", data.length);
+
+        Delta delta = new Delta(ByteBuffer.wrap(data));
+        checkEquals(baseId, delta.baseId(), "base id");
+        checkEquals((long) target.length, delta.size(), "target size");
+        check(Arrays.equals(target, apply(delta, data, base)), "target rebuilt");
+        for (long pos = 0; pos < target.length; pos += 1) {
+            int i = delta.find(pos);
+            check(delta.start(i) <= pos && pos < delta.start(i) + delta.length(i),
+                    "offset %d found in instruction %d", pos, i);
+        }
+    }
+
+    /** A target with nothing in common with the base is not worth a delta,
+     *  and the same contents are one copy. */
+    static void testCreateLimit() {
+        byte[] base = version(0);
+        byte[] other = new byte[base.length];
+        for (int i = 0; i < other.length; i += 1) {
+            other[i] = (byte) (i * 7 + i / 13);
+        }
+        String baseId = Utils.sha1((Object) base);
+        checkEquals(null, Delta.create(baseId, base, other, other.length / 2), "unrelated delta");
+
+        byte[] data = Delta.create(baseId, base, base, base.length);
+        Delta same = new Delta(ByteBuffer.wrap(data));
+        checkEquals(0, same.find(base.length - 1), "instruction of the last byte");
+        check(same.isCopy(0), "the same contents are not copied");
+        checkEquals(0L, same.source(0), "copied from");
+        checkEquals(base.length, same.length(0), "copied length");
+    }
+
+    /** A delta whose instructions do not add up to its size is refused. */
+    static void testParseCorrupt() {
+        byte[] base = version(0);
+        byte[] data = Delta.create(Utils.sha1((Object) base), base, version(1), base.length);
+        ByteBuffer.wrap(data).putLong(20, base.length * 2L);
+        checkThrows(() -> new Delta(ByteBuffer.wrap(data)), "parsing a delta of the wrong size");
+    }
+
+    /** Every version at the end of a chain of MAX_DEPTH deltas reads back. */
+    static void testChainRead() {
+        Pack pack = chain(newRepository());
+        try {
+            for (int k = 0; k <= MAX_DEPTH; k += 1) {
+                int pos = pack.find(Utils.sha1((Object) version(k)));
+                checkEquals(k == 0 ? Pack.WHOLE : Pack.DELTA, pack.kindAt(pos), "kind of " + k);
+                checkEquals((long) version(k).length, pack.sizeAt(pos), "size of " + k);
+                check(Arrays.equals(version(k), readAll(pack.open(pos), 4096)),
+                        "version %d read", k);
+            }
+        } finally {
+            pack.close();
+        }
+    }
+
+    /** The last version of a chain reads the same in small pieces, a byte
+     *  at a time, and from any offset. */
+    static void testChainReadAtOffset() {
+        Pack pack = chain(newRepository());
+        try {
+            byte[] expected = version(MAX_DEPTH);
+            int pos = pack.find(Utils.sha1((Object) expected));
+            check(Arrays.equals(expected, readAll(pack.open(pos), 7)), "read 7 bytes at a time");
+            check(Arrays.equals(expected, readBytes(pack.open(pos))), "read a byte at a time");
+            for (int off = 0; off < expected.length; off += 37) {
+                for (int len : new int[] {0, 1, 16, 100, expected.length - off}) {
+                    int n = Math.min(len, expected.length - off);
+                    byte[] piece = readAll(pack.open(pos, off, n), 64);
+                    check(Arrays.equals(Arrays.copyOfRange(expected, off, off + n), piece),
+                            "%d bytes at offset %d", n, off);
+                }
+            }
+        } finally {
+            pack.close();
+        }
+    }
+
+    /** Repack makes chains of at most MAX_DEPTH deltas, and every version
+     *  packed in them reads back. */
+    static void testRepackDepthLimit() {
+        GitletRepository repo = newRepository();
+        int versions = MAX_DEPTH + 5;
+        for (int k = 0; k < versions; k += 1) {
+            write(repo, "f.txt", new String(version(k), StandardCharsets.UTF_8));
+            repo.add("f.txt");
+            repo.commit("version " + k);
+        }
+        repo.repack();
+
+        File[] indexes = Repository.PACK_DIR.listFiles(
+            (dir, name) -> name.endsWith(Pack.INDEX_SUFFIX));
+        checkEquals(1, indexes.length, "packs");
+        Map<String, Integer> depths = depths(indexes[0]);
+        int deepest = 0;
+        for (int k = 0; k < versions; k += 1) {
+            String id = Utils.sha1((Object) version(k));
+            check(Arrays.equals(version(k), ObjectStore.readBlob(id)), "version %d read", k);
+            deepest = Math.max(deepest, depths.get(id));
+        }
+        checkEquals(MAX_DEPTH, deepest, "longest chain of deltas");
+    }
+
+    /** Return version K of a file of LINES lines, in which the first K lines
+     *  are replaced by shorter ones found nowhere else. Each version is then
+     *  smaller than the one before, and a delta against a version further
+     *  away inserts more lines, so repack chains each version to the last. */
+    private static byte[] version(int k) {
+        StringBuilder text = new StringBuilder();
+        for (int j = 0; j < LINES; j += 1) {
+            String line = j < k ? Utils.sha1("changed " + j).substring(0, 24)
+                    : Utils.sha1("first " + j);
+            text.append("line ").append(j).append(' ').append(line).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Write to a pack in REPO version 0 whole and each later version up to
+     *  MAX_DEPTH as a delta against the one before, and return the pack. */
+    private static Pack chain(GitletRepository repo) {
+        File dir = repo.root().resolve("chain").toFile();
+        dir.mkdir();
+        Pack.Writer writer = new Pack.Writer(dir, "chain");
+        byte[] base = version(0);
+        String baseId = Utils.sha1((Object) base);
+        writer.add(baseId, Pack.BLOB, new ByteArrayInputStream(base));
+        for (int k = 1; k <= MAX_DEPTH; k += 1) {
+            byte[] target = version(k);
+            byte[] delta = Delta.create(baseId, base, target, target.length);
+            check(delta != null, "no delta of version %d", k);
+            baseId = Utils.sha1((Object) target);
+            writer.addDelta(baseId, Pack.BLOB, delta);
+            base = target;
+        }
+        writer.finish();
+        return new Pack(Utils.join(dir, "chain" + Pack.INDEX_SUFFIX));
+    }
+
+    /** Return the target of DELTA, parsed from DATA, applied to BASE. */
+    private static byte[] apply(Delta delta, byte[] data, byte[] base) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (out.size() < delta.size()) {
+            int i = delta.find(out.size());
+            byte[] from = delta.isCopy(i) ? base : data;
+            out.write(from, (int) delta.source(i), delta.length(i));
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the length of the chain of deltas of each object of the pack
+     *  whose index is IDX, by id, reading the pack files as laid out in Pack. */
+    private static Map<String, Integer> depths(File idx) {
+        ByteBuffer index = ByteBuffer.wrap(Utils.readContents(idx));
+        String name = idx.getName();
+        byte[] data = Utils.readContents(new File(idx.getParentFile(),
+                name.substring(0, name.length() - Pack.INDEX_SUFFIX.length()) + Pack.PACK_SUFFIX));
+        Map<String, String> bases = new HashMap<>();
+        int count = index.getInt(8);
+        for (int pos = 0; pos < count; pos += 1) {
+            int record = 12 + 256 * 4 + pos * 40;
+            byte[] id = new byte[20];
+            index.get(record, id);
+            if (index.get(record + 21) == Pack.DELTA) {
+                int offset = (int) index.getLong(record + 24);
+                int length = (int) index.getLong(record + 32);
+                Delta delta = new Delta(ByteBuffer.wrap(data, offset, length).slice());
+                bases.put(Utils.toHex(id), delta.baseId());
+            } else {
+                bases.put(Utils.toHex(id), null);
+            }
+        }
+        Map<String, Integer> depths = new HashMap<>();
+        for (String id : bases.keySet()) {
+            int depth = 0;
+            for (String at = bases.get(id); at != null; at = bases.get(at)) {
+                depth += 1;
+            }
+            depths.put(id, depth);
+        }
+        return depths;
+    }
+
+    /** Return what IN yields, read SIZE bytes at a time. */
+    private static byte[] readAll(InputStream in, int size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[size];
+        try (in) {
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                out.write(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        return out.toByteArray();
+    }
+
+    /** Return what IN yields, read a byte at a time. */
+    private static byte[] readBytes(InputStream in) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (in) {
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                out.write(b);
+            }
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.util.List;
+
+import static gitlet.Tests.*;
+
+/** Tests of GitletRepository: operations on several repositories in one
+ *  process see only the repository they are on, even when their commit
+ *  ids collide, and failures are reported as exceptions.
+ *
+ *  @author Hongfa You
+ */
+class GitletRepositoryTest {
+
+    public static void main(String[] args) {
+        Tests.run(GitletRepositoryTest.class);
+        Tests.exit();
+    }
+
+    /** Commits with the same message in the same second may get the same
+     *  id in two repositories; each repository still reads its own. */
+    static void testCollidingCommits() {
+        GitletRepository one = newRepository();
+        GitletRepository two = newRepository();
+        write(one, "a.txt", "one\n");
+        write(two, "b.txt", "two\n");
+        one.add("a.txt");
+        two.add("b.txt");
+        one.commit("same");
+        two.commit("same");
+
+        checkEquals(List.of(), one.status().untracked(), "untracked files of one");
+        checkEquals(List.of(), one.status().modified(), "modified files of one");
+        one.root().resolve("a.txt").toFile().delete();
+        one.checkoutFile("a.txt");
+        checkEquals("one\n", read(one, "a.txt"), "a.txt of one");
+        checkThrows(() -> one.checkoutFile("b.txt"), "checking out b.txt in one");
+        two.root().resolve("b.txt").toFile().delete();
+        two.checkoutFile("b.txt");
+        checkEquals("two\n", read(two, "b.txt"), "b.txt of two");
+        checkThrows(() -> two.checkoutFile("a.txt"), "checking out a.txt in two");
+    }
+
+    /** Staging in one repository leaves the staging area of another alone. */
+    static void testStagingAreasApart() {
+        GitletRepository one = newRepository();
+        GitletRepository two = newRepository();
+        write(one, "a.txt", "one\n");
+        write(two, "b.txt", "two\n");
+        one.add("a.txt");
+        two.add("b.txt");
+        checkEquals(List.of("a.txt"), one.status().staged(), "staged in one");
+        checkEquals(List.of("b.txt"), two.status().staged(), "staged in two");
+
+        one.commit("commit in one");
+        checkEquals(List.of(), one.status().staged(), "staged in one after commit");
+        checkEquals(List.of("b.txt"), two.status().staged(), "staged in two after commit");
+        checkEquals(2, one.log().size(), "commits of one");
+        checkEquals(1, two.log().size(), "commits of two");
+    }
+
+    /** Branches and the current branch belong to one repository. */
+    static void testBranchesApart() {
+        GitletRepository one = newRepository();
+        GitletRepository two = newRepository();
+        one.branch("topic");
+        checkEquals(List.of("master", "topic"), one.status().branches(), "branches of one");
+        checkEquals(List.of("master"), two.status().branches(), "branches of two");
+        one.checkout("topic");
+        checkEquals("topic", one.status().currentBranch(), "current branch of one");
+        checkEquals("master", two.status().currentBranch(), "current branch of two");
+    }
+
+    /** A failing operation throws with the message the command prints. */
+    static void testFailureThrows() {
+        GitletRepository repo = newRepository();
+        GitletException excp = checkThrows(() -> repo.commit("nothing"), "empty commit");
+        checkEquals("No changes added to the commit.", excp.getMessage(), "message");
+        checkEquals(1, repo.log().size(), "commits after a failed commit");
+    }
+
+    /** Switching back to a repository puts back what was loaded from it,
+     *  its open packs included, instead of reading it again. */
+    static void testSwitchingKeepsLoaded() {
+        GitletRepository one = newRepository();
+        GitletRepository two = newRepository();
+        write(one, "a.txt", "one\n");
+        one.add("a.txt");
+        one.commit("packed in one");
+        one.repack();
+        one.root().resolve("a.txt").toFile().delete();
+        one.checkoutFile("a.txt");
+        LruCache<String, Commit> commits = Commit.cache;
+        List<Pack> packs = ObjectStore.setAside();
+        check(packs != null && packs.size() == 1, "packs of one: %s", packs);
+
+        two.log();
+        check(Commit.cache != commits, "two uses the commits of one");
+        one.root().resolve("a.txt").toFile().delete();
+        one.checkoutFile("a.txt");
+        checkEquals("one\n", read(one, "a.txt"), "a.txt of one");
+        check(Commit.cache == commits, "the commits of one were read again");
+        check(ObjectStore.setAside() == packs, "the packs of one were opened again");
+        checkEquals(List.of(), one.status().modified(), "modified files of one");
+    }
+
+    /** Opening a repository again returns the same object. */
+    static void testOpenSame() {
+        GitletRepository repo = newRepository();
+        check(GitletRepository.open(repo.root()) == repo, "open returned another object");
+        checkThrows(() -> GitletRepository.open(repo.root().resolve("missing")),
+                "opening a directory without a repository");
+    }
+}
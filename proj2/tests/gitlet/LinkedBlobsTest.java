@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static gitlet.Tests.*;
+
+/** Tests of the integrity of the object store under hardlink checkout: a
+ *  blob changed through a working file linked to it is never handed out
+ *  with the changed contents. It is read from a pack if one holds it, and
+ *  reported as lost otherwise. Writing through a link is simulated by
+ *  writing into the loose blob itself, as the link shares its storage.
+ *
+ *  @author Hongfa You
+ */
+class LinkedBlobsTest {
+
+    public static void main(String[] args) {
+        Tests.run(LinkedBlobsTest.class);
+        Tests.exit();
+    }
+
+    /** Editing a checked-out file never changes what the store reads back. */
+    static void testWorkingEditLeavesStore() {
+        GitletRepository repo = newRepository();
+        repo.config(Config.CHECKOUT_MODE, "hardlink");
+        String one = commit(repo, "a.txt", "version one\n");
+        repo.branch("topic");
+        repo.checkout("topic");
+        commit(repo, "a.txt", "version two\n");
+        repo.checkout("master");
+        checkEquals("version one\n", read(repo, "a.txt"), "a.txt checked out");
+
+        File working = repo.root().resolve("a.txt").toFile();
+        working.setWritable(true);
+        Utils.writeContents(working, "edited in place, longer\n");
+        try {
+            checkEquals("version one\n", new String(ObjectStore.readBlob(one)), "blob");
+        } catch (GitletException excp) {
+            check(excp.getMessage().contains("contents are lost"), "%s", excp.getMessage());
+        }
+    }
+
+    /** A changed linked blob that is only loose is reported as lost. */
+    static void testChangedBlobLost() {
+        GitletRepository repo = newRepository();
+        String id = commit(repo, "a.txt", "linked\n");
+        File loose = Utils.join(Repository.COMMITED_DIR, id);
+        LinkedBlobs.add(id, loose);
+        Utils.writeContents(loose, "changed through the link\n");
+
+        LinkedBlobs.forget();
+        GitletException excp = checkThrows(() -> ObjectStore.readBlob(id), "reading the blob");
+        check(excp.getMessage().contains("contents are lost"), "%s", excp.getMessage());
+        check(!loose.exists(), "the changed blob was kept");
+    }
+
+    /** A changed linked blob that is also packed is read from the pack. */
+    static void testChangedBlobFromPack() {
+        GitletRepository repo = newRepository();
+        String id = commit(repo, "a.txt", "linked\n");
+        repo.repack();
+        File loose = Utils.join(Repository.COMMITED_DIR, id);
+        Utils.writeContents(loose, "linked\n");
+        LinkedBlobs.add(id, loose);
+        Utils.writeContents(loose, "changed through the link\n");
+
+        LinkedBlobs.forget();
+        checkEquals("linked\n", new String(ObjectStore.readBlob(id)), "blob");
+        check(!loose.exists(), "the changed blob was kept");
+    }
+
+    /** A linked blob touched but not changed is still read. */
+    static void testTouchedBlobIntact() {
+        GitletRepository repo = newRepository();
+        String id = commit(repo, "a.txt", "linked\n");
+        File loose = Utils.join(Repository.COMMITED_DIR, id);
+        LinkedBlobs.add(id, loose);
+        loose.setLastModified(loose.lastModified() - 60_000);
+
+        LinkedBlobs.forget();
+        checkEquals("linked\n", new String(ObjectStore.readBlob(id)), "blob");
+        check(loose.exists(), "the intact blob was dropped");
+    }
+
+    /** A record cut short by a crash does not hide the records after it. */
+    static void testTornRecordDropped() {
+        GitletRepository repo = newRepository();
+        String one = commit(repo, "a.txt", "first\n");
+        String two = commit(repo, "b.txt", "second\n");
+        LinkedBlobs.add(one, Utils.join(Repository.COMMITED_DIR, one));
+        append(Utils.join(Repository.GITLET_DIR, "linked"), new byte[] {1, 2, 3});
+
+        LinkedBlobs.forget();
+        File loose = Utils.join(Repository.COMMITED_DIR, two);
+        LinkedBlobs.add(two, loose);
+        Utils.writeContents(loose, "changed through the link\n");
+        LinkedBlobs.forget();
+        checkThrows(() -> ObjectStore.readBlob(two), "reading the changed blob");
+        checkEquals("first\n", new String(ObjectStore.readBlob(one)), "intact blob");
+    }
+
+    /** Commit CONTENTS as the file NAME of REPO and return the id of its blob. */
+    private static String commit(GitletRepository repo, String name, String contents) {
+        write(repo, name, contents);
+        repo.add(name);
+        repo.commit("commit " + name + " " + contents.trim());
+        return Utils.sha1((Object) Utils.readContents(repo.root().resolve(name).toFile()));
+    }
+
+    /** Append BYTES to FILE. */
+    private static void append(File file, byte[] bytes) {
+        try {
+            Files.write(file.toPath(), bytes, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Tests.*;
+
+/** Tests of MergeBase over both parents: a criss-cross history has two best
+ *  common ancestors, which a walk of first parents alone gets wrong, and the
+ *  walk stops once only stale commits are left instead of going through the
+ *  rest of history.
+ *
+ *  @author Hongfa You
+ */
+class MergeBaseTest {
+    /** Commits made before the histories part. */
+    private static final int HISTORY = 20;
+    /** Number of sibling branches made to renumber rows. */
+    private static final int BRANCHES = 6;
+
+    public static void main(String[] args) {
+        Tests.run(MergeBaseTest.class);
+        Tests.exit();
+    }
+
+    /** Both sides of a criss-cross merge are best common ancestors. */
+    static void testCrissCross() {
+        GitletRepository repo = newRepository();
+        String[] ids = crissCross(repo);
+        String mine = ids[0];
+        String theirs = ids[1];
+
+        MergeBase base = repo.mergeBase("master", "other");
+        checkEquals(Set.of(mine, theirs), Set.copyOf(base.all()), "merge bases");
+        checkEquals(2, base.all().size(), "number of merge bases");
+        checkEquals(base.all().get(0), base.best(), "best merge base");
+        checkEquals(theirs, base.best(), "best merge base, the newest");
+        /* The two merges, the two sides, each taken off the queue once for
+         * each side it was reached from; the history below is stale. */
+        checkEquals(6, base.visited(), "commits visited");
+    }
+
+    /** A commit and its ancestor have the ancestor as merge base. */
+    static void testAncestor() {
+        GitletRepository repo = newRepository();
+        String old = commit(repo, "a.txt", "old");
+        String head = commit(repo, "a.txt", "new");
+        MergeBase base = repo.mergeBase(old, head);
+        checkEquals(List.of(old), base.all(), "merge bases");
+        /* The head, then the ancestor once from each side. */
+        checkEquals(3, base.visited(), "commits visited");
+        checkEquals(List.of(head), repo.mergeBase(head, head).all(), "merge base of itself");
+    }
+
+    /** A graph rebuilt while the commits are looked up, numbering its rows
+     *  anew, gives the right merge base. Sibling commits are numbered in
+     *  the order they were made when appended and in id order when the
+     *  graph is rebuilt, so some of them change rows. */
+    static void testGraphRebuiltDuringLookup() {
+        GitletRepository repo = newRepository();
+        commit(repo, "root.txt", "root");
+        String[] leaves = new String[BRANCHES];
+        for (int k = 0; k < BRANCHES; k += 1) {
+            repo.branch("b" + k);
+            repo.checkout("b" + k);
+            leaves[k] = commit(repo, "leaf" + k + ".txt", "leaf " + k);
+            repo.checkout("master");
+        }
+        File graph = Utils.join(Repository.GITLET_DIR, "commit_graph");
+        byte[] before = Utils.readContents(graph);
+        String[] children = new String[BRANCHES];
+        for (int k = 0; k < BRANCHES; k += 1) {
+            repo.checkout("b" + k);
+            children[k] = commit(repo, "leaf" + k + ".txt", "child " + k);
+        }
+
+        for (int k = 0; k < BRANCHES; k += 1) {
+            /* The graph as it was before the children, which are then found
+             * only by rebuilding it. */
+            Utils.writeContents(graph, (Object) before);
+            CommitGraph.forget();
+            CommitIndex.forget();
+            MergeBase base = repo.mergeBase(leaves[k], children[k]);
+            checkEquals(List.of(leaves[k]), base.all(), "merge base of branch b" + k);
+        }
+    }
+
+    /** Make a criss-cross history in REPO: "master" and "other" each commit,
+     *  then each merges the other's commit, and return the ids of the two
+     *  commits merged, master's first. */
+    private static String[] crissCross(GitletRepository repo) {
+        for (int i = 0; i < HISTORY; i += 1) {
+            commit(repo, "history.txt", "history " + i);
+        }
+        repo.branch("other");
+        String mine = commit(repo, "mine.txt", "mine");
+        repo.branch("mine");
+        repo.checkout("other");
+        String theirs = commit(repo, "theirs.txt", "theirs");
+        repo.branch("theirs");
+        repo.merge("mine");
+        repo.checkout("master");
+        repo.merge("theirs");
+        return new String[] {mine, theirs};
+    }
+
+    /** Commit CONTENTS as the file NAME of REPO and return the commit id. */
+    private static String commit(GitletRepository repo, String name, String contents) {
+        write(repo, name, contents + "\n");
+        repo.add(name);
+        return repo.commit(contents + " " + System.nanoTime());
+    }
+}
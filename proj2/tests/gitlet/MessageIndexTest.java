@@ -0,0 +1,82 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static gitlet.Tests.*;
+
+/** Tests of the MessageIndex after a crash left part of a record at the end
+ *  of one of its files: find still finds exactly the commits made, before
+ *  and after the crash.
+ *
+ *  @author Hongfa You
+ */
+class MessageIndexTest {
+
+    public static void main(String[] args) {
+        Tests.run(MessageIndexTest.class);
+        Tests.exit();
+    }
+
+    /** A torn id in a message file does not shift the ids appended after it. */
+    static void testTornIdCutOff() {
+        GitletRepository repo = newRepository();
+        String first = commit(repo, "same msg");
+        append(messageFile("same msg"), "abcde".getBytes(StandardCharsets.UTF_8));
+        String second = commit(repo, "same msg");
+        checkEquals(sortedPair(first, second), repo.find("same msg"), "found by message");
+        checkEquals(sortedPair(first, second), repo.findSubstring("me ms"), "found by substring");
+    }
+
+    /** A message file whose message was cut short is written anew, and the
+     *  message still gets into the trigram index. */
+    static void testTornMessageRewritten() {
+        GitletRepository repo = newRepository();
+        append(messageFile("torn message"), new byte[] {12, 't', 'o'});
+        String id = commit(repo, "torn message");
+        checkEquals(List.of(id), repo.find("torn message"), "found by message");
+        checkEquals(List.of(id), repo.findSubstring("rn mes"), "found by substring");
+    }
+
+    /** A torn key in a posting list does not hide the keys appended after it. */
+    static void testTornPostingCutOff() {
+        GitletRepository repo = newRepository();
+        String first = commit(repo, "fix parser");
+        File postings = Utils.join(Repository.TRIGRAM_DIR,
+                Utils.toHex("par".getBytes(StandardCharsets.UTF_8)));
+        append(postings, new byte[] {1, 2, 3, 4, 5, 6, 7});
+        String second = commit(repo, "parse faster");
+        checkEquals(sortedPair(first, second), repo.findSubstring("pars"), "found by substring");
+    }
+
+    /** Commit a change with message MESSAGE in REPO and return its id. */
+    private static String commit(GitletRepository repo, String message) {
+        write(repo, "f.txt", message + " " + System.nanoTime() + "\n");
+        repo.add("f.txt");
+        return repo.commit(message);
+    }
+
+    /** Return the ids ONE and TWO in order. */
+    private static List<String> sortedPair(String one, String two) {
+        return one.compareTo(two) < 0 ? List.of(one, two) : List.of(two, one);
+    }
+
+    /** Return the message file of MESSAGE in the repository in use. */
+    private static File messageFile(String message) {
+        return Utils.join(Repository.MESSAGE_DIR, Utils.sha1(message));
+    }
+
+    /** Append BYTES to FILE, creating it if needed. */
+    private static void append(File file, byte[] bytes) {
+        try {
+            Files.write(file.toPath(), bytes, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Tests.*;
+
+/** Tests of the deduplication of blobs by ObjectStore, whether the copy
+ *  already stored is loose or packed.
+ *
+ *  @author Hongfa You
+ */
+class ObjectStoreTest {
+
+    public static void main(String[] args) {
+        Tests.run(ObjectStoreTest.class);
+        Tests.exit();
+    }
+
+    /** Two files with the same contents are stored as one blob. */
+    static void testSameContentsStoredOnce() {
+        GitletRepository repo = newRepository();
+        write(repo, "a.txt", "same\n");
+        write(repo, "dir/b.txt", "same\n");
+        repo.add("a.txt", "dir/b.txt");
+        repo.commit("two copies");
+        checkEquals(1, looseBlobs().size(), "loose blobs");
+    }
+
+    /** A blob already packed is not stored loose again when committed. */
+    static void testPackedBlobNotStoredAgain() {
+        GitletRepository repo = newRepository();
+        write(repo, "a.txt", "packed\n");
+        repo.add("a.txt");
+        repo.commit("first");
+        repo.repack();
+        checkEquals(0, looseBlobs().size(), "loose blobs after repack");
+
+        write(repo, "b.txt", "packed\n");
+        repo.add("b.txt");
+        repo.commit("second");
+        checkEquals(0, looseBlobs().size(), "loose blobs after committing a packed blob");
+        String id = Utils.sha1((Object) Utils.readContents(repo.root().resolve("b.txt").toFile()));
+        check(ObjectStore.hasBlob(id), "blob %s is not stored", id);
+
+        repo.root().resolve("b.txt").toFile().delete();
+        repo.checkoutFile("b.txt");
+        checkEquals("packed\n", read(repo, "b.txt"), "b.txt checked out");
+    }
+
+    /** Repacking again keeps one copy of each object, in one pack. */
+    static void testRepackKeepsOneCopy() {
+        GitletRepository repo = newRepository();
+        write(repo, "a.txt", "one\n");
+        repo.add("a.txt");
+        repo.commit("first");
+        repo.repack();
+        write(repo, "b.txt", "one\n");
+        write(repo, "c.txt", "two\n");
+        repo.add("b.txt", "c.txt");
+        repo.commit("second");
+        repo.repack();
+
+        File[] indexes = Repository.PACK_DIR.listFiles(
+            (dir, name) -> name.endsWith(Pack.INDEX_SUFFIX));
+        checkEquals(1, indexes.length, "packs");
+        Pack pack = new Pack(indexes[0]);
+        try {
+            Set<String> ids = new HashSet<>();
+            int blobs = 0;
+            for (int pos = 0; pos < pack.size(); pos += 1) {
+                check(ids.add(pack.idAt(pos)), "%s is packed twice", pack.idAt(pos));
+                blobs += pack.typeAt(pos) == Pack.BLOB ? 1 : 0;
+            }
+            checkEquals(2, blobs, "packed blobs");
+        } finally {
+            pack.close();
+        }
+    }
+
+    /** Return the loose blobs of the repository in use. */
+    private static List<String> looseBlobs() {
+        List<String> blobs = Utils.plainFilenamesIn(Repository.COMMITED_DIR);
+        return blobs == null ? List.of() : blobs;
+    }
+}
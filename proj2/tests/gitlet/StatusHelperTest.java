@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static gitlet.Tests.*;
+
+/** Tests of the single pass of StatusHelper.scan over the head commit, the
+ *  staging area and the working directory, which relies on all three being
+ *  in the same order. Names such as "a-b", "a.txt" and "a/b" sort around
+ *  the directory "a" differently depending on whether it is taken as "a"
+ *  or as "a/", so they are mixed at every level here.
+ *
+ *  @author Hongfa You
+ */
+class StatusHelperTest {
+
+    public static void main(String[] args) {
+        Tests.run(StatusHelperTest.class);
+        Tests.exit();
+    }
+
+    /** Modified, deleted and untracked files are found and listed in order. */
+    static void testNestedOrder() {
+        GitletRepository repo = messyRepository();
+        Status status = repo.status();
+        checkEquals(List.of("a/b(modified)", "a/c.txt(modified)", "b/x(deleted)",
+                "a-b(deleted)"), status.modified(), "modified files");
+        checkEquals(List.of("a-c", "a/d/f", "a/z", "a0", "b/a.txt"), status.untracked(),
+                "untracked files");
+        checkEquals(List.of("a.txt"), status.removed(), "removed files");
+        checkEquals(sorted(List.of("a/c.txt", "b/x")), sorted(status.staged()), "staged files");
+    }
+
+    /** The status is the one worked out a file at a time, the way status
+     *  did before the single pass, in the same order. */
+    static void testSameAsLookups() {
+        GitletRepository repo = messyRepository();
+        String status = repo.status().toString();
+        checkEquals(lookedUp(repo), status, "status");
+    }
+
+    /** Files that are unchanged leave nothing to report, however they sort. */
+    static void testClean() {
+        GitletRepository repo = newRepository();
+        for (String path : List.of("a.txt", "a/b", "a-b", "a/b.c/d", "a/b-c", "ab")) {
+            write(repo, path, path + "\n");
+            repo.add(path);
+        }
+        repo.commit("nested");
+        Status status = repo.status();
+        checkEquals(List.of(), status.modified(), "modified files");
+        checkEquals(List.of(), status.untracked(), "untracked files");
+        write(repo, "a/b.c/e", "new\n");
+        checkEquals(List.of("a/b.c/e"), repo.status().untracked(), "untracked files");
+    }
+
+    /** Return a repository with files committed, changed, staged, staged for
+     *  removal and untracked, at several depths and with names sorting
+     *  around their directories. */
+    private static GitletRepository messyRepository() {
+        GitletRepository repo = newRepository();
+        for (String path : List.of("a.txt", "a/b", "a-b", "a/d/e", "ab")) {
+            write(repo, path, path + "\n");
+            repo.add(path);
+        }
+        repo.commit("nested");
+        write(repo, "a/b", "changed\n");
+        repo.root().resolve("a-b").toFile().delete();
+        write(repo, "a/c.txt", "staged\n");
+        write(repo, "b/x", "staged then deleted\n");
+        repo.add("a/c.txt", "b/x");
+        write(repo, "a/c.txt", "changed after staging\n");
+        repo.root().resolve("b/x").toFile().delete();
+        repo.rm("a.txt");
+        for (String path : List.of("a0", "a/z", "a-c", "b/a.txt", "a/d/f")) {
+            write(repo, path, "untracked\n");
+        }
+        return repo;
+    }
+
+    /** Return the status of REPO as the status command printed it before the
+     *  single pass: each working file looked up in the head commit and the
+     *  staging area, then the staged files and the files of the head commit
+     *  that are gone, each in their own order. REPO must be in use. */
+    private static String lookedUp(GitletRepository repo) {
+        Commit head = Commit.readCommitFromFile(HEAD.whichCommit());
+        Map<String, String> tracked = head.getFileMap();
+        Map<String, String> staged = Blob.blobMap;
+        List<String> files = workingFiles(repo.root());
+        List<String> modified = new ArrayList<>();
+        List<String> untracked = new ArrayList<>();
+        for (String file : files) {
+            boolean isStaged = staged.containsValue(file);
+            String contents = Utils.sha1((Object) Utils.readContents(repo.root().resolve(file).toFile()));
+            if (!isStaged && tracked.containsKey(file)) {
+                if (!contents.equals(tracked.get(file))) {
+                    modified.add(file + "(modified)");
+                }
+            } else if (isStaged && !tracked.containsKey(file)) {
+                File copy = Utils.join(Repository.STAGE_DIR, Utils.sha1(file));
+                if (!contents.equals(ObjectStore.hashLoose(copy))) {
+                    modified.add(file + "(modified)");
+                }
+            } else if (!isStaged) {
+                untracked.add(file);
+            }
+        }
+        for (String name : staged.values()) {
+            if (!files.contains(name)) {
+                modified.add(name + "(deleted)");
+            }
+        }
+        for (String name : tracked.keySet()) {
+            if (!files.contains(name) && !Blob.isRemovalContains(name)) {
+                modified.add(name + "(deleted)");
+            }
+        }
+        Status status = repo.status();
+        return new Status(status.branches(), status.currentBranch(), status.staged(),
+                status.removed(), modified, untracked).toString();
+    }
+
+    /** Return the paths of the files under ROOT, outside .gitlet, in order. */
+    private static List<String> workingFiles(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> root.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .filter(path -> !path.startsWith(".gitlet/"))
+                    .sorted().collect(Collectors.toList());
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /** Return PATHS in order. */
+    private static List<String> sorted(List<String> paths) {
+        return paths.stream().sorted().collect(Collectors.toList());
+    }
+}
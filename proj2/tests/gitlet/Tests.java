@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/** A small harness for the tests of gitlet, which need nothing beyond the
+ *  JDK. The tests live in package gitlet, in their own source root, so that
+ *  they can look at the formats on disk through the package-private classes.
+ *  Each test class has a main running its tests; AllTests runs them all.
+ *
+ *      javac -encoding UTF-8 -d out gitlet/*.java tests/gitlet/*.java
+ *      java -cp out gitlet.AllTests
+ *
+ *  A test is a static method without parameters whose name starts with
+ *  "test". It fails by throwing; each runs on repositories of its own in a
+ *  fresh temporary directory.
+ *
+ *  @author Hongfa You
+ */
+class Tests {
+    /** Number of tests failed so far in this process. */
+    private static int failures;
+    /** Temporary directories made by the tests, deleted by exit(). */
+    private static final List<Path> TEMP_DIRS = new ArrayList<>();
+
+    /** Run every test of CLS, printing the outcome of each, and return the
+     *  number that failed. */
+    static int run(Class<?> cls) {
+        int before = failures;
+        Method[] methods = cls.getDeclaredMethods();
+        Arrays.sort(methods, Comparator.comparing(Method::getName));
+        for (Method method : methods) {
+            if (!method.getName().startsWith("test") || method.getParameterCount() != 0
+                    || !Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            String name = cls.getSimpleName() + "." + method.getName();
+            try {
+                method.setAccessible(true);
+                method.invoke(null);
+                System.out.println("PASS " + name);
+            } catch (InvocationTargetException excp) {
+                failures += 1;
+                System.out.println("FAIL " + name + ": " + excp.getCause());
+            } catch (IllegalAccessException excp) {
+                failures += 1;
+                System.out.println("FAIL " + name + ": " + excp);
+            }
+        }
+        return failures - before;
+    }
+
+    /** Delete the temporary directories and exit with status 1 if any test
+     *  failed. */
+    static void exit() {
+        for (Path dir : TEMP_DIRS) {
+            delete(dir.toFile());
+        }
+        System.out.println(failures == 0 ? "OK" : failures + " FAILED");
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    /** Fail with a message composed from MSG and ARGS unless CONDITION. */
+    static void check(boolean condition, String msg, Object... args) {
+        if (!condition) {
+            throw new AssertionError(String.format(msg, args));
+        }
+    }
+
+    /** Fail unless EXPECTED equals ACTUAL, saying what WHAT was. */
+    static void checkEquals(Object expected, Object actual, String what) {
+        check(expected == null ? actual == null : expected.equals(actual),
+                "%s: expected %s, got %s", what, expected, actual);
+    }
+
+    /** Fail unless OPERATION throws a GitletException, and return it. */
+    static GitletException checkThrows(Runnable operation, String what) {
+        try {
+            operation.run();
+        } catch (GitletException excp) {
+            return excp;
+        }
+        throw new AssertionError(what + ": expected a GitletException");
+    }
+
+    /** Return a new repository in a fresh temporary directory. */
+    static GitletRepository newRepository() {
+        return GitletRepository.init(newDirectory());
+    }
+
+    /** Return a fresh, empty temporary directory. */
+    static Path newDirectory() {
+        try {
+            Path dir = Files.createTempDirectory("gitlet-test");
+            TEMP_DIRS.add(dir);
+            return dir;
+        } catch (IOException excp) {
+            throw new AssertionError("Cannot create a directory: " + excp);
+        }
+    }
+
+    /** Write CONTENTS into the file PATH of the working directory of REPO,
+     *  creating the directories above it. */
+    static File write(GitletRepository repo, String path, String contents) {
+        File file = repo.root().resolve(path).toFile();
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, contents);
+        return file;
+    }
+
+    /** Return the contents of the file PATH of the working directory of REPO. */
+    static String read(GitletRepository repo, String path) {
+        return Utils.readContentsAsString(repo.root().resolve(path).toFile());
+    }
+
+    /** Delete FILE and, if it is a directory, everything below it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
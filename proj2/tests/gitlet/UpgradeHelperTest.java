@@ -0,0 +1,259 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static gitlet.Tests.*;
+
+/** Tests of UpgradeHelper on repositories written by older versions of
+ *  gitlet, kept here file by file: one written before commits had a compact
+ *  encoding and blobs were named by their contents, and one of format 1,
+ *  whose commits carry their files inline. Opening either brings it to
+ *  UpgradeHelper.CURRENT_FORMAT, after which it reads and works as one made
+ *  by this version.
+ *
+ *  @author Hongfa You
+ */
+class UpgradeHelperTest {
+    /** A repository written by the first version of gitlet, as pairs of a
+     *  path and its contents in Base64. Master is at "second", which
+     *  changed a.txt; "other" is at "first"; c.txt is staged and b.txt is
+     *  staged for removal. Blobs were named after the file they came from,
+     *  so the first version of a.txt was overwritten by the second. */
+    private static final String[] BASELINE = {
+        "a.txt",
+            "aGVsbG8yCg==",
+        "c.txt",
+            "Ywo=",
+        ".gitlet/branch_dir/HEAD",
+            "rO0ABXQABm1hc3Rlcg==",
+        ".gitlet/branch_dir/master",
+            "rO0ABXNyAA1naXRsZXQuQnJhbmNoYW/AI2a7y8QCAAJMAApicmFuY2hOYW1ldAAS" +
+            "TGphdmEvbGFuZy9TdHJpbmc7TAALd2hpY2hDb21taXRxAH4AAXhwdAAGbWFzdGVy" +
+            "dAAoN2RiZmFlNTUzYzUyZjVkMDUyM2U3NGRiYTQyNGRkNTQ2NGY0YWQ1Mg==",
+        ".gitlet/branch_dir/other",
+            "rO0ABXNyAA1naXRsZXQuQnJhbmNoYW/AI2a7y8QCAAJMAApicmFuY2hOYW1ldAAS" +
+            "TGphdmEvbGFuZy9TdHJpbmc7TAALd2hpY2hDb21taXRxAH4AAXhwdAAFb3RoZXJ0" +
+            "ACg1YjAzMzhlYzZhNDE5MjJhMmM3ZDFlYWYyMWYzNjJjYjEwZWNiOThm",
+        ".gitlet/commited_obj/09633472f3087cf2b9b9bf4a083baf16f6af0bc2",
+            "aGVsbG8yCg==",
+        ".gitlet/commited_obj/a8bf6a63f56de4315d55bd9fe59e691e3e9d6f77",
+            "d29ybGQK",
+        ".gitlet/infocommit/11691d2e90b0c045acba16a520626b0d86d10245",
+            "rO0ABXNyAA1naXRsZXQuQ29tbWl0j1Aa8WCYNpoCAAZMAApkYXRlU3RyaW5ndAAS" +
+            "TGphdmEvbGFuZy9TdHJpbmc7TAAHZmlsZU1hcHQAE0xqYXZhL3V0aWwvVHJlZU1h" +
+            "cDtMAAtmaXJzdHBhcmVudHEAfgABTAAHbWVzc2FnZXEAfgABTAAMc2Vjb25kcGFy" +
+            "ZW50cQB+AAFMAAZzaGExSWRxAH4AAXhwdAAdVGh1IE5vdiA5IDE3OjAxOjMzIDIw" +
+            "MjEgLTA4MDBwcHQADmluaXRpYWwgY29tbWl0cHQAKDExNjkxZDJlOTBiMGMwNDVh" +
+            "Y2JhMTZhNTIwNjI2YjBkODZkMTAyNDU=",
+        ".gitlet/infocommit/5b0338ec6a41922a2c7d1eaf21f362cb10ecb98f",
+            "rO0ABXNyAA1naXRsZXQuQ29tbWl0j1Aa8WCYNpoCAAZMAApkYXRlU3RyaW5ndAAS" +
+            "TGphdmEvbGFuZy9TdHJpbmc7TAAHZmlsZU1hcHQAE0xqYXZhL3V0aWwvVHJlZU1h" +
+            "cDtMAAtmaXJzdHBhcmVudHEAfgABTAAHbWVzc2FnZXEAfgABTAAMc2Vjb25kcGFy" +
+            "ZW50cQB+AAFMAAZzaGExSWRxAH4AAXhwdAAdVGh1IE5vdiA5IDE3OjAxOjMzIDIw" +
+            "MjEgLTA4MDBzcgARamF2YS51dGlsLlRyZWVNYXAMwfY+LSVq5gMAAUwACmNvbXBh" +
+            "cmF0b3J0ABZMamF2YS91dGlsL0NvbXBhcmF0b3I7eHBwdwQAAAACdAAFYS50eHR0" +
+            "ACgwOTYzMzQ3MmYzMDg3Y2YyYjliOWJmNGEwODNiYWYxNmY2YWYwYmMydAAFYi50" +
+            "eHR0AChhOGJmNmE2M2Y1NmRlNDMxNWQ1NWJkOWZlNTllNjkxZTNlOWQ2Zjc3eHQA" +
+            "KDExNjkxZDJlOTBiMGMwNDVhY2JhMTZhNTIwNjI2YjBkODZkMTAyNDV0AAVmaXJz" +
+            "dHB0ACg1YjAzMzhlYzZhNDE5MjJhMmM3ZDFlYWYyMWYzNjJjYjEwZWNiOThm",
+        ".gitlet/infocommit/7dbfae553c52f5d0523e74dba424dd5464f4ad52",
+            "rO0ABXNyAA1naXRsZXQuQ29tbWl0j1Aa8WCYNpoCAAZMAApkYXRlU3RyaW5ndAAS" +
+            "TGphdmEvbGFuZy9TdHJpbmc7TAAHZmlsZU1hcHQAE0xqYXZhL3V0aWwvVHJlZU1h" +
+            "cDtMAAtmaXJzdHBhcmVudHEAfgABTAAHbWVzc2FnZXEAfgABTAAMc2Vjb25kcGFy" +
+            "ZW50cQB+AAFMAAZzaGExSWRxAH4AAXhwdAAdVGh1IE5vdiA5IDE3OjAxOjMzIDIw" +
+            "MjEgLTA4MDBzcgARamF2YS51dGlsLlRyZWVNYXAMwfY+LSVq5gMAAUwACmNvbXBh" +
+            "cmF0b3J0ABZMamF2YS91dGlsL0NvbXBhcmF0b3I7eHBwdwQAAAACdAAFYS50eHR0" +
+            "ACgwOTYzMzQ3MmYzMDg3Y2YyYjliOWJmNGEwODNiYWYxNmY2YWYwYmMydAAFYi50" +
+            "eHR0AChhOGJmNmE2M2Y1NmRlNDMxNWQ1NWJkOWZlNTllNjkxZTNlOWQ2Zjc3eHQA" +
+            "KDViMDMzOGVjNmE0MTkyMmEyYzdkMWVhZjIxZjM2MmNiMTBlY2I5OGZ0AAZzZWNv" +
+            "bmRwdAAoN2RiZmFlNTUzYzUyZjVkMDUyM2U3NGRiYTQyNGRkNTQ2NGY0YWQ1Mg==",
+        ".gitlet/infostaged_dir/blobMap",
+            "rO0ABXNyABFqYXZhLnV0aWwuVHJlZU1hcAzB9j4tJWrmAwABTAAKY29tcGFyYXRv" +
+            "cnQAFkxqYXZhL3V0aWwvQ29tcGFyYXRvcjt4cHB3BAAAAAF0AChmZTRjODBiYjA5" +
+            "ODg5NGI0ZDZjYTM2YzE2MDgyZDU2N2JmZDQxYjhidAAFYy50eHR4",
+        ".gitlet/infostaged_dir/removal",
+            "rO0ABXNyABFqYXZhLnV0aWwuVHJlZU1hcAzB9j4tJWrmAwABTAAKY29tcGFyYXRv" +
+            "cnQAFkxqYXZhL3V0aWwvQ29tcGFyYXRvcjt4cHB3BAAAAAF0AAViLnR4dHQAKGFj" +
+            "ZWJhOTZmZmRmMTNjZTRjZDQxNzFjMDI0ODQyMGNjMDMxMDhlZjB4",
+        ".gitlet/staged_obj/fe4c80bb098894b4d6ca36c16082d567bfd41b8b",
+            "Ywo="
+    };
+    private static final String BASELINE_INITIAL = "11691d2e90b0c045acba16a520626b0d86d10245";
+    private static final String BASELINE_FIRST = "5b0338ec6a41922a2c7d1eaf21f362cb10ecb98f";
+    private static final String BASELINE_SECOND = "7dbfae553c52f5d0523e74dba424dd5464f4ad52";
+
+    /** A repository of format 1, as pairs of a path and its contents in
+     *  Base64. Master is at the merge of "other", which changed a.txt, into
+     *  master, which added b.txt, both made after "first". */
+    private static final String[] FORMAT_1 = {
+        "a.txt",
+            "eAo=",
+        "b.txt",
+            "aGkK",
+        ".gitlet/config",
+            "Y29yZS5mb3JtYXQ9MQo=",
+        ".gitlet/branch_dir/HEAD",
+            "rO0ABXQABm1hc3Rlcg==",
+        ".gitlet/branch_dir/master",
+            "rO0ABXNyAA1naXRsZXQuQnJhbmNoYW/AI2a7y8QCAAJMAApicmFuY2hOYW1ldAAS" +
+            "TGphdmEvbGFuZy9TdHJpbmc7TAALd2hpY2hDb21taXRxAH4AAXhwdAAGbWFzdGVy" +
+            "dAAoMjVkOTgxZWJjOTYzODczODgzZTRhNTAwOWJkYWE1NGFkMjIyN2ZjOQ==",
+        ".gitlet/branch_dir/other",
+            "rO0ABXNyAA1naXRsZXQuQnJhbmNoYW/AI2a7y8QCAAJMAApicmFuY2hOYW1ldAAS" +
+            "TGphdmEvbGFuZy9TdHJpbmc7TAALd2hpY2hDb21taXRxAH4AAXhwdAAFb3RoZXJ0" +
+            "AChlYTlmOTM4NDkwNzc1MmYwMTIzMWEwZTk1ZDkwYTI3NjE1MTc3ODJl",
+        ".gitlet/commited_obj/55ca6286e3e4f4fba5d0448333fa99fc5a404a73",
+            "AEdaAQAAAAAAAAADeJzLyOQCAAIXANw=",
+        ".gitlet/commited_obj/6fcf9dfbd479ed82697fee719b9f8c610a11ff2a",
+            "AEdaAQAAAAAAAAACeJyr4AIAAPwAgw==",
+        ".gitlet/commited_obj/f572d396fae9206628714fb2ce00f72e94f2258f",
+            "AEdaAQAAAAAAAAAGeJzLSM3JyecCAAhLAh8=",
+        ".gitlet/infocommit/25d981ebc963873883e4a5009bdaa54ad2227fc9",
+            "AEdaAQAAAAAAAACxeJwBsQBO/0dDTVQBJdmB68ljhziD5KUAm9qlStIif8kHs4DY" +
+            "Ud3/EVEz8W7NAvkrB0EPp/nqn5OEkHdS8BIxoOldkKJ2FRd4LhlNZXJnZWQgb3Ro" +
+            "ZXIgaW50byBtYXN0ZXIuHVRodSBOb3YgOSAxNzowMTozMyAyMDIxIC0wODAwAgAF" +
+            "YS50eHRvz5371Hntgml/7nGbn4xhChH/KgAFYi50eHRVymKG4+T0+6XQRIMz+pn8" +
+            "WkBKc0kCSzI=",
+        ".gitlet/infocommit/34714808cd4d6665142b5d13967353581d5cd284",
+            "AEdaAQAAAAAAAABueJwBbgCR/0dDTVQBNHFICM1NZmUUK10TlnNTWB1c0oQFupYw" +
+            "HQ3JkOk4LdikVeHqX/Ume6oFZmlyc3QdVGh1IE5vdiA5IDE3OjAxOjMzIDIwMjEg" +
+            "LTA4MDABAAVhLnR4dPVy05b66SBmKHFPss4A9y6U8iWPhG0oow==",
+        ".gitlet/infocommit/b380d851ddff115133f16ecd02f92b07410fa7f9",
+            "AEdaAQAAAAAAAACKeJwBigB1/0dDTVQBs4DYUd3/EVEz8W7NAvkrB0EPp/kFNHFI" +
+            "CM1NZmUUK10TlnNTWB1c0oQGc2Vjb25kHVRodSBOb3YgOSAxNzowMTozMyAyMDIx" +
+            "IC0wODAwAgAFYS50eHT1ctOW+ukgZihxT7LOAPculPIljwAFYi50eHRVymKG4+T0" +
+            "+6XQRIMz+pn8WkBKc9JPNoo=",
+        ".gitlet/infocommit/ba96301d0dc990e9382dd8a455e1ea5ff5267baa",
+            "AEdaAQAAAAAAAABHeJxzd/YNYdw1zUCW9+SElxa6N5aEPnwV/1WtehUDX2ZeZklm" +
+            "Yo5Ccn5ubmaJbEhGqYJffpmCpYKhuZWBoZWxsYKRgZGhgq6BhYEBAOXFGBE=",
+        ".gitlet/infocommit/ea9f9384907752f01231a0e95d90a2761517782e",
+            "AEdaAQAAAAAAAABxeJwBcQCO/0dDTVQB6p+ThJB3UvASMaDpXZCidhUXeC4FNHFI" +
+            "CM1NZmUUK10TlnNTWB1c0oQIb24gb3RoZXIdVGh1IE5vdiA5IDE3OjAxOjMzIDIw" +
+            "MjEgLTA4MDABAAVhLnR4dG/PnfvUee2CaX/ucZufjGEKEf8qAK0o4Q=="
+    };
+    private static final String FORMAT_1_FIRST = "34714808cd4d6665142b5d13967353581d5cd284";
+    private static final String FORMAT_1_SECOND = "b380d851ddff115133f16ecd02f92b07410fa7f9";
+    private static final String FORMAT_1_OTHER = "ea9f9384907752f01231a0e95d90a2761517782e";
+    private static final String FORMAT_1_MERGE = "25d981ebc963873883e4a5009bdaa54ad2227fc9";
+
+    public static void main(String[] args) {
+        Tests.run(UpgradeHelperTest.class);
+        Tests.exit();
+    }
+
+    /** The history, branches and staging area of the first version survive. */
+    static void testBaselineRead() {
+        GitletRepository repo = unpack(BASELINE);
+        checkEquals(List.of("second", "first", "initial commit"), messages(repo.log()), "log");
+        checkEquals(List.of(BASELINE_SECOND, BASELINE_FIRST, BASELINE_INITIAL),
+                ids(repo.log()), "commit ids");
+        Status status = repo.status();
+        checkEquals(List.of("master", "other"), status.branches(), "branches");
+        checkEquals("master", status.currentBranch(), "current branch");
+        checkEquals(List.of("c.txt"), status.staged(), "staged files");
+        checkEquals(List.of("b.txt"), status.removed(), "removed files");
+        checkEquals(List.of(), status.modified(), "modified files");
+        checkEquals(List.of(), status.untracked(), "untracked files");
+        checkEquals(Integer.toString(UpgradeHelper.CURRENT_FORMAT),
+                Config.get(Config.FORMAT), "format");
+    }
+
+    /** Commits are rewritten in the current encoding, and blobs are named
+     *  by their contents. */
+    static void testBaselineRewritten() {
+        GitletRepository repo = unpack(BASELINE);
+        repo.log();
+        for (String id : ObjectStore.commitIds()) {
+            check(Commit.isEncoded(ObjectStore.readCommit(id)), "commit %s not rewritten", id);
+            Commit commit = Commit.readCommitFromFile(id);
+            if (!commit.isFilemapNull()) {
+                for (String blob : commit.getFileMap().values()) {
+                    checkEquals(blob, Utils.sha1((Object) ObjectStore.readBlob(blob)),
+                            "blob of commit " + id);
+                }
+            }
+        }
+        repo.root().resolve("a.txt").toFile().delete();
+        repo.checkoutFile("a.txt");
+        checkEquals("hello2\n", read(repo, "a.txt"), "a.txt");
+        repo.checkoutFile(BASELINE_FIRST, "b.txt");
+        checkEquals("world\n", read(repo, "b.txt"), "b.txt of first");
+    }
+
+    /** The indexes built by the upgrade find the old commits, and the
+     *  repository takes new ones. */
+    static void testBaselineWorks() {
+        GitletRepository repo = unpack(BASELINE);
+        checkEquals(List.of(BASELINE_FIRST), repo.find("first"), "found by message");
+        checkEquals(List.of(BASELINE_SECOND), repo.findSubstring("econ"), "found by substring");
+        checkEquals(BASELINE_FIRST, repo.mergeBase("master", "other").best(), "merge base");
+
+        String third = repo.commit("third");
+        checkEquals(List.of("third", "second", "first", "initial commit"),
+                messages(repo.log()), "log after a commit");
+        checkEquals(List.of(), repo.status().staged(), "staged after a commit");
+        repo.checkout("other");
+        checkEquals("world\n", read(repo, "b.txt"), "b.txt of other");
+        check(!repo.root().resolve("c.txt").toFile().exists(), "c.txt left on other");
+        repo.checkout("master");
+        checkEquals("c\n", read(repo, "c.txt"), "c.txt of " + third);
+    }
+
+    /** A format 1 repository keeps its history, merge included, and gets
+     *  trees, the commit graph and the message index. */
+    static void testFormat1() {
+        GitletRepository repo = unpack(FORMAT_1);
+        checkEquals(List.of("Merged other into master.", "second", "first", "initial commit"),
+                messages(repo.log()), "log");
+        for (String id : ObjectStore.commitIds()) {
+            check(Commit.isEncoded(ObjectStore.readCommit(id)), "commit %s not rewritten", id);
+        }
+        Commit merge = Commit.readCommitFromFile(FORMAT_1_MERGE);
+        checkEquals(FORMAT_1_OTHER, merge.getsecondParent(), "second parent of the merge");
+        check(merge.getTreeId() != null, "the merge has no tree");
+        checkEquals(FORMAT_1_FIRST, repo.mergeBase(FORMAT_1_SECOND, FORMAT_1_OTHER).best(),
+                "merge base");
+        checkEquals(List.of(FORMAT_1_OTHER), repo.find("on other"), "found by message");
+
+        repo.checkoutFile(FORMAT_1_SECOND, "a.txt");
+        checkEquals("hello\n", read(repo, "a.txt"), "a.txt of second");
+        repo.checkoutFile(FORMAT_1_MERGE, "a.txt");
+        checkEquals("x\n", read(repo, "a.txt"), "a.txt of the merge");
+        checkEquals("hi\n", read(repo, "b.txt"), "b.txt");
+        checkEquals(List.of(), repo.status().modified(), "modified files");
+    }
+
+    /** Write the repository FILES, pairs of a path and its contents in
+     *  Base64, into a fresh directory and open it. */
+    private static GitletRepository unpack(String[] files) {
+        Path dir = newDirectory();
+        for (int i = 0; i < files.length; i += 2) {
+            File file = dir.resolve(files[i]).toFile();
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, (Object) Base64.getDecoder().decode(files[i + 1]));
+        }
+        return GitletRepository.open(dir);
+    }
+
+    /** Return the messages of COMMITS, in order. */
+    private static List<String> messages(List<CommitInfo> commits) {
+        List<String> result = new ArrayList<>();
+        for (CommitInfo commit : commits) {
+            result.add(commit.message());
+        }
+        return result;
+    }
+
+    /** Return the ids of COMMITS, in order. */
+    private static List<String> ids(List<CommitInfo> commits) {
+        List<String> result = new ArrayList<>();
+        for (CommitInfo commit : commits) {
+            result.add(commit.id());
+        }
+        return result;
+    }
+}